@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.benchmarks;
+
+import gr.scharf.workingsets.internal.DispatchIndex;
+import gr.scharf.workingsets.internal.RegExResourceFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Applies batches of file changes to query working sets on a {@link SyntheticWorkspace}
+ * like <code>QueryWorkingSetUpdater.applyChanges</code>: added files are offered to the
+ * filters the {@link DispatchIndex} selects, removed files to all filters, and the
+ * modified working sets get their new elements. The updater itself cannot be created
+ * without a workspace and a workbench.
+ */
+public class ChangeReplay {
+	private final List<RegExResourceFilter> fFilters = new ArrayList<RegExResourceFilter>();
+	private final DispatchIndex fDispatchIndex;
+
+	/**
+	 * Creates and evaluates a working set for each query
+	 */
+	public ChangeReplay(SyntheticWorkspace workspace, String[] queries) throws CoreException {
+		for (String query : queries) {
+			RegExResourceFilter filter = new RegExResourceFilter(SyntheticWorkspace.workingSet(query));
+			workspace.accept(filter);
+			filter.endUpdate();
+			fFilters.add(filter);
+		}
+		fDispatchIndex = new DispatchIndex(fFilters);
+	}
+
+	/**
+	 * @param changes the full paths of the changed files and the kind of the change,
+	 * {@link IResourceDelta#ADDED} or {@link IResourceDelta#REMOVED}
+	 */
+	public void apply(Map<String, Integer> changes) throws CoreException {
+		for (RegExResourceFilter filter : fFilters) {
+			filter.beginUpdate();
+		}
+		for (Map.Entry<String, Integer> entry : changes.entrySet()) {
+			String path = entry.getKey();
+			if (entry.getValue().intValue() == IResourceDelta.REMOVED) {
+				for (RegExResourceFilter filter : fFilters) {
+					filter.removeResource(SyntheticWorkspace.file(path));
+				}
+			} else {
+				IResourceProxy proxy = SyntheticWorkspace.proxy(path);
+				for (RegExResourceFilter filter : fDispatchIndex.getCandidates(path)) {
+					filter.addResource(proxy);
+				}
+			}
+		}
+		for (RegExResourceFilter filter : fFilters) {
+			filter.endUpdate();
+		}
+	}
+
+	/**
+	 * Releases the members of the working sets
+	 */
+	public void dispose() {
+		for (RegExResourceFilter filter : fFilters) {
+			filter.dispose();
+		}
+	}
+
+	/**
+	 * @return the number of members of all working sets
+	 */
+	public int getMemberCount() {
+		int count = 0;
+		for (RegExResourceFilter filter : fFilters) {
+			count += filter.getResult().size();
+		}
+		return count;
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.runtime.CoreException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The latency of a resource change event with one working set for each of the
+ * typical queries of {@link SyntheticWorkspace}. The events alternate between
+ * adding files and removing them again, so the working sets keep their size.
+ * The sampled times give the percentiles of the latency.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DeltaBenchmark {
+	/**
+	 * The number of files of a bulk change, e.g. a checkout or a refresh
+	 */
+	private static final int BULK_SIZE = 1000;
+
+	@Param({ "10000", "100000", "1000000" })
+	public int files;
+
+	private ChangeReplay fReplay;
+	private Map<String, Integer> fSingleAdded;
+	private Map<String, Integer> fSingleRemoved;
+	private Map<String, Integer> fBulkAdded;
+	private Map<String, Integer> fBulkRemoved;
+	private boolean fSingleAdd = true;
+	private boolean fBulkAdd = true;
+
+	@Setup
+	public void setUp() throws CoreException {
+		SyntheticWorkspace workspace = new SyntheticWorkspace(files);
+		fReplay = new ChangeReplay(workspace, new String[] { SyntheticWorkspace.query(SyntheticWorkspace.EXTENSION),
+				SyntheticWorkspace.query(SyntheticWorkspace.FOLDER), SyntheticWorkspace.query(SyntheticWorkspace.EXCLUSIONS),
+				SyntheticWorkspace.query(SyntheticWorkspace.GLOB), SyntheticWorkspace.query(SyntheticWorkspace.AUTOMATON) });
+		fSingleAdded = changes(workspace, 0, 1, IResourceDelta.ADDED);
+		fSingleRemoved = changes(workspace, 0, 1, IResourceDelta.REMOVED);
+		fBulkAdded = changes(workspace, 1, BULK_SIZE, IResourceDelta.ADDED);
+		fBulkRemoved = changes(workspace, 1, BULK_SIZE, IResourceDelta.REMOVED);
+	}
+
+	@TearDown
+	public void tearDown() {
+		fReplay.dispose();
+	}
+
+	private static Map<String, Integer> changes(SyntheticWorkspace workspace, int from, int count, int kind) {
+		Map<String, Integer> changes = new LinkedHashMap<String, Integer>();
+		for (int i = from; i < from + count; i++) {
+			changes.put(workspace.newPath(i), kind);
+		}
+		return changes;
+	}
+
+	@Benchmark
+	public int singleFile() throws CoreException {
+		fReplay.apply(fSingleAdd ? fSingleAdded : fSingleRemoved);
+		fSingleAdd = !fSingleAdd;
+		return fReplay.getMemberCount();
+	}
+
+	@Benchmark
+	public int bulk() throws CoreException {
+		fReplay.apply(fBulkAdd ? fBulkAdded : fBulkRemoved);
+		fBulkAdd = !fBulkAdd;
+		return fReplay.getMemberCount();
+	}
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.benchmarks;
+
+import gr.scharf.workingsets.internal.RegExResourceFilter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.runtime.CoreException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of matching one file against a query. Each call takes the next file
+ * of the workspace, so the branch predictors and caches see a realistic mix
+ * of matching and non-matching paths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MatchBenchmark {
+	@Param({ "10000", "100000", "1000000" })
+	public int files;
+
+	@Param({ SyntheticWorkspace.EXTENSION, SyntheticWorkspace.FOLDER, SyntheticWorkspace.EXCLUSIONS,
+			SyntheticWorkspace.GLOB, SyntheticWorkspace.AUTOMATON })
+	public String query;
+
+	private String[] fPaths;
+	private IResourceProxy[] fProxies;
+	private RegExResourceFilter fFilter;
+	private int fNext;
+
+	@Setup
+	public void setUp() {
+		fPaths = new SyntheticWorkspace(files).getPaths();
+		fProxies = new IResourceProxy[fPaths.length];
+		for (int i = 0; i < fPaths.length; i++) {
+			fProxies[i] = SyntheticWorkspace.proxy(fPaths[i]);
+		}
+		fFilter = new RegExResourceFilter(SyntheticWorkspace.query(query), null);
+	}
+
+	private int next() {
+		int next = fNext;
+		fNext = next + 1 == fPaths.length ? 0 : next + 1;
+		return next;
+	}
+
+	/**
+	 * Matching the path of a file from the {@link gr.scharf.workingsets.internal.query.PathIndex}
+	 */
+	@Benchmark
+	public boolean matchPath() {
+		return fFilter.matches(fPaths[next()]);
+	}
+
+	/**
+	 * Visiting a file during a traversal of the workspace, including the path
+	 * and handle the proxy creates
+	 */
+	@Benchmark
+	public boolean visitProxy() throws CoreException {
+		return fFilter.visit(fProxies[next()]);
+	}
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.benchmarks;
+
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * The heap used by the membership of query working sets on a {@link SyntheticWorkspace}:
+ * the typical queries are evaluated (each query twice, like two working sets with
+ * the same query) and the heap is compared before and after. The elements of the
+ * working sets (the arrays the workbench keeps) are included. JMH does not measure
+ * the retained heap, run it with
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar gr.scharf.workingsets.benchmarks.MembershipFootprint 1000000
+ * </pre>
+ */
+public class MembershipFootprint {
+	private static final String[] QUERIES = { SyntheticWorkspace.EXTENSION, SyntheticWorkspace.FOLDER,
+			SyntheticWorkspace.EXCLUSIONS, SyntheticWorkspace.GLOB, SyntheticWorkspace.AUTOMATON };
+
+	public static void main(String[] args) throws CoreException {
+		int files = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		SyntheticWorkspace workspace = new SyntheticWorkspace(files);
+		String[] queries = new String[QUERIES.length * 2];
+		for (int i = 0; i < queries.length; i++) {
+			queries[i] = SyntheticWorkspace.query(QUERIES[i % QUERIES.length]);
+		}
+		long before = usedHeap();
+		ChangeReplay replay = new ChangeReplay(workspace, queries);
+		long after = usedHeap();
+		int members = replay.getMemberCount();
+		System.out.printf("%d files, %d working sets, %d members: %.1f MB, %.1f bytes per member%n", files,
+				queries.length, members, (after - before) / 1e6, (double) (after - before) / members);
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		// until a collection frees nothing more
+		for (int i = 0; i < 10; i++) {
+			System.gc();
+			long now = runtime.totalMemory() - runtime.freeMemory();
+			if (now >= used)
+				break;
+			used = now;
+		}
+		return used;
+	}
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.benchmarks;
+
+import gr.scharf.workingsets.internal.RegExResourceFilter;
+import gr.scharf.workingsets.internal.query.PathScan;
+import gr.scharf.workingsets.internal.query.SubtreePruner;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The time to evaluate a query working set from scratch: by a traversal of the
+ * resource tree (the full update of the working set) and by a scan of the path
+ * index (<code>WorkspacePathIndex.collectMatches</code>).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ScanBenchmark {
+	@Param({ "10000", "100000", "1000000" })
+	public int files;
+
+	@Param({ SyntheticWorkspace.EXTENSION, SyntheticWorkspace.FOLDER, SyntheticWorkspace.EXCLUSIONS,
+			SyntheticWorkspace.GLOB, SyntheticWorkspace.AUTOMATON })
+	public String query;
+
+	private SyntheticWorkspace fWorkspace;
+
+	@Setup
+	public void setUp() {
+		fWorkspace = new SyntheticWorkspace(files);
+	}
+
+	@Benchmark
+	public int traversal() throws CoreException {
+		RegExResourceFilter filter = new RegExResourceFilter(SyntheticWorkspace.query(query), null);
+		fWorkspace.accept(filter);
+		int size = filter.getResult().size();
+		filter.dispose();
+		return size;
+	}
+
+	@Benchmark
+	public int indexScan() {
+		return newScan().scan(fWorkspace.getIndex()).size();
+	}
+
+	@Benchmark
+	public int parallelIndexScan() {
+		return newScan().parallelScan(fWorkspace.getIndex()).size();
+	}
+
+	private PathScan<IResource> newScan() {
+		final RegExResourceFilter filter = new RegExResourceFilter(SyntheticWorkspace.query(query), null);
+		return new PathScan<IResource>() {
+			@Override
+			protected IResource match(CharSequence path) {
+				return filter.matches(path) ? SyntheticWorkspace.file(path.toString()) : null;
+			}
+			@Override
+			protected SubtreePruner getPruner() {
+				return filter.getPruner();
+			}
+		};
+	}
+}
@@ -0,0 +1,355 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.benchmarks;
+
+import gr.scharf.workingsets.internal.query.PathIndex;
+import gr.scharf.workingsets.internal.query.PathTable;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.ui.IWorkingSet;
+
+/**
+ * An in-memory stand-in for the resource tree of a workspace. The files are
+ * generated from a seed, so every run sees the same workspace: a few projects with
+ * Java sources, tests, class files, resources and documentation in package folders.
+ * <p>
+ * The handles (files, proxies and working sets) implement only what the filters
+ * use. Like in the workspace, {@link IResourceProxy#requestFullPath()} and
+ * {@link IResourceProxy#requestResource()} create new objects on every call.
+ */
+public class SyntheticWorkspace {
+	/**
+	 * Typical queries, see {@link #query(String)}
+	 */
+	public static final String EXTENSION = "extension";
+	public static final String FOLDER = "folder";
+	public static final String EXCLUSIONS = "exclusions";
+	public static final String GLOB = "glob";
+	public static final String AUTOMATON = "automaton";
+
+	private static final int FILES_PER_FOLDER = 20;
+	private static final int FILES_PER_PROJECT = 25000;
+	private static final String[] TOP_FOLDERS = { "src", "src", "src", "src", "test", "bin", "bin", "resources", "doc" };
+	private static final String[] SEGMENTS = { "gr", "org", "com", "scharf", "eclipse", "core", "internal", "ui",
+			"query", "util", "model", "io", "impl", "test", "common", "api" };
+	private static final String[] NAMES = { "Path", "Query", "Filter", "Index", "Resource", "Table", "Cursor",
+			"Matcher", "Page", "Job", "Cache", "Util" };
+	private static final String[] RESOURCE_EXTENSIONS = { ".xml", ".properties", ".png", ".txt" };
+
+	private final String[] fPaths;
+	private final PathIndex fIndex;
+	private final int fProjects;
+
+	/**
+	 * @param files the number of files
+	 */
+	public SyntheticWorkspace(int files) {
+		this(files, 42);
+	}
+
+	public SyntheticWorkspace(int files, long seed) {
+		fProjects = Math.max(4, files / FILES_PER_PROJECT);
+		Random random = new Random(seed);
+		fPaths = new String[files];
+		String folder = null;
+		String top = null;
+		for (int i = 0; i < files; i++) {
+			if (i % FILES_PER_FOLDER == 0) {
+				top = TOP_FOLDERS[random.nextInt(TOP_FOLDERS.length)];
+				folder = folder(random, random.nextInt(fProjects), top);
+			}
+			fPaths[i] = folder + NAMES[random.nextInt(NAMES.length)] + i + extension(random, top);
+		}
+		// the names contain the counter, there are no duplicates
+		Arrays.sort(fPaths);
+		PathTable.Builder builder = new PathTable.Builder();
+		for (String path : fPaths) {
+			builder.add(path);
+		}
+		fIndex = new PathIndex(builder.build());
+	}
+
+	private static String folder(Random random, int project, String top) {
+		StringBuilder folder = new StringBuilder();
+		folder.append("/project").append(project).append('/').append(top).append('/');
+		int depth = 2 + random.nextInt(4);
+		for (int i = 0; i < depth; i++) {
+			folder.append(SEGMENTS[random.nextInt(SEGMENTS.length)]).append('/');
+		}
+		return folder.toString();
+	}
+
+	private static String extension(Random random, String top) {
+		if ("bin".equals(top))
+			return ".class";
+		if ("resources".equals(top))
+			return RESOURCE_EXTENSIONS[random.nextInt(RESOURCE_EXTENSIONS.length)];
+		if ("doc".equals(top))
+			return random.nextInt(4) == 0 ? ".png" : ".html";
+		return random.nextInt(10) == 0 ? ".properties" : ".java";
+	}
+
+	/**
+	 * @param name one of {@link #EXTENSION}, {@link #FOLDER}, {@link #EXCLUSIONS},
+	 * {@link #GLOB} or {@link #AUTOMATON}
+	 * @return a query of the kind
+	 */
+	public static String query(String name) {
+		if (EXTENSION.equals(name))
+			return "\\.xml$";
+		if (FOLDER.equals(name))
+			return "^/project1/src/";
+		if (EXCLUSIONS.equals(name))
+			return "\\.java$\n-/test/\n-/internal/\n/internal/.*Query[0-9]+\\.java$";
+		if (GLOB.equals(name))
+			return "glob:/project*/src/**/*.java\nglob:!**/internal/**\nglob:**/*.{xml,properties}";
+		if (AUTOMATON.equals(name))
+			return "#!engine automaton\n\\.java$\n-/test/\n-/internal/\n/internal/.*Query[0-9]+\\.java$";
+		throw new IllegalArgumentException(name);
+	}
+
+	/**
+	 * @return the full paths of the files in sorted order
+	 */
+	public String[] getPaths() {
+		return fPaths;
+	}
+
+	public int size() {
+		return fPaths.length;
+	}
+
+	/**
+	 * @return the index of the paths like {@link gr.scharf.workingsets.internal.WorkspacePathIndex} keeps it
+	 */
+	public PathIndex getIndex() {
+		return fIndex;
+	}
+
+	public int getProjectCount() {
+		return fProjects;
+	}
+
+	/**
+	 * @return the full path of a file that does not exist in the workspace
+	 */
+	public String newPath(int i) {
+		return "/project" + (i % fProjects) + "/src/gr/scharf/generated/Generated" + i + ".java";
+	}
+
+	/**
+	 * Visits the projects, folders and files in the order of the paths like
+	 * {@link IResource#accept(IResourceProxyVisitor, int)}. The members of a 
+	 * container are skipped if the visitor returns false for it.
+	 */
+	public void accept(IResourceProxyVisitor visitor) throws CoreException {
+		// the containers of the last file, ending with '/'
+		String visited = "/";
+		String pruned = null;
+		for (String path : fPaths) {
+			if (pruned != null && path.startsWith(pruned))
+				continue;
+			pruned = null;
+			int start = commonFolders(visited, path);
+			int slash;
+			while ((slash = path.indexOf('/', start)) >= 0) {
+				String container = path.substring(0, slash);
+				if (!visitor.visit(new ResourceProxy(container, start == 1 ? IResource.PROJECT : IResource.FOLDER))) {
+					pruned = container + '/';
+					visited = path.substring(0, start);
+					break;
+				}
+				visited = path.substring(0, slash + 1);
+				start = slash + 1;
+			}
+			if (pruned == null)
+				visitor.visit(new ResourceProxy(path, IResource.FILE));
+		}
+	}
+
+	/**
+	 * @return the length of the longest prefix of the path that is a folder of both
+	 */
+	private static int commonFolders(String folder, String path) {
+		int n = Math.min(folder.length(), path.length());
+		int end = 0;
+		for (int i = 0; i < n && folder.charAt(i) == path.charAt(i); i++) {
+			if (path.charAt(i) == '/')
+				end = i + 1;
+		}
+		return end;
+	}
+
+	public static IResourceProxy proxy(String path) {
+		return new ResourceProxy(path, IResource.FILE);
+	}
+
+	/**
+	 * @return a handle of a file, equal to the other handles of the same path
+	 */
+	public static IFile file(final String path) {
+		return (IFile) Proxy.newProxyInstance(SyntheticWorkspace.class.getClassLoader(), new Class<?>[] { IFile.class },
+				new FileHandler(path));
+	}
+
+	/**
+	 * @return a query working set that stores its elements
+	 */
+	public static IWorkingSet workingSet(final String query) {
+		return (IWorkingSet) Proxy.newProxyInstance(SyntheticWorkspace.class.getClassLoader(),
+				new Class<?>[] { IWorkingSet.class }, new InvocationHandler() {
+					private IAdaptable[] fElements = new IAdaptable[0];
+
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						String name = method.getName();
+						if ("getName".equals(name) || "getLabel".equals(name))
+							return "RegEx: " + query;
+						// like the workbench the array is copied, the elements are kept
+						if ("getElements".equals(name))
+							return fElements.clone();
+						if ("setElements".equals(name)) {
+							fElements = ((IAdaptable[]) args[0]).clone();
+							return null;
+						}
+						return defaultValue(proxy, method, args);
+					}
+				});
+	}
+
+	private static class FileHandler implements InvocationHandler {
+		private final String fPath;
+
+		FileHandler(String path) {
+			fPath = path;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if ("getFullPath".equals(name))
+				return new Path(fPath);
+			if ("getType".equals(name))
+				return IResource.FILE;
+			if ("getName".equals(name))
+				return fPath.substring(fPath.lastIndexOf('/') + 1);
+			if ("exists".equals(name) || "isAccessible".equals(name))
+				return true;
+			if ("createProxy".equals(name))
+				return proxy(fPath);
+			if ("equals".equals(name)) {
+				Object other = args[0];
+				return other != null && Proxy.isProxyClass(other.getClass())
+						&& Proxy.getInvocationHandler(other) instanceof FileHandler
+						&& fPath.equals(((FileHandler) Proxy.getInvocationHandler(other)).fPath);
+			}
+			if ("hashCode".equals(name))
+				return fPath.hashCode();
+			if ("toString".equals(name))
+				return "L" + fPath;
+			return defaultValue(proxy, method, args);
+		}
+	}
+
+	private static Object defaultValue(Object proxy, Method method, Object[] args) {
+		String name = method.getName();
+		if ("equals".equals(name))
+			return proxy == args[0];
+		if ("hashCode".equals(name))
+			return System.identityHashCode(proxy);
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class)
+			return false;
+		if (type == int.class)
+			return 0;
+		if (type == long.class)
+			return 0L;
+		return null;
+	}
+
+	/**
+	 * Like the proxies of the workspace the path and the handle are created on
+	 * request and kept for the visited resource
+	 */
+	private static class ResourceProxy implements IResourceProxy {
+		private final String fPath;
+		private final int fType;
+		private IPath fFullPath;
+		private IResource fResource;
+
+		ResourceProxy(String path, int type) {
+			fPath = path;
+			fType = type;
+		}
+
+		public long getModificationStamp() {
+			return 1;
+		}
+
+		public boolean isAccessible() {
+			return true;
+		}
+
+		public boolean isDerived() {
+			return false;
+		}
+
+		public boolean isLinked() {
+			return false;
+		}
+
+		public boolean isPhantom() {
+			return false;
+		}
+
+		public boolean isHidden() {
+			return false;
+		}
+
+		public boolean isTeamPrivateMember() {
+			return false;
+		}
+
+		public String getName() {
+			return fPath.substring(fPath.lastIndexOf('/') + 1);
+		}
+
+		public Object getSessionProperty(QualifiedName key) {
+			return null;
+		}
+
+		public int getType() {
+			return fType;
+		}
+
+		public IPath requestFullPath() {
+			if (fFullPath == null)
+				fFullPath = new Path(fPath);
+			return fFullPath;
+		}
+
+		public IResource requestResource() {
+			// the filters only ask for the files
+			if (fResource == null && fType == IResource.FILE)
+				fResource = file(fPath);
+			return fResource;
+		}
+	}
+}
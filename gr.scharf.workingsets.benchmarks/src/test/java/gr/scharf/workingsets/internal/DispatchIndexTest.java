@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gr.scharf.workingsets.benchmarks.SyntheticWorkspace;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DispatchIndexTest {
+	private static final String[] QUERIES = { SyntheticWorkspace.query(SyntheticWorkspace.EXTENSION),
+			SyntheticWorkspace.query(SyntheticWorkspace.FOLDER), SyntheticWorkspace.query(SyntheticWorkspace.EXCLUSIONS),
+			SyntheticWorkspace.query(SyntheticWorkspace.GLOB), SyntheticWorkspace.query(SyntheticWorkspace.AUTOMATON),
+			"(?i)/CORE/.*\\.PNG$", "Query[0-9]+\\.(java|class)$", "/doc/\n-\\.png$", "/(ui|io)/" };
+
+	private static List<RegExResourceFilter> filters(String... queries) {
+		List<RegExResourceFilter> filters = new ArrayList<RegExResourceFilter>();
+		for (String query : queries) {
+			filters.add(new RegExResourceFilter(query, null));
+		}
+		return filters;
+	}
+
+	/**
+	 * A filter that includes a file is always a candidate for it
+	 */
+	@Test
+	public void candidatesIncludeAllMatchingFilters() {
+		List<RegExResourceFilter> filters = filters(QUERIES);
+		DispatchIndex index = new DispatchIndex(filters);
+		SyntheticWorkspace workspace = new SyntheticWorkspace(20000);
+		int skipped = 0;
+		for (String path : workspace.getPaths()) {
+			Collection<RegExResourceFilter> candidates = index.getCandidates(path);
+			for (RegExResourceFilter filter : filters) {
+				if (filter.matches(path))
+					assertTrue(filter.getQuery() + " on " + path, candidates.contains(filter));
+				else if (!candidates.contains(filter))
+					skipped++;
+			}
+		}
+		// the index is not useless
+		assertTrue(skipped > workspace.size() * 3);
+	}
+
+	@Test
+	public void candidates() {
+		List<RegExResourceFilter> filters = filters("\\.xml$", "(?i)/TEST/", "/src/.*\\.java$\n-/internal/", "[0-9]$");
+		DispatchIndex index = new DispatchIndex(filters);
+		// the unconstrained filter and the filter of the extension
+		assertEquals(2, index.getCandidates("/p/plugin.XML").size());
+		assertTrue(index.getCandidates("/p/plugin.XML").contains(filters.get(0)));
+		assertTrue(index.getCandidates("/p/Test/A.java").contains(filters.get(1)));
+		assertTrue(index.getCandidates("/p/Test/A.java").contains(filters.get(2)));
+		assertFalse(index.getCandidates("/p/src/A.class").contains(filters.get(2)));
+		assertEquals(1, index.getCandidates("/p/a.txt").size());
+		assertTrue(index.getCandidates("/p/a.txt").contains(filters.get(3)));
+	}
+
+	@Test
+	public void onlyUnconstrained() {
+		List<RegExResourceFilter> filters = filters("[0-9]$", "#!collapse\n\\.java$");
+		DispatchIndex index = new DispatchIndex(filters);
+		assertEquals(2, index.getCandidates("/p/a.txt").size());
+	}
+}
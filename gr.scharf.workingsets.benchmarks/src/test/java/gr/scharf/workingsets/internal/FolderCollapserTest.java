@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gr.scharf.workingsets.benchmarks.SyntheticWorkspace;
+import gr.scharf.workingsets.internal.query.PathIndex;
+import gr.scharf.workingsets.internal.query.PathTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.core.runtime.Path;
+import org.junit.Test;
+
+public class FolderCollapserTest {
+	private static final String[] PATHS = { "/p/a/A.java", "/p/a/B.java", "/p/a/b/C.java", "/p/c/D.java",
+			"/p/c/E.txt" };
+
+	private static PathIndex index(String... paths) {
+		PathTable.Builder builder = new PathTable.Builder();
+		for (String path : paths) {
+			builder.add(path);
+		}
+		return new PathIndex(builder.build());
+	}
+
+	private static List<IAdaptable> members(String... paths) {
+		List<IAdaptable> members = new ArrayList<IAdaptable>();
+		for (String path : paths) {
+			members.add(SyntheticWorkspace.file(path));
+		}
+		return members;
+	}
+
+	@Test
+	public void reloadingTheSameMembersChangesNothing() {
+		PathIndex index = index(PATHS);
+		FolderCollapser collapser = new FolderCollapser();
+		collapser.reset(members("/p/a/A.java", "/p/a/B.java", "/p/a/b/C.java", "/p/c/D.java"));
+		assertTrue(collapser.update(index));
+		collapser.reset(members("/p/a/A.java", "/p/a/B.java", "/p/a/b/C.java", "/p/c/D.java"));
+		assertFalse(collapser.update(index));
+		assertFalse(collapser.needsUpdate());
+	}
+
+	@Test
+	public void fileThatDoesNotMatch() {
+		FolderCollapser collapser = new FolderCollapser();
+		collapser.reset(members("/p/a/A.java", "/p/a/B.java"));
+		assertTrue(collapser.update(index("/p/a/A.java", "/p/a/B.java")));
+		collapser.fileChanged(new Path("/p/a/C.txt"));
+		assertTrue(collapser.needsUpdate());
+		assertTrue(collapser.update(index("/p/a/A.java", "/p/a/B.java", "/p/a/C.txt")));
+		collapser.fileChanged(new Path("/p/a/C.txt"));
+		assertTrue(collapser.update(index("/p/a/A.java", "/p/a/B.java")));
+	}
+
+	@Test
+	public void removedMembers() {
+		PathIndex index = index(PATHS);
+		FolderCollapser collapser = new FolderCollapser();
+		List<IAdaptable> members = members("/p/a/A.java", "/p/a/B.java", "/p/a/b/C.java");
+		collapser.reset(members);
+		assertTrue(collapser.update(index));
+		collapser.removed(SyntheticWorkspace.file("/p/a/b/C.java"));
+		assertTrue(collapser.update(index));
+		collapser.reset(Collections.<IAdaptable> emptyList());
+		assertFalse(collapser.needsUpdate());
+		collapser.reset(Arrays.asList(members.get(0)));
+		assertFalse(collapser.update(index));
+	}
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class IntSetTest {
+	@Test
+	public void addAndRemove() {
+		IntSet set = new IntSet();
+		assertTrue(set.add(3));
+		assertFalse(set.add(3));
+		assertTrue(set.contains(3));
+		assertFalse(set.contains(4));
+		assertTrue(set.remove(3));
+		assertFalse(set.remove(3));
+		assertEquals(0, set.size());
+		assertEquals(0, set.toArray().length);
+	}
+
+	/**
+	 * The set grows, shrinks and moves the runs back on a removal, it has to
+	 * keep the same elements as a <code>HashSet</code>
+	 */
+	@Test
+	public void sameElementsAsHashSet() {
+		Random random = new Random(17);
+		IntSet set = new IntSet();
+		Set<Integer> expected = new HashSet<Integer>();
+		for (int i = 0; i < 200000; i++) {
+			// few distinct values and a growing and shrinking set cause long runs
+			int value = 1 + random.nextInt(i % 20000 < 10000 ? 5000 : 300);
+			if (random.nextInt(3) == 0 || i % 20000 >= 10000)
+				assertEquals(expected.remove(value), set.remove(value));
+			else
+				assertEquals(expected.add(value), set.add(value));
+			assertEquals(expected.size(), set.size());
+		}
+		for (int value = 1; value <= 5000; value++) {
+			assertEquals(expected.contains(value), set.contains(value));
+		}
+		Set<Integer> elements = new HashSet<Integer>();
+		for (int value : set.toArray()) {
+			elements.add(value);
+		}
+		assertEquals(expected, elements);
+	}
+
+	@Test
+	public void clear() {
+		IntSet set = new IntSet();
+		for (int value = 1; value < 100; value++) {
+			set.add(value);
+		}
+		set.clear();
+		assertEquals(0, set.size());
+		assertFalse(set.contains(1));
+		assertTrue(set.add(1));
+	}
+}
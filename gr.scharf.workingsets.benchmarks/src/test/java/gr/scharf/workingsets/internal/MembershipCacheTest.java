@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import gr.scharf.workingsets.internal.query.PathCursor;
+import gr.scharf.workingsets.internal.query.PathTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MembershipCacheTest {
+	@Rule
+	public TemporaryFolder fFolder = new TemporaryFolder();
+
+	private static PathTable table(String... paths) {
+		PathTable.Builder builder = new PathTable.Builder();
+		for (String path : paths) {
+			builder.add(path);
+		}
+		return builder.build();
+	}
+
+	private static List<String> paths(PathTable table) {
+		List<String> paths = new ArrayList<String>();
+		PathCursor cursor = table.cursor();
+		while (cursor.next()) {
+			paths.add(cursor.path().toString());
+		}
+		return paths;
+	}
+
+	@Test
+	public void readWhatWasWritten() throws IOException {
+		File directory = fFolder.newFolder();
+		MembershipCache cache = new MembershipCache(directory, 7);
+		assertNull(cache.read("\\.java$"));
+		cache.write("\\.java$", table("/p/A.java", "/p/B.java"), 7);
+		cache.write("\\.xml$", table("/p/plugin.xml"), 6);
+		MembershipCache.Entry entry = cache.read("\\.java$");
+		assertTrue(entry.isCurrent());
+		assertEquals(Arrays.asList("/p/A.java", "/p/B.java"), paths(entry.getMembers()));
+		assertFalse(cache.read("\\.xml$").isCurrent());
+		assertNull(cache.read("\\.txt$"));
+	}
+
+	/**
+	 * The file of the entry that has been read stays mapped, the next save
+	 * writes a new generation instead of replacing it
+	 */
+	@Test
+	public void writeWhileMapped() throws IOException {
+		File directory = fFolder.newFolder();
+		MembershipCache cache = new MembershipCache(directory, 1);
+		cache.write("a", table("/p/1"), 1);
+		MembershipCache.Entry mapped = cache.read("a");
+		cache.write("a", table("/p/1", "/p/2"), 2);
+		assertEquals(Arrays.asList("/p/1"), paths(mapped.getMembers()));
+		assertEquals(Arrays.asList("/p/1", "/p/2"), paths(new MembershipCache(directory, 2).read("a").getMembers()));
+		cache.write("a", table("/p/3"), 3);
+		assertEquals(Arrays.asList("/p/3"), paths(new MembershipCache(directory, 3).read("a").getMembers()));
+	}
+
+	@Test
+	public void retain() throws IOException {
+		File directory = fFolder.newFolder();
+		MembershipCache cache = new MembershipCache(directory, 1);
+		cache.write("a", table("/p/1"), 1);
+		cache.write("a", table("/p/2"), 1);
+		cache.write("b", table("/p/3"), 1);
+		// a file of the format without generations
+		assertTrue(new File(directory, "0123.members").createNewFile());
+		cache.retain(new HashSet<String>(Collections.singleton("a")));
+		assertEquals(1, directory.list().length);
+		assertEquals(Arrays.asList("/p/2"), paths(cache.read("a").getMembers()));
+		assertNull(cache.read("b"));
+	}
+}
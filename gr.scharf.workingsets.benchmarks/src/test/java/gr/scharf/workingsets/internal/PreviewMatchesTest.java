@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import gr.scharf.workingsets.benchmarks.SyntheticWorkspace;
+import gr.scharf.workingsets.internal.query.PathCursor;
+import gr.scharf.workingsets.internal.query.PathTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PreviewMatchesTest {
+	/**
+	 * @return the matches of the sorted paths published in batches of up to 1000
+	 */
+	private static PreviewMatches matches(List<String> paths) {
+		PreviewMatches matches = PreviewMatches.EMPTY;
+		PathTable.Builder builder = new PathTable.Builder();
+		int n = 0;
+		for (String path : paths) {
+			builder.add(path);
+			if (++n % 1000 == 0) {
+				matches = matches.append(builder.build());
+				builder = new PathTable.Builder();
+			}
+		}
+		return matches.append(builder.build());
+	}
+
+	private static List<String> sortedPaths(int files) {
+		List<String> paths = new ArrayList<String>(Arrays.asList(new SyntheticWorkspace(files).getPaths()));
+		Collections.sort(paths);
+		return paths;
+	}
+
+	@Test
+	public void rowsAcrossBatches() {
+		List<String> paths = sortedPaths(5500);
+		PreviewMatches matches = matches(paths);
+		assertEquals(paths.size(), matches.size());
+		for (int i = 0; i < paths.size(); i += 7) {
+			assertEquals(paths.get(i), matches.getPath(i));
+		}
+		assertEquals(paths.get(paths.size() - 1), matches.getPath(paths.size() - 1));
+		List<String> cursor = new ArrayList<String>();
+		PathCursor c = matches.cursor();
+		while (c.next()) {
+			cursor.add(c.path().toString());
+		}
+		assertEquals(paths, cursor);
+	}
+
+	@Test
+	public void emptyBatches() {
+		PreviewMatches matches = PreviewMatches.EMPTY.append(PathTable.EMPTY);
+		assertTrue(matches == PreviewMatches.EMPTY);
+		assertEquals(0, matches.size());
+		matches.computeNameOrder();
+		assertEquals(0, matches.getNameOrder().length);
+	}
+
+	/**
+	 * The order by name is the order of a stable sort of the paths by name
+	 */
+	@Test
+	public void nameOrder() {
+		final List<String> paths = sortedPaths(5500);
+		PreviewMatches matches = matches(paths);
+		assertNull(matches.getNameOrder());
+		matches.computeNameOrder();
+		int[] order = matches.getNameOrder();
+		List<String> expected = new ArrayList<String>(paths);
+		Collections.sort(expected, new Comparator<String>() {
+			public int compare(String a, String b) {
+				return PreviewMatches.getName(a).compareTo(PreviewMatches.getName(b));
+			}
+		});
+		assertEquals(expected.size(), order.length);
+		for (int i = 0; i < order.length; i++) {
+			assertEquals(expected.get(i), matches.getPath(order[i]));
+		}
+	}
+
+	@Test
+	public void getName() {
+		assertEquals("A.java", PreviewMatches.getName("/p/src/A.java"));
+		assertEquals("p", PreviewMatches.getName("/p"));
+	}
+}
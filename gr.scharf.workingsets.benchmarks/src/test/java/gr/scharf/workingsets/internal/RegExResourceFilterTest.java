@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gr.scharf.workingsets.benchmarks.SyntheticWorkspace;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.ui.IWorkingSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RegExResourceFilterTest {
+	private SyntheticWorkspace fWorkspace;
+	private IWorkingSet fWorkingSet;
+	private RegExResourceFilter fFilter;
+
+	@Before
+	public void setUp() throws CoreException {
+		fWorkspace = new SyntheticWorkspace(1000);
+		fWorkingSet = SyntheticWorkspace.workingSet("\\.java$");
+		fFilter = new RegExResourceFilter(fWorkingSet);
+		fWorkspace.accept(fFilter);
+		fFilter.endUpdate();
+	}
+
+	@After
+	public void tearDown() {
+		fFilter.dispose();
+	}
+
+	/**
+	 * Adds a file in a batch of its own, the working set notifies the filter
+	 * only after the batch (asynchronously, like off the UI thread)
+	 */
+	private void addFile(int i) throws CoreException {
+		fFilter.beginUpdate();
+		fFilter.addResource(SyntheticWorkspace.proxy(fWorkspace.newPath(i)));
+		fFilter.endUpdate();
+	}
+
+	@Test
+	public void ownChangesDoNotReload() throws CoreException {
+		int members = fFilter.getResult().size();
+		long reloads = fFilter.getStatistics().getReloads();
+		addFile(1);
+		addFile(2);
+		assertFalse(fFilter.elementsChanged());
+		assertFalse(fFilter.elementsChanged());
+		addFile(3);
+		assertFalse(fFilter.elementsChanged());
+		assertEquals(reloads, fFilter.getStatistics().getReloads());
+		assertEquals(members + 3, fFilter.getResult().size());
+		assertEquals(members + 3, fWorkingSet.getElements().length);
+	}
+
+	@Test
+	public void foreignChangesReload() throws CoreException {
+		long reloads = fFilter.getStatistics().getReloads();
+		IAdaptable file = SyntheticWorkspace.file(fWorkspace.newPath(1));
+		fWorkingSet.setElements(new IAdaptable[] { file });
+		assertTrue(fFilter.elementsChanged());
+		fFilter.beginUpdate();
+		fFilter.endUpdate();
+		assertEquals(reloads + 1, fFilter.getStatistics().getReloads());
+		assertEquals(1, fFilter.getResult().size());
+		assertTrue(fFilter.getResult().contains(file));
+		assertFalse(fFilter.elementsChanged());
+	}
+
+	@Test
+	public void lateNotificationOfAnOlderChange() throws CoreException {
+		long reloads = fFilter.getStatistics().getReloads();
+		addFile(1);
+		// the notification of the first batch arrives after the second
+		addFile(2);
+		assertFalse(fFilter.elementsChanged());
+		assertEquals(reloads, fFilter.getStatistics().getReloads());
+	}
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gr.scharf.workingsets.benchmarks.SyntheticWorkspace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.core.runtime.Path;
+import org.junit.Test;
+
+public class ResourceDictionaryTest {
+	@Test
+	public void sharedIds() {
+		ResourceDictionary dictionary = new ResourceDictionary();
+		IFile file = SyntheticWorkspace.file("/p/a.txt");
+		assertEquals(0, dictionary.find(file));
+		int id = dictionary.acquire(file);
+		// an equal handle of another working set gets the same id
+		assertEquals(id, dictionary.acquire(SyntheticWorkspace.file("/p/a.txt")));
+		assertEquals(id, dictionary.find(SyntheticWorkspace.file("/p/a.txt")));
+		assertTrue(file == dictionary.get(id));
+		dictionary.release(id);
+		assertEquals(id, dictionary.find(file));
+		dictionary.release(id);
+		assertEquals(0, dictionary.find(file));
+		assertEquals(0, dictionary.size());
+	}
+
+	@Test
+	public void idsAreReused() {
+		ResourceDictionary dictionary = new ResourceDictionary();
+		SyntheticWorkspace workspace = new SyntheticWorkspace(5000);
+		String[] paths = workspace.getPaths();
+		int[] ids = new int[paths.length];
+		for (int i = 0; i < paths.length; i++) {
+			ids[i] = dictionary.acquire(SyntheticWorkspace.file(paths[i]));
+		}
+		assertEquals(paths.length, dictionary.size());
+		// every second resource is dropped, the run of the others is still found
+		for (int i = 0; i < paths.length; i += 2) {
+			dictionary.release(ids[i]);
+		}
+		for (int i = 0; i < paths.length; i++) {
+			assertEquals(i % 2 == 0 ? 0 : ids[i], dictionary.find(SyntheticWorkspace.file(paths[i])));
+		}
+		int id = dictionary.acquire(SyntheticWorkspace.file("/new/file"));
+		assertTrue(id <= paths.length);
+		int[] odd = new int[paths.length / 2];
+		for (int i = 0; i < odd.length; i++) {
+			odd[i] = ids[2 * i + 1];
+		}
+		Object[] resources = new Object[odd.length];
+		dictionary.get(odd, resources, 0);
+		for (int i = 0; i < odd.length; i++) {
+			assertEquals(new Path(paths[2 * i + 1]), ((IFile) resources[i]).getFullPath());
+		}
+	}
+
+	@Test
+	public void membershipSet() {
+		MembershipSet set = new MembershipSet();
+		List<IFile> files = Arrays.asList(SyntheticWorkspace.file("/p/src/a.java"),
+				SyntheticWorkspace.file("/p/src/b.java"), SyntheticWorkspace.file("/p/doc/c.html"),
+				SyntheticWorkspace.file("/q/d.txt"));
+		set.addAll(files);
+		assertEquals(4, set.size());
+		assertTrue(set.contains(SyntheticWorkspace.file("/p/src/b.java")));
+		IAdaptable[] elements = set.toArray(new IAdaptable[0]);
+		assertEquals(new HashSet<Object>(files), new HashSet<Object>(Arrays.asList(elements)));
+		// the array is filled and terminated with null
+		IAdaptable[] larger = set.toArray(new IAdaptable[6]);
+		assertEquals(null, larger[4]);
+		assertEquals(2, set.removeAll(new Path("/p/src"), null));
+		assertArrayEquals(new Object[] { files.get(2), files.get(3) }, sorted(set.toArray()));
+		set.clear();
+		assertEquals(0, ResourceDictionary.getDefault().find(files.get(3)));
+	}
+
+	@Test
+	public void closedProjectIsReleasedLater() {
+		MembershipSet set = new MembershipSet();
+		List<IFile> files = Arrays.asList(SyntheticWorkspace.file("/p/a.java"), SyntheticWorkspace.file("/p/b/c.java"),
+				SyntheticWorkspace.file("/q/d.txt"));
+		set.addAll(files);
+		List<IAdaptable> removed = new ArrayList<IAdaptable>();
+		assertEquals(2, set.removeAll(new Path("/p"), removed));
+		assertEquals(new HashSet<Object>(files.subList(0, 2)), new HashSet<Object>(removed));
+		assertEquals(1, set.size());
+		assertFalse(set.contains(files.get(0)));
+		assertArrayEquals(new Object[] { files.get(2) }, set.toArray());
+		// the ids of the project are released after the batch
+		assertTrue(ResourceDictionary.getDefault().find(files.get(1)) != 0);
+		set.releaseDropped();
+		assertEquals(0, ResourceDictionary.getDefault().find(files.get(1)));
+		assertEquals(0, set.removeAll(new Path("/p"), null));
+		assertEquals(1, set.removeAll(new Path("/q"), null));
+		// clearing the set releases the dropped projects too
+		set.clear();
+		assertEquals(0, ResourceDictionary.getDefault().find(files.get(2)));
+	}
+
+	private static Object[] sorted(Object[] elements) {
+		Arrays.sort(elements, new Comparator<Object>() {
+			public int compare(Object a, Object b) {
+				return a.toString().compareTo(b.toString());
+			}
+		});
+		return elements;
+	}
+}
@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.engine;
+
+/**
+ * Thrown by {@link QueryMatcher#matches(CharSequence)} if the regular expressions
+ * read more characters of a path than the budget of the query allows. This
+ * happens when an expression backtracks excessively, e.g. <code>(a+)+$</code>.
+ */
+public class BudgetExceededException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+	private final String fQuery;
+	private final String fPath;
+
+	public BudgetExceededException(String query, String path, long budget) {
+		super("The query exceeded its budget of " + budget + " characters while matching " + path);
+		fQuery = query;
+		fPath = path;
+	}
+
+	public String getQuery() {
+		return fQuery;
+	}
+
+	public String getPath() {
+		return fPath;
+	}
+}
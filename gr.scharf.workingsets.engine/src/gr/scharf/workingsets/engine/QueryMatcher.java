@@ -0,0 +1,547 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.engine;
+
+import gr.scharf.workingsets.internal.query.BacktrackingAnalysis;
+import gr.scharf.workingsets.internal.query.Glob;
+import gr.scharf.workingsets.internal.query.GlobTrie;
+import gr.scharf.workingsets.internal.query.LiteralAnalysis;
+import gr.scharf.workingsets.internal.query.MultiPatternAutomaton;
+import gr.scharf.workingsets.internal.query.Query;
+import gr.scharf.workingsets.internal.query.RegexNode;
+import gr.scharf.workingsets.internal.query.RegexParser;
+import gr.scharf.workingsets.internal.query.SubtreePruner;
+import gr.scharf.workingsets.internal.query.UnsupportedRegexException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches the full paths of files (<code>/project/folder/file.txt</code>) against
+ * a query. A query has one expression per line, see {@link Query} for the syntax.
+ * The last line matching a path decides: the file is included unless that
+ * line is an exclusion (starts with '-').
+ * <p>
+ * The matcher does not depend on Eclipse. The predicates on the attributes of
+ * the files (see {@link #getPredicates()}) need the files and are left to the caller.
+ * A matcher can be used by several threads at the same time.
+ * <p>
+ * Matching a path does not allocate: each thread has a {@link Context} with
+ * the {@link Matcher}s of the patterns, the result is kept in primitives.
+ * <p>
+ * A backtracking {@link Pattern} can take exponential time on some paths. The 
+ * patterns therefore read the path through a budget (see {@link #DEFAULT_BUDGET}),
+ * {@link #matches(CharSequence)} throws a {@link BudgetExceededException} when 
+ * it is exhausted. The automaton engines do not backtrack.
+ */
+public class QueryMatcher {
+	/**
+	 * The number of characters the patterns of a query may read to match one path, 
+	 * can be set with the system property <code>gr.scharf.workingsets.budget</code> 
+	 * and with the option <code>#!budget</code> of a query (0 means no limit). 
+	 * Matching a path of 100 characters normally reads less than a thousand.
+	 */
+	public static final long DEFAULT_BUDGET = Long.getLong("gr.scharf.workingsets.budget", 1000000);
+	
+	static final int NONE = 0;
+	static final int INCLUDE = 1;
+	static final int EXCLUDE = 2;
+	
+	class RegexIncludeMatcher implements ResournceMatcher {
+		/**
+		 * The index of the pattern in {@link Context#matchers}
+		 */
+		protected final int slot;
+
+		RegexIncludeMatcher(String filter) {
+			this.slot = addPattern(filter);
+		}
+
+		@Override
+		public int matchResource(CharSequence path, Context context) {
+			context.expressions++;
+			if(context.matcher(slot).find()) {
+				return INCLUDE;
+			}
+			return NONE;
+		}
+		public boolean isExclusion() {
+			return false;
+		}
+	}
+	class RegexExcludeMatcher extends RegexIncludeMatcher {
+		RegexExcludeMatcher(String filter) {
+			super(filter);
+		}
+
+		@Override
+		public int matchResource(CharSequence path, Context context) {
+			context.expressions++;
+			if(context.matcher(slot).find()) {
+				return EXCLUDE;
+			}
+			return NONE;
+		}
+		public boolean isExclusion() {
+			return true;
+		}
+
+	}
+
+	/**
+	 * Finds the last line of the query that matches the path. Glob lines are
+	 * matched with a {@link GlobTrie}. Regular expressions are matched in a single
+	 * pass with a {@link MultiPatternAutomaton} if the automaton engine is selected.
+	 * The other lines (and the lines the automaton cannot handle) are matched with
+	 * their pattern, but only if they are after the last line matched so far.
+	 */
+	class LastLineMatcher implements ResournceMatcher {
+		private final boolean[] fExclusions;
+		/**
+		 * The slot (see {@link Context#matchers}) of each regular expression line, -1 for glob lines
+		 */
+		private final int[] fSlots;
+		/**
+		 * True for the lines matched by the automaton
+		 */
+		private final boolean[] fAutomatonLines;
+		private final GlobTrie fGlobs;
+		private final MultiPatternAutomaton fAutomaton;
+		/**
+		 * Maps the index of an expression of the automaton to the line index
+		 */
+		private final int[] fLineOfExpression;
+
+		/**
+		 * @param lines the lines of the query in the order entered by the user
+		 * @param useAutomaton match the regular expressions with a {@link MultiPatternAutomaton}
+		 * @param linear all regular expressions must be matched by the automaton
+		 */
+		LastLineMatcher(List<Query.Line> lines, boolean useAutomaton, boolean linear) {
+			int n = lines.size();
+			fExclusions = new boolean[n];
+			fSlots = new int[n];
+			fAutomatonLines = new boolean[n];
+			List<Glob> globs = new ArrayList<Glob>();
+			int[] globLines = new int[n];
+			List<String> regexes = new ArrayList<String>();
+			int[] regexLines = new int[n];
+			for (int i = 0; i < n; i++) {
+				Query.Line line = lines.get(i);
+				fExclusions[i] = line.exclusion;
+				if (line.glob) {
+					fSlots[i] = -1;
+					globLines[globs.size()] = i;
+					globs.add(Glob.compile(line.text));
+				} else {
+					fSlots[i] = addPattern(line.text);
+					regexLines[regexes.size()] = i;
+					regexes.add(line.text);
+				}
+			}
+			fGlobs = globs.isEmpty() ? null : new GlobTrie(globs, globLines);
+			if (useAutomaton && !regexes.isEmpty()) {
+				fAutomaton = new MultiPatternAutomaton(regexes.toArray(new String[regexes.size()]));
+				fLineOfExpression = Arrays.copyOf(regexLines, regexes.size());
+				for (int i = 0; i < fLineOfExpression.length; i++) {
+					fAutomatonLines[fLineOfExpression[i]] = fAutomaton.isSupported(i);
+					if (linear && !fAutomaton.isSupported(i))
+						throw new PatternSyntaxException("Not supported by the linear engine: " + fAutomaton.getError(i).getMessage(), 
+								regexes.get(i), -1);
+				}
+			} else {
+				fAutomaton = null;
+				fLineOfExpression = null;
+			}
+		}
+
+		@Override
+		public int matchResource(CharSequence path, Context context) {
+			int last = -1;
+			if (fGlobs != null) {
+				context.expressions++;
+				last = fGlobs.lastMatch(path);
+			}
+			boolean undecided = false;
+			if (fAutomaton != null) {
+				context.expressions++;
+				if (context.run == null)
+					context.run = fAutomaton.newRun();
+				int match = context.run.lastMatch(path);
+				if (match == MultiPatternAutomaton.UNDECIDED)
+					undecided = true;
+				else if (match >= 0)
+					last = Math.max(last, fLineOfExpression[match]);
+			}
+			for (int i = fSlots.length - 1; i >= 0 && i > last; i--) {
+				// the lines not matched so far and all lines if the automaton cannot decide
+				if (fSlots[i] >= 0 && (undecided || !fAutomatonLines[i])) {
+					context.expressions++;
+					if (context.matcher(fSlots[i]).find()) {
+						last = i;
+						break;
+					}
+				}
+			}
+			if (last < 0)
+				return NONE;
+			return fExclusions[last] ? EXCLUDE : INCLUDE;
+		}
+	}
+
+	/**
+	 * The state of a thread matching paths, reused for all paths. The context
+	 * is the value of a {@link ThreadLocal} in long living threads and must not
+	 * reference the matcher, otherwise the matcher would never be collected.
+	 */
+	static class Context {
+		/**
+		 * The number of paths matched
+		 */
+		long matches;
+		/**
+		 * The number of expressions evaluated (a {@link GlobTrie} and an automaton count as one)
+		 */
+		long expressions;
+		/**
+		 * A matcher for each pattern, created when first used
+		 */
+		final Matcher[] matchers;
+		private final List<Pattern> fPatterns;
+		/**
+		 * Keeps the state of the simulation of the automaton
+		 */
+		MultiPatternAutomaton.Run run;
+		/**
+		 * The path being matched as seen by the patterns
+		 */
+		final BudgetedPath text;
+
+		Context(List<Pattern> patterns, String query, long budget) {
+			fPatterns = patterns;
+			matchers = new Matcher[patterns.size()];
+			text = new BudgetedPath(query, budget);
+		}
+
+		/**
+		 * @return the matcher of a pattern reset to the {@link #text}
+		 */
+		Matcher matcher(int slot) {
+			Matcher matcher = matchers[slot];
+			if (matcher == null) {
+				matcher = fPatterns.get(slot).matcher(text);
+				matchers[slot] = matcher;
+				return matcher;
+			}
+			return matcher.reset(text);
+		}
+	}
+
+	/**
+	 * Counts the characters read by the patterns, see {@link #DEFAULT_BUDGET}
+	 */
+	public static class BudgetedPath implements CharSequence {
+		private final String fQuery;
+		private final long fBudget;
+		private CharSequence fPath;
+		/**
+		 * The path reported when the budget is exhausted, null for {@link #fPath}
+		 */
+		private String fName;
+		private long fRemaining;
+
+		/**
+		 * @param query the query reported when the budget is exhausted
+		 * @param budget the number of characters of a text that may be read, 0 for no limit
+		 */
+		public BudgetedPath(String query, long budget) {
+			fQuery = query;
+			fBudget = budget;
+		}
+
+		void reset(CharSequence path) {
+			reset(path, null);
+		}
+
+		/**
+		 * @param text the text the patterns read next, e.g. the content of a file
+		 * @param name the path of the text reported when the budget is exhausted
+		 */
+		public void reset(CharSequence text, String name) {
+			fPath = text;
+			fName = name;
+			fRemaining = fBudget == 0 ? Long.MAX_VALUE : fBudget;
+		}
+
+		public char charAt(int index) {
+			if (fRemaining-- == 0)
+				throw new BudgetExceededException(fQuery, fName != null ? fName : fPath.toString(), fBudget);
+			return fPath.charAt(index);
+		}
+
+		public int length() {
+			return fPath.length();
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			return fPath.subSequence(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return fPath.toString();
+		}
+	}
+	interface ResournceMatcher {
+		/**
+		 * @return {@link #INCLUDE} or {@link #EXCLUDE} if the matcher decides, else {@link #NONE}
+		 */
+		int matchResource(CharSequence path, Context context);
+	}
+	/**
+	 * The patterns of the regular expression lines
+	 */
+	private final List<Pattern> fPatterns = new ArrayList<Pattern>();
+	private final ResournceMatcher[] fMatchers;
+	private final String fQuery;
+	/**
+	 * See {@link #DEFAULT_BUDGET}, 0 for no limit
+	 */
+	private final long fBudget;
+	/**
+	 * The regular expressions are matched by a {@link MultiPatternAutomaton}
+	 */
+	private final boolean fAutomaton;
+	private final Query fParsedQuery;
+	/**
+	 * The lower case extensions and literals required by the include lines
+	 */
+	private Set<String> fExtensions;
+	private Set<String> fLiterals;
+	private boolean fUnconstrained;
+	/**
+	 * Skips folders that cannot contain matching files
+	 */
+	private final SubtreePruner fPruner;
+	/**
+	 * The contexts of all threads for the counts, a shared counter would be 
+	 * contended by parallel scans
+	 */
+	private final List<Context> fContexts = new ArrayList<Context>();
+	private final ThreadLocal<Context> fContext = new ThreadLocal<Context>() {
+		@Override
+		protected Context initialValue() {
+			Context context = new Context(fPatterns, fQuery, fBudget);
+			synchronized (fContexts) {
+				fContexts.add(context);
+			}
+			return context;
+		}
+	};
+
+	/**
+	 * @throws java.util.regex.PatternSyntaxException if a line is not a valid expression
+	 */
+	public QueryMatcher(String query) {
+		// see http://stackoverflow.com/questions/1247772/is-there-an-equivalent-of-java-util-regex-for-glob-type-patterns
+		Query parsed = Query.parse(query);
+		boolean globs = false;
+		for (Query.Line line : parsed.getLines()) {
+			globs |= line.glob;
+		}
+		computeRequirements(parsed.getLines());
+		fPruner = new SubtreePruner(parsed.getLines());
+		String engine = parsed.getOption(Query.OPTION_ENGINE);
+		boolean linear = Query.ENGINE_LINEAR.equals(engine);
+		boolean automaton = linear || Query.ENGINE_AUTOMATON.equals(engine);
+		fBudget = parseBudget(parsed.getOption(Query.OPTION_BUDGET));
+		fAutomaton = automaton;
+		if(automaton || globs) {
+			fMatchers = new ResournceMatcher[] { new LastLineMatcher(parsed.getLines(), automaton, linear) };
+		} else {
+			List<RegexIncludeMatcher> matchers=new ArrayList<RegexIncludeMatcher>();
+			for (Query.Line line : parsed.getLines()) {
+				if(line.exclusion) {
+					matchers.add(new RegexExcludeMatcher(line.text));
+				} else {
+					matchers.add(new RegexIncludeMatcher(line.text));
+				}
+			}
+			// we reverse the collection to be able to prune the search if we find
+			// a matcher that is a exclusion matcher
+			Collections.reverse(matchers);
+			fMatchers = matchers.toArray(new ResournceMatcher[matchers.size()]);
+		}
+		fQuery = query;
+		fParsedQuery = parsed;
+	}
+	private static long parseBudget(String budget) {
+		if (budget == null)
+			return DEFAULT_BUDGET;
+		try {
+			long value = Long.parseLong(budget.trim());
+			if (value >= 0)
+				return value;
+		} catch (NumberFormatException e) {
+		}
+		throw new PatternSyntaxException("The budget must be a number of characters", budget, -1);
+	}
+	private void computeRequirements(List<Query.Line> lines) {
+		fExtensions = new HashSet<String>();
+		fLiterals = new HashSet<String>();
+		fUnconstrained = false;
+		for (Query.Line line : lines) {
+			if(line.exclusion)
+				continue;
+			try {
+				Set<String> extensions;
+				String literal;
+				if(line.glob) {
+					Glob glob = Glob.compile(line.text);
+					extensions = glob.extensions();
+					literal = glob.requiredLiteral();
+				} else {
+					RegexNode node = RegexParser.parse(line.text);
+					extensions = LiteralAnalysis.extensions(node);
+					literal = LiteralAnalysis.requiredLiteral(node);
+				}
+				if(extensions!=null)
+					fExtensions.addAll(extensions);
+				else if(literal!=null)
+					fLiterals.add(literal);
+				else
+					fUnconstrained = true;
+			} catch (UnsupportedRegexException e) {
+				fUnconstrained = true;
+			}
+		}
+	}
+	public String getQuery() {
+		return fQuery;
+	}
+	public Query getParsedQuery() {
+		return fParsedQuery;
+	}
+	/**
+	 * @return the predicates on the attributes and the content of the files,
+	 * see {@link Query#getPredicates()}. They are not checked by {@link #matches(CharSequence)}.
+	 */
+	public List<Query.Line> getPredicates() {
+		return fParsedQuery.getPredicates();
+	}
+	/**
+	 * @return true if a file must be matched even if it has none of the
+	 * {@link #getExtensions()} and none of the {@link #getLiterals()}
+	 */
+	public boolean isUnconstrained() {
+		return fUnconstrained;
+	}
+	/**
+	 * @return the lower case extensions of files the query might include
+	 */
+	public Set<String> getExtensions() {
+		return fExtensions;
+	}
+	/**
+	 * @return the lower case literals of which the path of a file the query
+	 * might include contains at least one (unless the file has one of the
+	 * {@link #getExtensions()})
+	 */
+	public Set<String> getLiterals() {
+		return fLiterals;
+	}
+	public SubtreePruner getPruner() {
+		return fPruner;
+	}
+	/**
+	 * @return the number of paths matched so far
+	 */
+	public long getMatchCount() {
+		long count = 0;
+		synchronized (fContexts) {
+			for (Context context : fContexts) {
+				count += context.matches;
+			}
+		}
+		return count;
+	}
+	/**
+	 * @return the number of expressions evaluated so far, a path might need 
+	 * the evaluation of several lines of the query
+	 */
+	public long getExpressionCount() {
+		long count = 0;
+		synchronized (fContexts) {
+			for (Context context : fContexts) {
+				count += context.expressions;
+			}
+		}
+		return count;
+	}
+	/**
+	 * @return a description of each line that is matched by a backtracking {@link Pattern}
+	 * and that might take exponential time, see {@link BacktrackingAnalysis}
+	 */
+	public List<String> getBacktrackingRisks() {
+		List<String> risks = new ArrayList<String>();
+		for (Query.Line line : fParsedQuery.getLines()) {
+			if (line.glob)
+				continue;
+			try {
+				RegexNode node = RegexParser.parse(line.text);
+				// the automaton matches the lines it can parse in linear time
+				if (fAutomaton)
+					continue;
+				String problem = BacktrackingAnalysis.findProblem(node);
+				if (problem != null)
+					risks.add(line.text + ": " + problem);
+			} catch (UnsupportedRegexException e) {
+				// cannot tell
+			}
+		}
+		return risks;
+	}
+	/**
+	 * @return the slot of the pattern in {@link Context#matchers}
+	 * @throws java.util.regex.PatternSyntaxException if the expression is not valid
+	 */
+	private int addPattern(String regex) {
+		fPatterns.add(Pattern.compile(regex));
+		return fPatterns.size() - 1;
+	}
+	/**
+	 * @param path the full path of a file
+	 * @return true if the query includes the file
+	 */
+	public boolean matches(CharSequence path) {
+		Context context = fContext.get();
+		context.matches++;
+		context.text.reset(path);
+		// Note: we iterate in reverse order of the way the user entered  the filter
+		// because the list has been reversed....
+		for (int i = 0; i < fMatchers.length; i++) {
+			int result = fMatchers[i].matchResource(path, context);
+			if(result == EXCLUDE) {
+				// the filters above have no effect
+				return false;
+			} else if(result == INCLUDE) {
+				// because we iterate in reverse order, the an include cannot be hidden
+				// by an exclude
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.engine;
+
+import gr.scharf.workingsets.internal.query.PathBuffer;
+import gr.scharf.workingsets.internal.query.Query;
+import gr.scharf.workingsets.internal.query.SubtreePruner;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Evaluates a query over directory trees:
+ * <pre>
+ * java -jar gr.scharf.workingsets.engine.jar [-c] (-f file | -e line ... | query) directory...
+ * </pre>
+ * Each directory is treated like the root of a workspace: the path matched against
+ * the query is '/' followed by the path of the file relative to the directory, so
+ * the folders directly below the directory are the projects. The matching files
+ * are printed, with <code>-c</code> only their number. Folders that cannot contain
+ * matching files are not visited. The paths are built in a reusable buffer by appending the
+ * name of each file to the path of its folder.
+ * <p>
+ * The exit code is 0 if a file matched, 1 if none matched and 2 on errors.
+ */
+public class QueryTool {
+	private final QueryMatcher fMatcher;
+	private final PrintStream fOut;
+	private final boolean fCountOnly;
+	private int fCount;
+
+	public QueryTool(QueryMatcher matcher, PrintStream out, boolean countOnly) {
+		fMatcher = matcher;
+		fOut = out;
+		fCountOnly = countOnly;
+	}
+
+	public static void main(String[] args) {
+		System.exit(run(args));
+	}
+
+	static int run(String[] args) {
+		boolean countOnly = false;
+		StringBuilder query = null;
+		List<String> directories = new ArrayList<String>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if ("-c".equals(arg)) {
+					countOnly = true;
+				} else if ("-e".equals(arg) && i + 1 < args.length) {
+					query = query == null ? new StringBuilder() : query.append('\n');
+					query.append(args[++i]);
+				} else if ("-f".equals(arg) && i + 1 < args.length) {
+					byte[] content = Files.readAllBytes(Paths.get(args[++i]));
+					query = new StringBuilder(new String(content, Charset.defaultCharset()));
+				} else if (arg.startsWith("-") && arg.length() > 1) {
+					return usage("Unknown option: " + arg);
+				} else if (query == null) {
+					query = new StringBuilder(arg);
+				} else {
+					directories.add(arg);
+				}
+			}
+		} catch (IOException e) {
+			System.err.println(e);
+			return 2;
+		}
+		if (query == null)
+			return usage("No query");
+		if (directories.isEmpty())
+			return usage("No directory");
+		for (String directory : directories) {
+			if (!Files.isDirectory(Paths.get(directory)))
+				return usage("Not a directory: " + directory);
+		}
+		QueryMatcher matcher;
+		try {
+			matcher = new QueryMatcher(query.toString());
+		} catch (PatternSyntaxException e) {
+			System.err.println(e.getMessage());
+			return 2;
+		}
+		for (Query.Line predicate : matcher.getPredicates()) {
+			System.err.println("Ignoring the predicate: " + predicate.text);
+		}
+		for (String risk : matcher.getBacktrackingRisks()) {
+			System.err.println("Might take exponential time: " + risk);
+		}
+		PrintStream out = new PrintStream(new BufferedOutputStream(System.out, 64 * 1024), false);
+		QueryTool tool = new QueryTool(matcher, out, countOnly);
+		try {
+			for (String directory : directories) {
+				tool.scan(Paths.get(directory));
+			}
+		} catch (IOException e) {
+			out.flush();
+			System.err.println(e);
+			return 2;
+		} catch (BudgetExceededException e) {
+			out.flush();
+			System.err.println(e.getMessage());
+			return 2;
+		}
+		if (countOnly)
+			out.println(tool.getCount());
+		out.flush();
+		return tool.getCount() > 0 ? 0 : 1;
+	}
+
+	private static int usage(String message) {
+		System.err.println(message);
+		System.err.println("Usage: java -jar gr.scharf.workingsets.engine.jar [-c] (-f file | -e line ... | query) directory...");
+		return 2;
+	}
+
+	/**
+	 * Matches the files below the directory
+	 */
+	public void scan(final Path directory) throws IOException {
+		final SubtreePruner pruner = fMatcher.getPruner();
+		final PathBuffer path = new PathBuffer();
+		Files.walkFileTree(directory, EnumSet.noneOf(FileVisitOption.class), Integer.MAX_VALUE,
+				new SimpleFileVisitor<Path>() {
+					/**
+					 * The length of the path of each open folder, the root has the empty path
+					 */
+					private int[] fLengths = new int[16];
+					private int fDepth;
+
+					@Override
+					public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+						if (dir.equals(directory))
+							return FileVisitResult.CONTINUE;
+						int length = path.length();
+						appendName(dir);
+						if (pruner.isPruned(path)) {
+							path.setLength(length);
+							return FileVisitResult.SKIP_SUBTREE;
+						}
+						if (fDepth == fLengths.length)
+							fLengths = Arrays.copyOf(fLengths, 2 * fDepth);
+						fLengths[fDepth++] = length;
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+						if (fDepth > 0 && !dir.equals(directory))
+							path.setLength(fLengths[--fDepth]);
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+						if (attrs.isRegularFile()) {
+							int length = path.length();
+							appendName(file);
+							match(path);
+							path.setLength(length);
+						}
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFileFailed(Path file, IOException e) {
+						// e.g. no permission, we just skip the file
+						return FileVisitResult.CONTINUE;
+					}
+
+					private void appendName(Path file) {
+						path.append('/');
+						path.append(file.getFileName().toString());
+					}
+				});
+	}
+
+	void match(CharSequence path) {
+		if (!fMatcher.matches(path))
+			return;
+		fCount++;
+		if (!fCountOnly)
+			fOut.println(path);
+	}
+
+	/**
+	 * @return the number of matching files so far
+	 */
+	public int getCount() {
+		return fCount;
+	}
+}
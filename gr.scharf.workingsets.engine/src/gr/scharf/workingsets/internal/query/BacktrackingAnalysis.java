@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the constructs that make a backtracking matcher like {@link java.util.regex.Pattern}
+ * take exponential time on some inputs:
+ * <ul>
+ * <li>nested repetitions that can split a run of characters in many ways: 
+ * <code>(a+)+</code>, <code>(\w+\s?)*</code></li>
+ * <li>repeated alternatives that can match the same characters: 
+ * <code>(\w|\d)+</code>, <code>(a|aa)*</code></li>
+ * </ul>
+ * Polynomial cases like <code>.*.*x</code> are not reported.
+ */
+public class BacktrackingAnalysis {
+	/**
+	 * Repetitions with a larger maximum are treated like unbounded ones
+	 */
+	private static final int LARGE = 10;
+
+	/**
+	 * @return a description of the problem or null if the expression does not backtrack exponentially
+	 */
+	public static String findProblem(RegexNode node) {
+		if (node instanceof RegexNode.Repeat) {
+			RegexNode.Repeat repeat = (RegexNode.Repeat) node;
+			if (isLarge(repeat)) {
+				if (repeatsAmbiguously(repeat.node))
+					return "nested repetition";
+				if (hasOverlappingAlternatives(repeat.node))
+					return "repeated alternatives that match the same characters";
+			}
+			return findProblem(repeat.node);
+		}
+		List<RegexNode> children;
+		if (node instanceof RegexNode.Concat)
+			children = ((RegexNode.Concat) node).items;
+		else if (node instanceof RegexNode.Alternation)
+			children = ((RegexNode.Alternation) node).branches;
+		else
+			return null;
+		for (RegexNode child : children) {
+			String problem = findProblem(child);
+			if (problem != null)
+				return problem;
+		}
+		return null;
+	}
+
+	private static boolean isLarge(RegexNode.Repeat repeat) {
+		return repeat.max == RegexNode.Repeat.UNBOUNDED || repeat.max > LARGE;
+	}
+
+	/**
+	 * @return true if the node can match a run of characters in more than one iteration
+	 * of a repetition, e.g. the body of <code>(a+)+</code> or <code>(a*b?)*</code>
+	 */
+	private static boolean repeatsAmbiguously(RegexNode node) {
+		if (node instanceof RegexNode.Repeat)
+			return isLarge((RegexNode.Repeat) node) || repeatsAmbiguously(((RegexNode.Repeat) node).node);
+		if (node instanceof RegexNode.Concat) {
+			List<RegexNode> items = ((RegexNode.Concat) node).items;
+			for (RegexNode item : items) {
+				if (!repeatsAmbiguously(item))
+					continue;
+				// the other items must be able to match nothing 
+				boolean othersNullable = true;
+				for (RegexNode other : items) {
+					if (other != item && !other.isNullable())
+						othersNullable = false;
+				}
+				if (othersNullable)
+					return true;
+			}
+			return false;
+		}
+		if (node instanceof RegexNode.Alternation) {
+			for (RegexNode branch : ((RegexNode.Alternation) node).branches) {
+				if (repeatsAmbiguously(branch))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if two branches of an alternation can start and end with the 
+	 * same character, e.g. <code>\w|\d</code> or <code>a|aa</code>
+	 */
+	private static boolean hasOverlappingAlternatives(RegexNode node) {
+		if (node instanceof RegexNode.Concat && ((RegexNode.Concat) node).items.size() == 1)
+			return hasOverlappingAlternatives(((RegexNode.Concat) node).items.get(0));
+		if (!(node instanceof RegexNode.Alternation))
+			return false;
+		List<RegexNode> branches = ((RegexNode.Alternation) node).branches;
+		for (int i = 0; i < branches.size(); i++) {
+			for (int j = i + 1; j < branches.size(); j++) {
+				if (intersect(first(branches.get(i), true), first(branches.get(j), true))
+						&& intersect(first(branches.get(i), false), first(branches.get(j), false)))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param forward true for the characters a match can start with, false for the
+	 * characters it can end with
+	 */
+	private static List<CharSet> first(RegexNode node, boolean forward) {
+		List<CharSet> result = new ArrayList<CharSet>();
+		addFirst(node, forward, result);
+		return result;
+	}
+
+	private static void addFirst(RegexNode node, boolean forward, List<CharSet> result) {
+		if (node instanceof RegexNode.Chars) {
+			result.add(((RegexNode.Chars) node).set);
+		} else if (node instanceof RegexNode.Repeat) {
+			addFirst(((RegexNode.Repeat) node).node, forward, result);
+		} else if (node instanceof RegexNode.Alternation) {
+			for (RegexNode branch : ((RegexNode.Alternation) node).branches) {
+				addFirst(branch, forward, result);
+			}
+		} else if (node instanceof RegexNode.Concat) {
+			List<RegexNode> items = ((RegexNode.Concat) node).items;
+			for (int i = 0; i < items.size(); i++) {
+				RegexNode item = items.get(forward ? i : items.size() - 1 - i);
+				addFirst(item, forward, result);
+				if (!item.isNullable())
+					break;
+			}
+		}
+	}
+
+	private static boolean intersect(List<CharSet> sets1, List<CharSet> sets2) {
+		for (CharSet set1 : sets1) {
+			for (CharSet set2 : sets2) {
+				if (set1.intersects(set2))
+					return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable set of characters with the case insensitive semantics of 
+ * {@link java.util.regex.Pattern#CASE_INSENSITIVE} (ASCII only).
+ */
+public final class CharSet {
+	static final CharSet DIGIT = new CharSet(new int[] { '0', '9' }, false, false);
+	static final CharSet WORD = new CharSet(new int[] { '0', '9', 'A', 'Z', '_', '_', 'a', 'z' }, false, false);
+	static final CharSet SPACE = new CharSet(new int[] { '\t', '\r', ' ', ' ' }, false, false);
+	/**
+	 * The line terminators as defined by {@link java.util.regex.Pattern}. 
+	 */
+	static final CharSet LINE_TERMINATOR = new CharSet(new int[] { '\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029 }, false, false);
+	static final CharSet DOT = new CharSet(LINE_TERMINATOR.fRanges, true, false);
+
+	/**
+	 * Sorted, non overlapping pairs of [from,to] (inclusive) 
+	 */
+	private final int[] fRanges;
+	private final boolean fNegated;
+	private final boolean fIgnoreCase;
+	/**
+	 * Precomputed membership of the ASCII characters
+	 */
+	private final long fLow;
+	private final long fHigh;
+
+	CharSet(int[] ranges, boolean negated, boolean ignoreCase) {
+		fRanges = ranges;
+		fNegated = negated;
+		fIgnoreCase = ignoreCase;
+		long low = 0, high = 0;
+		for (char c = 0; c < 128; c++) {
+			if (computeMatch(c)) {
+				if (c < 64)
+					low |= 1L << c;
+				else
+					high |= 1L << (c - 64);
+			}
+		}
+		fLow = low;
+		fHigh = high;
+	}
+
+	static CharSet single(char c, boolean ignoreCase) {
+		return new CharSet(new int[] { c, c }, false, ignoreCase && isAsciiLetter(c));
+	}
+
+	/**
+	 * @param ranges pairs of [from,to] in any order, may overlap
+	 */
+	static CharSet of(List<int[]> ranges, boolean negated, boolean ignoreCase) {
+		return new CharSet(normalize(ranges), negated, ignoreCase);
+	}
+
+	/**
+	 * @return the set as list of ranges with the negation resolved (ignoring case folding)
+	 */
+	List<int[]> toRanges() {
+		List<int[]> result = new ArrayList<int[]>();
+		if (!fNegated) {
+			for (int i = 0; i < fRanges.length; i += 2) {
+				result.add(new int[] { fRanges[i], fRanges[i + 1] });
+			}
+		} else {
+			int from = 0;
+			for (int i = 0; i < fRanges.length; i += 2) {
+				if (fRanges[i] > from)
+					result.add(new int[] { from, fRanges[i] - 1 });
+				from = fRanges[i + 1] + 1;
+			}
+			if (from <= Character.MAX_VALUE)
+				result.add(new int[] { from, Character.MAX_VALUE });
+		}
+		return result;
+	}
+
+	private static int[] normalize(List<int[]> ranges) {
+		List<int[]> sorted = new ArrayList<int[]>(ranges);
+		Collections.sort(sorted, new Comparator<int[]>() {
+			public int compare(int[] r1, int[] r2) {
+				return r1[0] - r2[0];
+			}
+		});
+		int[] result = new int[sorted.size() * 2];
+		int n = 0;
+		for (int[] r : sorted) {
+			if (n > 0 && r[0] <= result[n - 1] + 1) {
+				result[n - 1] = Math.max(result[n - 1], r[1]);
+			} else {
+				result[n++] = r[0];
+				result[n++] = r[1];
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	public boolean matches(char c) {
+		if (c < 64)
+			return (fLow & (1L << c)) != 0;
+		if (c < 128)
+			return (fHigh & (1L << (c - 64))) != 0;
+		return computeMatch(c);
+	}
+
+	private boolean computeMatch(char c) {
+		boolean in = inRanges(c);
+		if (!in && fIgnoreCase && c < 128) {
+			in = inRanges(Character.toLowerCase(c)) || inRanges(Character.toUpperCase(c));
+		}
+		return in != fNegated;
+	}
+
+	private boolean inRanges(char c) {
+		int lo = 0, hi = fRanges.length / 2 - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (c < fRanges[mid * 2])
+				hi = mid - 1;
+			else if (c > fRanges[mid * 2 + 1])
+				lo = mid + 1;
+			else
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if a character matches both sets (ignoring case folding 
+	 * outside of ASCII)
+	 */
+	public boolean intersects(CharSet other) {
+		if ((fLow & other.fLow) != 0 || (fHigh & other.fHigh) != 0)
+			return true;
+		for (int[] r1 : toRanges()) {
+			for (int[] r2 : other.toRanges()) {
+				// the ASCII characters have been checked above
+				if (Math.max(128, Math.max(r1[0], r2[0])) <= Math.min(r1[1], r2[1]))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the set matches exactly one character (ignoring case if 
+	 * the set is case insensitive)
+	 */
+	public boolean isSingle() {
+		return !fNegated && fRanges.length == 2 && fRanges[0] == fRanges[1];
+	}
+
+	/**
+	 * @return the character of a {@link #isSingle()} set 
+	 */
+	public char getChar() {
+		return (char) fRanges[0];
+	}
+
+	public boolean isIgnoreCase() {
+		return fIgnoreCase;
+	}
+
+	static boolean isAsciiLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof CharSet))
+			return false;
+		CharSet other = (CharSet) obj;
+		return fNegated == other.fNegated && fIgnoreCase == other.fIgnoreCase && Arrays.equals(fRanges, other.fRanges);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(fRanges) * 31 + (fNegated ? 1 : 0) + (fIgnoreCase ? 2 : 0);
+	}
+}
@@ -0,0 +1,451 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A glob over the segments of a path:
+ * <ul>
+ * <li><code>*</code> matches any characters within a segment, <code>?</code> one character</li>
+ * <li><code>[abc]</code>, <code>[a-z]</code> and <code>[!a-z]</code> match one character of a set</li>
+ * <li><code>{a,b}</code> matches one of the alternatives</li>
+ * <li><code>**</code> as a segment matches any number of segments</li>
+ * <li><code>\</code> quotes the next character</li>
+ * </ul>
+ * A glob starting with <code>/</code> matches the full path (the first segment is
+ * the project), otherwise the glob matches the segments at the end of the path
+ * (as if it started with <code>**&#47;</code>).
+ */
+public class Glob {
+	/**
+	 * Limits the number of alternatives {...} expands to
+	 */
+	static final int MAX_ALTERNATIVES = 256;
+
+	private final String fGlob;
+	/**
+	 * The brace-expanded alternatives of the glob
+	 */
+	private final List<Segment[]> fAlternatives;
+
+	/**
+	 * A segment of a glob
+	 */
+	static final class Segment {
+		/**
+		 * The literal text or null for patterns and <code>**</code>
+		 */
+		final String literal;
+		/**
+		 * The compiled pattern or null for literals and <code>**</code>
+		 */
+		final SegmentPattern pattern;
+		/**
+		 * The text of the segment (for <code>**</code> too)
+		 */
+		final String text;
+
+		Segment(String text, String literal, SegmentPattern pattern) {
+			this.text = text;
+			this.literal = literal;
+			this.pattern = pattern;
+		}
+
+		boolean isAnySegments() {
+			return literal == null && pattern == null;
+		}
+
+		boolean matches(CharSequence path, int start, int end) {
+			if (pattern != null)
+				return pattern.matches(path, start, end);
+			if (literal == null)
+				return true;
+			return regionEquals(literal, path, start, end);
+		}
+	}
+
+	/**
+	 * A segment with <code>*</code>, <code>?</code> or character sets
+	 */
+	static final class SegmentPattern {
+		private static final int STAR = -1;
+		private static final int ANY = -2;
+		/**
+		 * Characters, {@link #STAR}, {@link #ANY} or -3-i for fSets[i]
+		 */
+		private final int[] fTokens;
+		private final CharSet[] fSets;
+
+		SegmentPattern(int[] tokens, CharSet[] sets) {
+			fTokens = tokens;
+			fSets = sets;
+		}
+
+		/**
+		 * Wildcard matching that remembers only the last star, it never
+		 * backtracks more than the length of the segment per star.
+		 */
+		boolean matches(CharSequence s, int start, int end) {
+			int t = 0;
+			int i = start;
+			int starToken = -1;
+			int starPos = -1;
+			while (i < end) {
+				if (t < fTokens.length && fTokens[t] == STAR) {
+					starToken = t++;
+					starPos = i;
+				} else if (t < fTokens.length && matchesChar(fTokens[t], s.charAt(i))) {
+					t++;
+					i++;
+				} else if (starToken >= 0) {
+					t = starToken + 1;
+					i = ++starPos;
+				} else {
+					return false;
+				}
+			}
+			while (t < fTokens.length && fTokens[t] == STAR)
+				t++;
+			return t == fTokens.length;
+		}
+
+		private boolean matchesChar(int token, char c) {
+			if (token >= 0)
+				return token == c;
+			if (token == ANY)
+				return true;
+			return fSets[-3 - token].matches(c);
+		}
+	}
+
+	private Glob(String glob, List<Segment[]> alternatives) {
+		fGlob = glob;
+		fAlternatives = alternatives;
+	}
+
+	/**
+	 * @throws PatternSyntaxException if the glob is not valid
+	 */
+	public static Glob compile(String glob) throws PatternSyntaxException {
+		List<Segment[]> alternatives = new ArrayList<Segment[]>();
+		for (String alternative : expandBraces(glob)) {
+			alternatives.add(compileAlternative(glob, alternative));
+		}
+		return new Glob(glob, alternatives);
+	}
+
+	private static Segment[] compileAlternative(String glob, String alternative) {
+		List<Segment> segments = new ArrayList<Segment>();
+		if (!alternative.startsWith("/"))
+			segments.add(new Segment("**", null, null));
+		for (String text : alternative.split("/")) {
+			if (text.length() == 0)
+				continue;
+			if (text.equals("**")) {
+				// a/**/**/b is the same as a/**/b
+				if (segments.isEmpty() || !segments.get(segments.size() - 1).isAnySegments())
+					segments.add(new Segment(text, null, null));
+			} else {
+				segments.add(compileSegment(glob, text));
+			}
+		}
+		return segments.toArray(new Segment[segments.size()]);
+	}
+
+	private static Segment compileSegment(String glob, String text) {
+		List<Integer> tokens = new ArrayList<Integer>();
+		List<CharSet> sets = new ArrayList<CharSet>();
+		StringBuilder literal = new StringBuilder();
+		boolean isLiteral = true;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '\\') {
+				if (++i == text.length())
+					throw new PatternSyntaxException("Trailing \\", glob, glob.length());
+				c = text.charAt(i);
+				tokens.add((int) c);
+				literal.append(c);
+			} else if (c == '*') {
+				if (tokens.isEmpty() || tokens.get(tokens.size() - 1) != SegmentPattern.STAR)
+					tokens.add(SegmentPattern.STAR);
+				isLiteral = false;
+			} else if (c == '?') {
+				tokens.add(SegmentPattern.ANY);
+				isLiteral = false;
+			} else if (c == '[') {
+				int close = text.indexOf(']', i + 2);
+				if (close < 0)
+					throw new PatternSyntaxException("Unclosed character class", glob, glob.indexOf(text));
+				sets.add(parseSet(text.substring(i + 1, close)));
+				tokens.add(-3 - (sets.size() - 1));
+				isLiteral = false;
+				i = close;
+			} else {
+				tokens.add((int) c);
+				literal.append(c);
+			}
+		}
+		if (isLiteral)
+			return new Segment(text, literal.toString(), null);
+		int[] array = new int[tokens.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = tokens.get(i);
+		}
+		return new Segment(text, null, new SegmentPattern(array, sets.toArray(new CharSet[sets.size()])));
+	}
+
+	private static CharSet parseSet(String set) {
+		boolean negated = set.startsWith("!") || set.startsWith("^");
+		if (negated)
+			set = set.substring(1);
+		List<int[]> ranges = new ArrayList<int[]>();
+		for (int i = 0; i < set.length(); i++) {
+			char from = set.charAt(i);
+			char to = from;
+			if (i + 2 < set.length() && set.charAt(i + 1) == '-') {
+				to = set.charAt(i + 2);
+				i += 2;
+			}
+			ranges.add(new int[] { Math.min(from, to), Math.max(from, to) });
+		}
+		return CharSet.of(ranges, negated, false);
+	}
+
+	/**
+	 * Expands <code>{a,b}</code> (nested braces are allowed)
+	 */
+	static List<String> expandBraces(String glob) {
+		int open = -1;
+		int depth = 0;
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == '{') {
+				if (depth++ == 0)
+					open = i;
+			} else if (c == '}' && depth > 0) {
+				if (--depth == 0) {
+					List<String> result = new ArrayList<String>();
+					String prefix = glob.substring(0, open);
+					List<String> suffixes = expandBraces(glob.substring(i + 1));
+					for (String alternative : splitAlternatives(glob.substring(open + 1, i))) {
+						for (String expanded : expandBraces(alternative)) {
+							for (String suffix : suffixes) {
+								result.add(prefix + expanded + suffix);
+								if (result.size() > MAX_ALTERNATIVES)
+									throw new PatternSyntaxException("Too many alternatives", glob, open);
+							}
+						}
+					}
+					return result;
+				}
+			}
+		}
+		if (depth > 0)
+			throw new PatternSyntaxException("Unclosed {", glob, open);
+		return Collections.singletonList(glob);
+	}
+
+	private static List<String> splitAlternatives(String s) {
+		List<String> result = new ArrayList<String>();
+		int depth = 0;
+		int start = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == '{') {
+				depth++;
+			} else if (c == '}') {
+				depth--;
+			} else if (c == ',' && depth == 0) {
+				result.add(s.substring(start, i));
+				start = i + 1;
+			}
+		}
+		result.add(s.substring(start));
+		return result;
+	}
+
+	static boolean regionEquals(String literal, CharSequence path, int start, int end) {
+		if (end - start != literal.length())
+			return false;
+		for (int i = start; i < end; i++) {
+			if (path.charAt(i) != literal.charAt(i - start))
+				return false;
+		}
+		return true;
+	}
+
+	public String getGlob() {
+		return fGlob;
+	}
+
+	List<Segment[]> getAlternatives() {
+		return fAlternatives;
+	}
+
+	/**
+	 * @param path the full path of a file
+	 */
+	public boolean matches(CharSequence path) {
+		for (Segment[] segments : fAlternatives) {
+			boolean[] states = run(segments, path, path.length());
+			if (states != null && states[segments.length])
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param folder the full path of a folder without trailing slash
+	 * @return false if no file below the folder can match
+	 */
+	public boolean mayMatchBelow(CharSequence folder) {
+		for (Segment[] segments : fAlternatives) {
+			boolean[] states = run(segments, folder, folder.length());
+			if (states == null)
+				continue;
+			// at least one more segment is needed for a file below the folder
+			for (int i = 0; i < segments.length; i++) {
+				if (states[i])
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param folder the full path of a folder without trailing slash
+	 * @return true if all files below the folder match
+	 */
+	public boolean matchesAllBelow(CharSequence folder) {
+		for (Segment[] segments : fAlternatives) {
+			boolean[] states = run(segments, folder, folder.length());
+			if (states == null)
+				continue;
+			for (int i = segments.length - 1; i >= 0 && segments[i].isAnySegments(); i--) {
+				if (states[i])
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Simulates the segments as an automaton: state i means the first i segments
+	 * of the glob have matched.
+	 *
+	 * @return the states after the path or null if no state is left
+	 */
+	private static boolean[] run(Segment[] segments, CharSequence path, int length) {
+		boolean[] states = new boolean[segments.length + 1];
+		boolean[] next = new boolean[segments.length + 1];
+		addState(segments, states, 0);
+		int start = 0;
+		while (start < length) {
+			if (path.charAt(start) == '/') {
+				start++;
+				continue;
+			}
+			int end = start;
+			while (end < length && path.charAt(end) != '/')
+				end++;
+			Arrays.fill(next, false);
+			boolean any = false;
+			for (int i = 0; i < segments.length; i++) {
+				if (!states[i])
+					continue;
+				if (segments[i].isAnySegments()) {
+					addState(segments, next, i);
+					any = true;
+				} else if (segments[i].matches(path, start, end)) {
+					addState(segments, next, i + 1);
+					any = true;
+				}
+			}
+			if (!any)
+				return null;
+			boolean[] tmp = states;
+			states = next;
+			next = tmp;
+			start = end;
+		}
+		return states;
+	}
+
+	private static void addState(Segment[] segments, boolean[] states, int i) {
+		states[i] = true;
+		// ** matches no segment too
+		while (i < segments.length && segments[i].isAnySegments())
+			states[++i] = true;
+	}
+
+	/**
+	 * @return the lower case extensions a matching file must have or null
+	 */
+	public Set<String> extensions() {
+		Set<String> result = new HashSet<String>();
+		for (Segment[] segments : fAlternatives) {
+			if (segments.length == 0)
+				return null;
+			String last = segments[segments.length - 1].text;
+			// *.py, *.tar.gz
+			if (!last.startsWith("*") || last.indexOf('\\') >= 0)
+				return null;
+			String suffix = last.substring(1);
+			int dot = suffix.lastIndexOf('.');
+			if (dot < 0 || !isLiteral(suffix) || dot == suffix.length() - 1)
+				return null;
+			result.add(LiteralAnalysis.toLowerCase(suffix.substring(dot + 1)));
+		}
+		return result;
+	}
+
+	private static boolean isLiteral(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if ("*?[\\".indexOf(s.charAt(i)) >= 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the longest lower case literal a matching path contains or null
+	 */
+	public String requiredLiteral() {
+		String result = null;
+		for (Segment[] segments : fAlternatives) {
+			String best = null;
+			for (Segment segment : segments) {
+				if (segment.literal != null && (best == null || segment.literal.length() > best.length()))
+					best = segment.literal;
+			}
+			if (best == null)
+				return null;
+			// all alternatives must contain the literal
+			if (result != null && !best.equals(result))
+				return null;
+			result = best;
+		}
+		return result == null ? null : LiteralAnalysis.toLowerCase(result);
+	}
+
+	@Override
+	public String toString() {
+		return fGlob;
+	}
+}
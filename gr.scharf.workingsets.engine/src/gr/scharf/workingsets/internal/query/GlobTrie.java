@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Matches the glob lines of a query in one walk over the segments of a path.
+ * The globs are merged into a trie of segments: globs with a common prefix
+ * (e.g. <code>/project/src/**&#47;*.java</code> and <code>/project/src/**&#47;*.xml</code>)
+ * share the nodes of the prefix. <code>**</code> is a node that loops on any
+ * segment. The trie is simulated like an automaton, all nodes reached by the
+ * segments so far are active at the same time, so there is no backtracking.
+ */
+public class GlobTrie {
+	/**
+	 * Shared by the tries of a thread: a per-trie thread local would leave an entry
+	 * in every pool thread for each query that has been compiled
+	 */
+	private static final ThreadLocal<Scratch> fgScratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+	private final List<Node> fNodes = new ArrayList<Node>();
+	private final Node fRoot = new Node();
+
+	/**
+	 * The current and next active nodes and the marks of the next nodes, grown 
+	 * to the largest trie used by the thread
+	 */
+	private static final class Scratch {
+		int[] current = new int[0];
+		int[] next = new int[0];
+		int[] marks = new int[0];
+		int generation;
+
+		void ensureCapacity(int nodes) {
+			if (marks.length >= nodes)
+				return;
+			current = new int[nodes];
+			next = new int[nodes];
+			marks = new int[nodes];
+			generation = 0;
+		}
+
+		/**
+		 * @return a mark no node has
+		 */
+		int nextMark() {
+			if (generation == Integer.MAX_VALUE) {
+				Arrays.fill(marks, 0);
+				generation = 0;
+			}
+			return ++generation;
+		}
+	}
+
+	private class Node {
+		final int fId;
+		String[] fLiteralKeys = new String[0];
+		Node[] fLiteralChildren = new Node[0];
+		final List<Glob.Segment> fPatterns = new ArrayList<Glob.Segment>();
+		final List<Node> fPatternChildren = new ArrayList<Node>();
+		/**
+		 * The node after <code>**</code> or null
+		 */
+		Node fAnySegments;
+		/**
+		 * True for the nodes after <code>**</code>: they consume any segment
+		 */
+		boolean fLoop;
+		/**
+		 * The largest line index of the globs ending here or -1
+		 */
+		int fAccept = -1;
+
+		Node() {
+			fId = fNodes.size();
+			fNodes.add(this);
+		}
+
+		Node child(Glob.Segment segment) {
+			if (segment.isAnySegments()) {
+				if (fAnySegments == null) {
+					fAnySegments = new Node();
+					fAnySegments.fLoop = true;
+				}
+				return fAnySegments;
+			}
+			if (segment.literal != null) {
+				for (int i = 0; i < fLiteralKeys.length; i++) {
+					if (fLiteralKeys[i].equals(segment.literal))
+						return fLiteralChildren[i];
+				}
+				int n = fLiteralKeys.length;
+				fLiteralKeys = Arrays.copyOf(fLiteralKeys, n + 1);
+				fLiteralChildren = Arrays.copyOf(fLiteralChildren, n + 1);
+				fLiteralKeys[n] = segment.literal;
+				fLiteralChildren[n] = new Node();
+				return fLiteralChildren[n];
+			}
+			for (int i = 0; i < fPatterns.size(); i++) {
+				if (fPatterns.get(i).text.equals(segment.text))
+					return fPatternChildren.get(i);
+			}
+			Node child = new Node();
+			fPatterns.add(segment);
+			fPatternChildren.add(child);
+			return child;
+		}
+	}
+
+	/**
+	 * @param globs the globs of a query
+	 * @param lines the line index of each glob in the query
+	 */
+	public GlobTrie(List<Glob> globs, int[] lines) {
+		for (int i = 0; i < globs.size(); i++) {
+			for (Glob.Segment[] segments : globs.get(i).getAlternatives()) {
+				Node node = fRoot;
+				for (Glob.Segment segment : segments) {
+					node = node.child(segment);
+				}
+				node.fAccept = Math.max(node.fAccept, lines[i]);
+			}
+		}
+	}
+
+	/**
+	 * @param path the full path of a file
+	 * @return the largest line index of the globs matching the path or -1
+	 */
+	public int lastMatch(CharSequence path) {
+		Scratch scratch = fgScratch.get();
+		scratch.ensureCapacity(fNodes.size());
+		int[] current = scratch.current;
+		int[] next = scratch.next;
+		int[] marks = scratch.marks;
+		int currentSize = add(fRoot, current, 0, marks, scratch.nextMark());
+		int length = path.length();
+		int start = 0;
+		while (start < length && currentSize > 0) {
+			if (path.charAt(start) == '/') {
+				start++;
+				continue;
+			}
+			int end = start;
+			while (end < length && path.charAt(end) != '/')
+				end++;
+			int mark = scratch.nextMark();
+			int nextSize = 0;
+			for (int i = 0; i < currentSize; i++) {
+				Node node = fNodes.get(current[i]);
+				if (node.fLoop)
+					nextSize = add(node, next, nextSize, marks, mark);
+				String[] keys = node.fLiteralKeys;
+				for (int k = 0; k < keys.length; k++) {
+					if (Glob.regionEquals(keys[k], path, start, end))
+						nextSize = add(node.fLiteralChildren[k], next, nextSize, marks, mark);
+				}
+				for (int k = 0; k < node.fPatterns.size(); k++) {
+					if (node.fPatterns.get(k).matches(path, start, end))
+						nextSize = add(node.fPatternChildren.get(k), next, nextSize, marks, mark);
+				}
+			}
+			int[] tmp = current;
+			current = next;
+			next = tmp;
+			currentSize = nextSize;
+			start = end;
+		}
+		int last = -1;
+		for (int i = 0; i < currentSize; i++) {
+			last = Math.max(last, fNodes.get(current[i]).fAccept);
+		}
+		return last;
+	}
+
+	/**
+	 * Adds the node and the nodes reachable by <code>**</code> matching no segment
+	 */
+	private int add(Node node, int[] nodes, int size, int[] marks, int mark) {
+		while (node != null && marks[node.fId] != mark) {
+			marks[node.fId] = mark;
+			nodes[size++] = node.fId;
+			node = node.fAnySegments;
+		}
+		return size;
+	}
+}
@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Extracts literals from a regular expression that every matching path must contain. 
+ * All results are converted to lower case (ASCII only), therefore the 
+ * paths have to be converted with {@link #toLowerCase(String)} before they are compared.
+ */
+public class LiteralAnalysis {
+	/**
+	 * Limit for the number of alternative strings we track
+	 */
+	private static final int MAX_ALTERNATIVES = 32;
+
+	/**
+	 * @return the file extensions (without the dot) one of which every path matching the 
+	 * expression has or null if the expression does not determine the extension. 
+	 * <code>[.]py$</code> returns <code>py</code>, <code>\.(md|txt)$</code> returns <code>md</code> 
+	 * and <code>txt</code>.
+	 */
+	public static Set<String> extensions(RegexNode node) {
+		if (node instanceof RegexNode.Alternation) {
+			Set<String> result = new HashSet<String>();
+			for (RegexNode branch : ((RegexNode.Alternation) node).branches) {
+				Set<String> extensions = extensions(branch);
+				if (extensions == null)
+					return null;
+				result.addAll(extensions);
+			}
+			return result;
+		}
+		List<RegexNode> items = items(node);
+		int last = items.size() - 1;
+		if (last < 1 || !(items.get(last) instanceof RegexNode.Anchor) || ((RegexNode.Anchor) items.get(last)).kind == RegexNode.Anchor.BEGIN)
+			return null;
+		Set<String> suffixes = Collections.singleton("");
+		for (int i = last - 1; i >= 0 && !allContain(suffixes, '.'); i--) {
+			Set<String> literals = literals(items.get(i));
+			if (literals == null)
+				return null;
+			suffixes = concat(literals, suffixes);
+			if (suffixes == null)
+				return null;
+		}
+		if (!allContain(suffixes, '.'))
+			return null;
+		Set<String> result = new HashSet<String>();
+		for (String suffix : suffixes) {
+			String extension = suffix.substring(suffix.lastIndexOf('.') + 1);
+			if (extension.length() == 0 || extension.indexOf('/') >= 0)
+				return null;
+			result.add(extension);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the longest literal every match of the expression contains or null
+	 */
+	public static String requiredLiteral(RegexNode node) {
+		if (node instanceof RegexNode.Repeat) {
+			RegexNode.Repeat repeat = (RegexNode.Repeat) node;
+			return repeat.min > 0 ? requiredLiteral(repeat.node) : null;
+		}
+		if (node instanceof RegexNode.Alternation)
+			return null;
+		String best = null;
+		StringBuilder run = new StringBuilder();
+		for (RegexNode item : items(node)) {
+			Set<String> literals = literals(item);
+			if (literals != null && literals.size() == 1) {
+				run.append(literals.iterator().next());
+				continue;
+			}
+			if (!(item instanceof RegexNode.Anchor)) {
+				best = longer(best, run.toString());
+				run.setLength(0);
+				if (item instanceof RegexNode.Repeat || item instanceof RegexNode.Concat)
+					best = longer(best, requiredLiteral(item));
+			}
+		}
+		best = longer(best, run.toString());
+		return best == null || best.length() == 0 ? null : best;
+	}
+
+	/**
+	 * @return the literal every match starts with if the expression is anchored 
+	 * at the beginning (e.g. <code>^/project/src/</code>) or null
+	 */
+	public static String anchoredPrefix(RegexNode node) {
+		List<RegexNode> items = new ArrayList<RegexNode>();
+		flatten(node, items);
+		if (items.isEmpty() || !items.get(0).equals(new RegexNode.Anchor(RegexNode.Anchor.BEGIN)))
+			return null;
+		StringBuilder prefix = new StringBuilder();
+		for (int i = 1; i < items.size(); i++) {
+			RegexNode item = items.get(i);
+			if (!(item instanceof RegexNode.Chars))
+				break;
+			CharSet set = ((RegexNode.Chars) item).set;
+			if (!set.isSingle() || set.isIgnoreCase())
+				break;
+			prefix.append(set.getChar());
+		}
+		return prefix.length() == 0 ? null : prefix.toString();
+	}
+
+	private static void flatten(RegexNode node, List<RegexNode> items) {
+		if (node instanceof RegexNode.Concat) {
+			for (RegexNode item : ((RegexNode.Concat) node).items) {
+				flatten(item, items);
+			}
+		} else {
+			items.add(node);
+		}
+	}
+
+	/**
+	 * @return true if the expression contains <code>$</code> or <code>\z</code>,
+	 * that is if a match might depend on where the input ends
+	 */
+	public static boolean hasEndAnchor(RegexNode node) {
+		if (node instanceof RegexNode.Anchor)
+			return ((RegexNode.Anchor) node).kind != RegexNode.Anchor.BEGIN;
+		if (node instanceof RegexNode.Repeat)
+			return hasEndAnchor(((RegexNode.Repeat) node).node);
+		if (node instanceof RegexNode.Concat) {
+			for (RegexNode item : ((RegexNode.Concat) node).items) {
+				if (hasEndAnchor(item))
+					return true;
+			}
+		}
+		if (node instanceof RegexNode.Alternation) {
+			for (RegexNode branch : ((RegexNode.Alternation) node).branches) {
+				if (hasEndAnchor(branch))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private static String longer(String s1, String s2) {
+		if (s1 == null || (s2 != null && s2.length() > s1.length()))
+			return s2;
+		return s1;
+	}
+
+	private static List<RegexNode> items(RegexNode node) {
+		if (node instanceof RegexNode.Concat)
+			return ((RegexNode.Concat) node).items;
+		return Collections.singletonList(node);
+	}
+
+	private static boolean allContain(Set<String> strings, char c) {
+		for (String s : strings) {
+			if (s.indexOf(c) < 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return all strings of the form prefix+suffix or null if there are too many
+	 */
+	private static Set<String> concat(Set<String> prefixes, Set<String> suffixes) {
+		if (prefixes.size() * suffixes.size() > MAX_ALTERNATIVES)
+			return null;
+		Set<String> result = new HashSet<String>();
+		for (String prefix : prefixes) {
+			for (String suffix : suffixes) {
+				result.add(prefix + suffix);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the set of (lower case) strings the node matches or null if the node 
+	 * is not a (small) finite set of literals
+	 */
+	private static Set<String> literals(RegexNode node) {
+		if (node instanceof RegexNode.Chars) {
+			CharSet set = ((RegexNode.Chars) node).set;
+			if (set.isSingle())
+				return Collections.singleton(toLowerCase(String.valueOf(set.getChar())));
+			Set<String> result = new HashSet<String>();
+			for (int[] range : set.toRanges()) {
+				if (range[1] - range[0] >= MAX_ALTERNATIVES || result.size() > MAX_ALTERNATIVES)
+					return null;
+				for (int c = range[0]; c <= range[1]; c++) {
+					result.add(toLowerCase(String.valueOf((char) c)));
+				}
+			}
+			return result.size() <= MAX_ALTERNATIVES ? result : null;
+		}
+		if (node instanceof RegexNode.Concat) {
+			Set<String> result = Collections.singleton("");
+			for (RegexNode item : ((RegexNode.Concat) node).items) {
+				Set<String> literals = literals(item);
+				if (literals == null)
+					return null;
+				result = concat(result, literals);
+				if (result == null)
+					return null;
+			}
+			return result;
+		}
+		if (node instanceof RegexNode.Alternation) {
+			Set<String> result = new HashSet<String>();
+			for (RegexNode branch : ((RegexNode.Alternation) node).branches) {
+				Set<String> literals = literals(branch);
+				if (literals == null)
+					return null;
+				result.addAll(literals);
+			}
+			return result.size() <= MAX_ALTERNATIVES ? result : null;
+		}
+		if (node instanceof RegexNode.Repeat) {
+			RegexNode.Repeat repeat = (RegexNode.Repeat) node;
+			if (repeat.min != repeat.max)
+				return null;
+			Set<String> literals = literals(repeat.node);
+			Set<String> result = Collections.singleton("");
+			for (int i = 0; i < repeat.min && result != null && literals != null; i++) {
+				result = concat(result, literals);
+			}
+			return literals == null ? null : result;
+		}
+		return null;
+	}
+
+	/**
+	 * Converts ASCII upper case letters to lower case. Unlike {@link String#toLowerCase()}
+	 * the conversion is done char by char, so that a string that contains a literal
+	 * still contains the converted literal after the conversion.
+	 */
+	public static String toLowerCase(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c >= 'A' && c <= 'Z') {
+				char[] chars = s.toCharArray();
+				for (int j = i; j < chars.length; j++) {
+					if (chars[j] >= 'A' && chars[j] <= 'Z')
+						chars[j] += 'a' - 'A';
+				}
+				return new String(chars);
+			}
+		}
+		return s;
+	}
+}
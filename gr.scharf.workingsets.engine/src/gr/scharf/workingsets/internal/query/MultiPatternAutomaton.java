@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles all lines of a query into one non deterministic automaton. A single
+ * pass over the input finds the last line (in the order of the query) that has 
+ * a match anywhere in the input (the semantics of {@link java.util.regex.Matcher#find()}).
+ * <p>
+ * Lines that cannot be parsed by the {@link RegexParser} are not part of the
+ * automaton, see {@link #isSupported(int)}. 
+ * <p>
+ * The automaton is immutable and can be shared between threads, the state 
+ * of a match is kept in a {@link Run}.
+ */
+public class MultiPatternAutomaton {
+	/**
+	 * Returned by {@link Run#lastMatch(CharSequence)} if the input contains
+	 * surrogate characters. The automaton works on chars while {@link java.util.regex.Pattern}
+	 * works on code points, therefore the caller has to fall back to the patterns.
+	 */
+	public static final int UNDECIDED = -2;
+	/**
+	 * Limit of states per line. Bigger lines are not compiled into the automaton.
+	 */
+	static final int MAX_STATES = 10000;
+
+	private static final int CHAR = 0;
+	private static final int SPLIT = 1;
+	private static final int ASSERT = 2;
+	private static final int MATCH = 3;
+
+	private int[] fType = new int[64];
+	private int[] fOut1 = new int[64];
+	private int[] fOut2 = new int[64];
+	/**
+	 * the index into fSets for CHAR, the anchor kind for ASSERT
+	 */
+	private int[] fArg = new int[64];
+	/**
+	 * the line a state belongs to
+	 */
+	private int[] fOwner = new int[64];
+	private final List<CharSet> fSetList = new ArrayList<CharSet>();
+	private CharSet[] fSets;
+	private int fSize;
+	private int fLineMark;
+	/**
+	 * start state of each line, -1 for unsupported lines
+	 */
+	private final int[] fStart;
+	private final UnsupportedRegexException[] fErrors;
+
+	public MultiPatternAutomaton(String[] lines) {
+		fStart = new int[lines.length];
+		fErrors = new UnsupportedRegexException[lines.length];
+		for (int line = 0; line < lines.length; line++) {
+			fLineMark = fSize;
+			try {
+				RegexNode node = RegexParser.parse(lines[line]);
+				int match = newState(MATCH, -1, -1, line, line);
+				fStart[line] = compile(node, match, line);
+				checkLine();
+			} catch (UnsupportedRegexException e) {
+				fStart[line] = -1;
+				fErrors[line] = e;
+				// drop the states of the partially compiled line
+				fSize = fLineMark;
+			}
+		}
+		fSets = fSetList.toArray(new CharSet[fSetList.size()]);
+	}
+
+	/**
+	 * @return the number of lines of the query (including the unsupported lines)
+	 */
+	public int getLineCount() {
+		return fStart.length;
+	}
+
+	/**
+	 * @return true if the line is part of the automaton
+	 */
+	public boolean isSupported(int line) {
+		return fStart[line] >= 0;
+	}
+
+	/**
+	 * @return the reason why a line is not supported or null
+	 */
+	public UnsupportedRegexException getError(int line) {
+		return fErrors[line];
+	}
+
+	private int newState(int type, int out1, int out2, int arg, int owner) throws UnsupportedRegexException {
+		if (fSize == fType.length) {
+			int n = fSize * 2;
+			fType = Arrays.copyOf(fType, n);
+			fOut1 = Arrays.copyOf(fOut1, n);
+			fOut2 = Arrays.copyOf(fOut2, n);
+			fArg = Arrays.copyOf(fArg, n);
+			fOwner = Arrays.copyOf(fOwner, n);
+		}
+		if (fSize - fLineMark > MAX_STATES)
+			throw new UnsupportedRegexException("expression too big");
+		fType[fSize] = type;
+		fOut1[fSize] = out1;
+		fOut2[fSize] = out2;
+		fArg[fSize] = arg;
+		fOwner[fSize] = owner;
+		return fSize++;
+	}
+
+	/**
+	 * Compiles the node backwards
+	 * @param next the state that follows the node
+	 * @return the start state of the node
+	 */
+	private int compile(RegexNode node, int next, int line) throws UnsupportedRegexException {
+		if (node instanceof RegexNode.Chars) {
+			int set = fSetList.indexOf(((RegexNode.Chars) node).set);
+			if (set < 0) {
+				set = fSetList.size();
+				fSetList.add(((RegexNode.Chars) node).set);
+			}
+			return newState(CHAR, next, -1, set, line);
+		}
+		if (node instanceof RegexNode.Anchor) {
+			return newState(ASSERT, next, -1, ((RegexNode.Anchor) node).kind, line);
+		}
+		if (node instanceof RegexNode.Concat) {
+			List<RegexNode> items = ((RegexNode.Concat) node).items;
+			for (int i = items.size() - 1; i >= 0; i--) {
+				next = compile(items.get(i), next, line);
+			}
+			return next;
+		}
+		if (node instanceof RegexNode.Alternation) {
+			List<RegexNode> branches = ((RegexNode.Alternation) node).branches;
+			int start = compile(branches.get(branches.size() - 1), next, line);
+			for (int i = branches.size() - 2; i >= 0; i--) {
+				start = newState(SPLIT, compile(branches.get(i), next, line), start, 0, line);
+			}
+			return start;
+		}
+		RegexNode.Repeat repeat = (RegexNode.Repeat) node;
+		int start;
+		if (repeat.max == RegexNode.Repeat.UNBOUNDED) {
+			int loop = newState(SPLIT, -1, next, 0, line);
+			// compile() may grow the arrays, fOut1 must be read afterwards
+			int body = compile(repeat.node, loop, line);
+			fOut1[loop] = body;
+			start = loop;
+		} else {
+			start = next;
+			for (int i = repeat.min; i < repeat.max; i++) {
+				start = newState(SPLIT, compile(repeat.node, start, line), next, 0, line);
+			}
+		}
+		for (int i = 0; i < repeat.min; i++) {
+			start = compile(repeat.node, start, line);
+		}
+		return start;
+	}
+
+	/**
+	 * Verifies that all transitions of the states of the current line lead to states
+	 * of the line, so that a mistake in the compilation makes the line unsupported 
+	 * (matched by java.util.regex) instead of breaking the match of all lines.
+	 */
+	private void checkLine() throws UnsupportedRegexException {
+		for (int s = fLineMark; s < fSize; s++) {
+			if (fType[s] == MATCH)
+				continue;
+			if (!isLineState(fOut1[s]) || (fType[s] == SPLIT && !isLineState(fOut2[s])))
+				throw new UnsupportedRegexException("internal error: state " + s + " has no transition");
+		}
+	}
+
+	private boolean isLineState(int state) {
+		return state >= fLineMark && state < fSize;
+	}
+
+	public Run newRun() {
+		return new Run();
+	}
+
+	/**
+	 * The mutable state of a match. Not thread safe, but can be reused.
+	 */
+	public class Run {
+		private int[] fCurrent = new int[fSize];
+		private int[] fNext = new int[fSize];
+		private final int[] fMark = new int[fSize];
+		private final int[] fStack = new int[2 * fSize + 2];
+		private int fStamp;
+		private int fBest;
+
+		public MultiPatternAutomaton getAutomaton() {
+			return MultiPatternAutomaton.this;
+		}
+
+		/**
+		 * @return the index of the last line that matches somewhere in the input, -1 if 
+		 * no line matches or {@link MultiPatternAutomaton#UNDECIDED}
+		 */
+		public int lastMatch(CharSequence input) {
+			return lastMatch(input, -1);
+		}
+
+		/**
+		 * @param floor lines with an index less or equal to floor are ignored
+		 * @return the index of the last line above floor that matches somewhere in the input, 
+		 * floor if no line matches or {@link MultiPatternAutomaton#UNDECIDED}
+		 */
+		public int lastMatch(CharSequence input, int floor) {
+			int len = input.length();
+			int top = fStart.length - 1;
+			fBest = floor;
+			int[] current = fCurrent;
+			int[] next = fNext;
+			int nCurrent = 0;
+			nextStamp();
+			for (int pos = 0;; pos++) {
+				// start a new match attempt for all lines that still can change the result
+				for (int line = top; line > fBest; line--) {
+					if (fStart[line] >= 0)
+						nCurrent = addState(current, nCurrent, fStart[line], input, pos, len);
+				}
+				if (fBest == top || pos == len)
+					break;
+				char c = input.charAt(pos);
+				if (Character.isSurrogate(c))
+					return UNDECIDED;
+				nextStamp();
+				int nNext = 0;
+				for (int i = 0; i < nCurrent; i++) {
+					int s = current[i];
+					if (fType[s] == CHAR && fOwner[s] > fBest && fSets[fArg[s]].matches(c))
+						nNext = addState(next, nNext, fOut1[s], input, pos + 1, len);
+				}
+				int[] tmp = current;
+				current = next;
+				next = tmp;
+				nCurrent = nNext;
+			}
+			return fBest;
+		}
+
+		private void nextStamp() {
+			if (++fStamp == Integer.MAX_VALUE) {
+				Arrays.fill(fMark, 0);
+				fStamp = 1;
+			}
+		}
+
+		/**
+		 * Adds the state and all states reachable by epsilon transitions
+		 */
+		private int addState(int[] list, int n, int state, CharSequence input, int pos, int len) {
+			int sp = 0;
+			fStack[sp++] = state;
+			while (sp > 0) {
+				int s = fStack[--sp];
+				if (fMark[s] == fStamp)
+					continue;
+				fMark[s] = fStamp;
+				switch (fType[s]) {
+					case CHAR:
+						list[n++] = s;
+						break;
+					case SPLIT:
+						// push the second branch first, the order does not really matter
+						fStack[sp++] = fOut2[s];
+						fStack[sp++] = fOut1[s];
+						break;
+					case ASSERT:
+						if (holds(fArg[s], input, pos, len))
+							fStack[sp++] = fOut1[s];
+						break;
+					case MATCH:
+						if (fArg[s] > fBest)
+							fBest = fArg[s];
+						break;
+				}
+			}
+			return n;
+		}
+	}
+
+	private static boolean holds(int anchor, CharSequence input, int pos, int len) {
+		switch (anchor) {
+			case RegexNode.Anchor.BEGIN:
+				return pos == 0;
+			case RegexNode.Anchor.END_OF_INPUT:
+				return pos == len;
+			default:
+				if (pos == len)
+					return true;
+				if (pos == len - 1)
+					return CharSet.LINE_TERMINATOR.matches(input.charAt(pos)) 
+							&& !(input.charAt(pos) == '\n' && pos > 0 && input.charAt(pos - 1) == '\r');
+				return pos == len - 2 && input.charAt(pos) == '\r' && input.charAt(pos + 1) == '\n';
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import java.util.Arrays;
+
+/**
+ * A reusable {@link CharSequence} for paths that are built incrementally.
+ */
+public final class PathBuffer implements CharSequence, Comparable<CharSequence> {
+	private char[] fChars = new char[256];
+	private int fLength;
+
+	public int length() {
+		return fLength;
+	}
+
+	public char charAt(int index) {
+		return fChars[index];
+	}
+
+	public CharSequence subSequence(int start, int end) {
+		return new String(fChars, start, end - start);
+	}
+
+	public void setLength(int length) {
+		fLength = length;
+	}
+
+	public void append(char[] chars, int offset, int length) {
+		ensureCapacity(fLength + length);
+		System.arraycopy(chars, offset, fChars, fLength, length);
+		fLength += length;
+	}
+
+	public void append(CharSequence s) {
+		int length = s.length();
+		ensureCapacity(fLength + length);
+		for (int i = 0; i < length; i++) {
+			fChars[fLength++] = s.charAt(i);
+		}
+	}
+
+	public void append(char c) {
+		ensureCapacity(fLength + 1);
+		fChars[fLength++] = c;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > fChars.length)
+			fChars = Arrays.copyOf(fChars, Math.max(capacity, fChars.length * 2));
+	}
+
+	public boolean startsWith(CharSequence prefix) {
+		int length = prefix.length();
+		if (length > fLength)
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (fChars[i] != prefix.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	public int compareTo(CharSequence other) {
+		return compare(this, other);
+	}
+
+	/**
+	 * Compares like {@link String#compareTo(String)}
+	 */
+	public static int compare(CharSequence s1, CharSequence s2) {
+		int n = Math.min(s1.length(), s2.length());
+		for (int i = 0; i < n; i++) {
+			char c1 = s1.charAt(i);
+			char c2 = s2.charAt(i);
+			if (c1 != c2)
+				return c1 - c2;
+		}
+		return s1.length() - s2.length();
+	}
+
+	@Override
+	public String toString() {
+		return new String(fChars, 0, fLength);
+	}
+}
@@ -0,0 +1,21 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+/**
+ * Iterates over sorted paths. The {@link CharSequence} returned by {@link #path()} 
+ * is only valid until the next call of {@link #next()}.
+ */
+public interface PathCursor {
+	/**
+	 * @return false if there are no more paths
+	 */
+	boolean next();
+
+	CharSequence path();
+}
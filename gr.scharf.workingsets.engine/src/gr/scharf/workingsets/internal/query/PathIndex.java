@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * An immutable snapshot of a set of paths: a {@link PathTable} plus the paths
+ * that have been added and removed since the table was built. Changes create
+ * a new snapshot, so readers can iterate without locking. When the changes
+ * get too large, {@link #compact()} merges them into a new table.
+ */
+public final class PathIndex {
+	public static final PathIndex EMPTY = new PathIndex(PathTable.EMPTY);
+	private static final String[] NO_PATHS = new String[0];
+	private static final int[] NO_INDEXES = new int[0];
+
+	private final PathTable fTable;
+	/** sorted paths that are not in the table */
+	private final String[] fAdded;
+	/** sorted indexes of the paths removed from the table */
+	private final int[] fRemoved;
+
+	public PathIndex(PathTable table) {
+		this(table, NO_PATHS, NO_INDEXES);
+	}
+
+	private PathIndex(PathTable table, String[] added, int[] removed) {
+		fTable = table;
+		fAdded = added;
+		fRemoved = removed;
+	}
+
+	public int size() {
+		return fTable.size() - fRemoved.length + fAdded.length;
+	}
+
+	/**
+	 * @return the number of changes not yet merged into the table
+	 */
+	public int getChangeCount() {
+		return fAdded.length + fRemoved.length;
+	}
+
+	/**
+	 * @return true if the changes should be merged into the table
+	 */
+	public boolean needsCompaction() {
+		return getChangeCount() > Math.max(1000, fTable.size() / 8);
+	}
+
+	public boolean contains(CharSequence path) {
+		int index = fTable.indexOf(path);
+		if (index >= 0)
+			return Arrays.binarySearch(fRemoved, index) < 0;
+		return Arrays.binarySearch(fAdded, path.toString()) >= 0;
+	}
+
+	/**
+	 * @param folder the path of a folder ending with '/'
+	 * @return the number of paths in the folder and its subfolders, without iterating them
+	 */
+	public int count(String folder) {
+		// the paths in the folder are the paths from "folder/" up to (excluding) "folder0"
+		String end = folder.substring(0, folder.length() - 1) + (char) (folder.charAt(folder.length() - 1) + 1);
+		return rank(end) - rank(folder);
+	}
+
+	/**
+	 * @return the number of paths less than path
+	 */
+	private int rank(String path) {
+		int index = insertionPoint(fTable.indexOf(path));
+		return index - insertionPoint(Arrays.binarySearch(fRemoved, index))
+				+ insertionPoint(Arrays.binarySearch(fAdded, path));
+	}
+
+	/**
+	 * Adding paths that exist and removing paths that do not exist are ignored.
+	 *
+	 * @return a new snapshot with the changes applied or this if nothing changed
+	 */
+	public PathIndex withChanges(Collection<String> added, Collection<String> removed) {
+		if (added.isEmpty() && removed.isEmpty())
+			return this;
+		TreeSet<String> newAdded = new TreeSet<String>(Arrays.asList(fAdded));
+		TreeSet<Integer> newRemoved = new TreeSet<Integer>();
+		for (int index : fRemoved) {
+			newRemoved.add(index);
+		}
+		for (String path : removed) {
+			if (!newAdded.remove(path)) {
+				int index = fTable.indexOf(path);
+				if (index >= 0)
+					newRemoved.add(index);
+			}
+		}
+		for (String path : added) {
+			int index = fTable.indexOf(path);
+			if (index >= 0)
+				newRemoved.remove(index);
+			else
+				newAdded.add(path);
+		}
+		int[] removedIndexes = new int[newRemoved.size()];
+		int i = 0;
+		for (Integer index : newRemoved) {
+			removedIndexes[i++] = index;
+		}
+		return new PathIndex(fTable, newAdded.toArray(new String[newAdded.size()]), removedIndexes);
+	}
+
+	/**
+	 * Splits the paths into ranges of about minSize paths at the boundaries of 
+	 * projects or top-level folders: a range ends before the top-level folder of 
+	 * the path it would end at, so it may be smaller. 
+	 * Range i contains the paths that are greater or equal to point i-1 and less 
+	 * than point i.
+	 *
+	 * @return the sorted split points, empty if there should be only one range
+	 */
+	public List<String> getSplitPoints(int minSize) {
+		List<String> points = new ArrayList<String>();
+		int minBlocks = Math.max(1, minSize / PathTable.BLOCK_SIZE);
+		int blocks = (fTable.size() + PathTable.BLOCK_SIZE - 1) / PathTable.BLOCK_SIZE;
+		PathTable.Cursor cursor = fTable.cursor();
+		int lastBlock = 0;
+		for (int block = minBlocks; block < blocks - minBlocks; block++) {
+			if (block - lastBlock < minBlocks)
+				continue;
+			cursor.seek(block * PathTable.BLOCK_SIZE);
+			cursor.next();
+			String folder = topLevelFolder(cursor.path());
+			if (points.isEmpty() || folder.compareTo(points.get(points.size() - 1)) > 0) {
+				points.add(folder);
+				lastBlock = block;
+			}
+		}
+		return points;
+	}
+
+	/**
+	 * @return the path of the top-level folder (e.g. <code>/project/folder/</code>) 
+	 * or of the project if the path is a file in the project
+	 */
+	private static String topLevelFolder(CharSequence path) {
+		int slashes = 0;
+		for (int i = 0; i < path.length(); i++) {
+			if (path.charAt(i) == '/' && ++slashes == 3)
+				return path.subSequence(0, i + 1).toString();
+		}
+		int end = path.length();
+		while (end > 0 && path.charAt(end - 1) != '/')
+			end--;
+		return path.subSequence(0, end).toString();
+	}
+
+	/**
+	 * @return a snapshot with the same paths and all changes merged into the table
+	 */
+	public PathIndex compact() {
+		if (getChangeCount() == 0)
+			return this;
+		PathTable.Builder builder = new PathTable.Builder();
+		PathCursor cursor = cursor();
+		while (cursor.next()) {
+			builder.add(cursor.path());
+		}
+		return new PathIndex(builder.build());
+	}
+
+	/**
+	 * @return a cursor over all paths in sorted order
+	 */
+	public PathCursor cursor() {
+		return new MergeCursor(null);
+	}
+
+	/**
+	 * @param from null for all paths
+	 * @return a cursor over all paths that are greater or equal to from in sorted order
+	 */
+	public PathCursor cursor(String from) {
+		return new MergeCursor(from);
+	}
+
+	private static int insertionPoint(int index) {
+		return index < 0 ? -index - 1 : index;
+	}
+
+	/**
+	 * Merges the table and the added paths and skips the removed paths.
+	 */
+	private class MergeCursor implements PathCursor {
+		private final PathTable.Cursor fTableCursor = fTable.cursor();
+		private boolean fTableValid;
+		private int fNextRemoved;
+		private int fNextAdded;
+		private CharSequence fPath;
+
+		MergeCursor(String from) {
+			if (from != null) {
+				int index = insertionPoint(fTable.indexOf(from));
+				fTableCursor.seek(index);
+				fNextRemoved = insertionPoint(Arrays.binarySearch(fRemoved, index));
+				fNextAdded = insertionPoint(Arrays.binarySearch(fAdded, from));
+			}
+			advanceTable();
+		}
+
+		private void advanceTable() {
+			while (fTableValid = fTableCursor.next()) {
+				int index = fTableCursor.index();
+				if (fNextRemoved < fRemoved.length && fRemoved[fNextRemoved] == index) {
+					fNextRemoved++;
+				} else {
+					return;
+				}
+			}
+		}
+
+		public boolean next() {
+			if (fPath == fTableCursor.path())
+				advanceTable();
+			boolean addedValid = fNextAdded < fAdded.length;
+			if (fTableValid && (!addedValid || PathBuffer.compare(fTableCursor.path(), fAdded[fNextAdded]) < 0)) {
+				fPath = fTableCursor.path();
+			} else if (addedValid) {
+				fPath = fAdded[fNextAdded++];
+			} else {
+				fPath = null;
+				return false;
+			}
+			return true;
+		}
+
+		public CharSequence path() {
+			return fPath;
+		}
+	}
+}
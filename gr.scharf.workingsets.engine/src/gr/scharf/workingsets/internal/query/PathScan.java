@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Matches all paths of a {@link PathIndex}. The paths are split into ranges of 
+ * projects and top-level folders that are matched in parallel, each range 
+ * produces a partial result and the partial results are concatenated in 
+ * the order of the paths.
+ *
+ * @param <T> the type of the result elements
+ */
+public abstract class PathScan<T> {
+	/**
+	 * Ranges smaller than that are not worth a task of their own
+	 */
+	static final int MIN_RANGE_SIZE = 8 * 1024;
+	private static final int CANCEL_CHECK_INTERVAL = 256;
+	private static ForkJoinPool fgPool;
+
+	/**
+	 * Called concurrently from several threads.
+	 *
+	 * @param path only valid during the call
+	 * @return the result element for the path or null if the path does not match
+	 */
+	protected abstract T match(CharSequence path);
+
+	/**
+	 * Called concurrently from several threads.
+	 *
+	 * @return true if the scan should stop
+	 */
+	protected boolean isCanceled() {
+		return false;
+	}
+
+	/**
+	 * @return the pruner used to skip folders or null to match all paths
+	 */
+	protected SubtreePruner getPruner() {
+		return null;
+	}
+
+	private static synchronized ForkJoinPool getPool() {
+		if (fgPool == null)
+			fgPool = new ForkJoinPool();
+		return fgPool;
+	}
+
+	/**
+	 * Matches the paths in a single thread.
+	 *
+	 * @return the result elements in the order of the paths, incomplete if canceled
+	 */
+	public List<T> scan(PathIndex index) {
+		List<T> result = new ArrayList<T>();
+		scanRange(index, null, null, result);
+		return result;
+	}
+
+	/**
+	 * Matches the paths in parallel.
+	 *
+	 * @return the result elements in the order of the paths, incomplete if canceled
+	 */
+	public List<T> parallelScan(final PathIndex index) {
+		final List<String> points = index.getSplitPoints(MIN_RANGE_SIZE);
+		if (points.isEmpty())
+			return scan(index);
+		return getPool().invoke(new RecursiveTask<List<T>>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected List<T> compute() {
+				List<RangeTask> tasks = new ArrayList<RangeTask>();
+				for (int i = 0; i <= points.size(); i++) {
+					String from = i == 0 ? null : points.get(i - 1);
+					String to = i == points.size() ? null : points.get(i);
+					tasks.add(new RangeTask(index, from, to));
+				}
+				ForkJoinTask.invokeAll(tasks);
+				int size = 0;
+				for (RangeTask task : tasks) {
+					size += task.getRawResult().size();
+				}
+				List<T> result = new ArrayList<T>(size);
+				for (RangeTask task : tasks) {
+					result.addAll(task.getRawResult());
+				}
+				return result;
+			}
+		});
+	}
+
+	private class RangeTask extends RecursiveTask<List<T>> {
+		private static final long serialVersionUID = 1L;
+		private final PathIndex fIndex;
+		private final String fFrom;
+		private final String fTo;
+
+		RangeTask(PathIndex index, String from, String to) {
+			fIndex = index;
+			fFrom = from;
+			fTo = to;
+		}
+
+		@Override
+		protected List<T> compute() {
+			List<T> result = new ArrayList<T>();
+			scanRange(fIndex, fFrom, fTo, result);
+			return result;
+		}
+	}
+
+	/**
+	 * Matches the paths that are greater or equal to from and less than to
+	 *
+	 * @param from null for the first path
+	 * @param to null for after the last path
+	 */
+	private void scanRange(PathIndex index, String from, String to, List<T> result) {
+		SubtreePruner pruner = getPruner();
+		PathCursor cursor = pruner == null ? index.cursor(from) : new PruningCursor(index, from, pruner);
+		int count = 0;
+		while (cursor.next()) {
+			CharSequence path = cursor.path();
+			if (to != null && PathBuffer.compare(path, to) >= 0)
+				return;
+			if (++count % CANCEL_CHECK_INTERVAL == 0 && isCanceled())
+				return;
+			T element = match(path);
+			if (element != null)
+				result.add(element);
+		}
+	}
+}
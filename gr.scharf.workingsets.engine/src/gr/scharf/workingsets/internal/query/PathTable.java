@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An immutable, sorted table of paths stored with front coding: each path 
+ * only stores the characters that differ from the previous path. Every 
+ * {@link #BLOCK_SIZE} paths a path is stored completely, so that the table 
+ * can be searched and iterated from any index.
+ */
+public final class PathTable {
+	static final int BLOCK_SIZE = 16;
+	public static final PathTable EMPTY = new Builder().build();
+
+	/**
+	 * For each path: the length of the prefix shared with the previous path, 
+	 * the length of the suffix and the suffix. Lengths are stored in one char,
+	 * or two chars if they do not fit into 15 bits.
+	 */
+	private final char[] fData;
+	private final int[] fBlocks;
+	private final int fSize;
+
+	private PathTable(char[] data, int[] blocks, int size) {
+		fData = data;
+		fBlocks = blocks;
+		fSize = size;
+	}
+
+	/**
+	 * Collects the paths for a table. The paths have to be added in sorted order 
+	 * (see {@link String#compareTo(String)}), duplicates are ignored.
+	 */
+	public static class Builder {
+		private char[] fData = new char[1024];
+		private int[] fBlocks = new int[16];
+		private int fLength;
+		private int fSize;
+		private final PathBuffer fLast = new PathBuffer();
+
+		public void add(CharSequence path) {
+			int compare = fSize == 0 ? 1 : PathBuffer.compare(path, fLast);
+			if (compare == 0)
+				return;
+			if (compare < 0)
+				throw new IllegalArgumentException("paths must be sorted: " + path);
+			int prefix = 0;
+			if (fSize % BLOCK_SIZE == 0) {
+				if (fSize / BLOCK_SIZE == fBlocks.length)
+					fBlocks = Arrays.copyOf(fBlocks, fBlocks.length * 2);
+				fBlocks[fSize / BLOCK_SIZE] = fLength;
+			} else {
+				int max = Math.min(path.length(), fLast.length());
+				while (prefix < max && path.charAt(prefix) == fLast.charAt(prefix))
+					prefix++;
+			}
+			int suffix = path.length() - prefix;
+			ensureCapacity(fLength + 4 + suffix);
+			fLength = writeLength(fData, fLength, prefix);
+			fLength = writeLength(fData, fLength, suffix);
+			for (int i = prefix; i < path.length(); i++) {
+				fData[fLength++] = path.charAt(i);
+			}
+			fLast.setLength(prefix);
+			for (int i = prefix; i < path.length(); i++) {
+				fLast.append(path.charAt(i));
+			}
+			fSize++;
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity > fData.length)
+				fData = Arrays.copyOf(fData, Math.max(capacity, fData.length * 2));
+		}
+
+		public PathTable build() {
+			int blocks = (fSize + BLOCK_SIZE - 1) / BLOCK_SIZE;
+			return new PathTable(Arrays.copyOf(fData, fLength), Arrays.copyOf(fBlocks, blocks), fSize);
+		}
+	}
+
+	private static int writeLength(char[] data, int offset, int length) {
+		if (length < 0x8000) {
+			data[offset++] = (char) length;
+		} else {
+			data[offset++] = (char) (0x8000 | (length >>> 16));
+			data[offset++] = (char) length;
+		}
+		return offset;
+	}
+
+	public int size() {
+		return fSize;
+	}
+
+	/**
+	 * @return the number of chars used to store the paths
+	 */
+	public int getDataLength() {
+		return fData.length;
+	}
+
+	/**
+	 * Writes the table in the format read by {@link #read(ByteBuffer)}
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(fSize);
+		out.writeInt(fBlocks.length);
+		out.writeInt(fData.length);
+		for (int block : fBlocks) {
+			out.writeInt(block);
+		}
+		for (char c : fData) {
+			out.writeChar(c);
+		}
+	}
+
+	/**
+	 * Reads a table written by {@link #write(DataOutput)}, e.g. from a memory mapped file.
+	 */
+	public static PathTable read(ByteBuffer buffer) throws IOException {
+		try {
+			int size = buffer.getInt();
+			int blockCount = buffer.getInt();
+			int dataLength = buffer.getInt();
+			if (size < 0 || blockCount != (size + BLOCK_SIZE - 1) / BLOCK_SIZE || dataLength < 0)
+				throw new IOException("corrupt path table");
+			// checked before allocating: a corrupt length must not exhaust the memory
+			if (4L * blockCount + 2L * dataLength > buffer.remaining())
+				throw new IOException("truncated path table");
+			int[] blocks = new int[blockCount];
+			char[] data = new char[dataLength];
+			buffer.asIntBuffer().get(blocks);
+			buffer.position(buffer.position() + 4 * blocks.length);
+			buffer.asCharBuffer().get(data);
+			buffer.position(buffer.position() + 2 * data.length);
+			for (int i = 0; i < blocks.length; i++) {
+				if (blocks[i] < 0 || blocks[i] >= data.length || (i > 0 && blocks[i] <= blocks[i - 1]))
+					throw new IOException("corrupt path table");
+			}
+			return new PathTable(data, blocks, size);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("truncated path table");
+		}
+	}
+
+	public String get(int index) {
+		Cursor cursor = cursor();
+		cursor.seek(index);
+		return cursor.next() ? cursor.path().toString() : null;
+	}
+
+	/**
+	 * @return the index of the path or <code>-(insertion point) - 1</code> like 
+	 * {@link Arrays#binarySearch(int[], int)}
+	 */
+	public int indexOf(CharSequence path) {
+		Cursor cursor = cursor();
+		// find the last block that starts with a path less or equal to path
+		int lo = 0, hi = fBlocks.length - 1, block = 0;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			cursor.seek(mid * BLOCK_SIZE);
+			cursor.next();
+			int compare = PathBuffer.compare(cursor.path(), path);
+			if (compare == 0)
+				return mid * BLOCK_SIZE;
+			if (compare < 0) {
+				block = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		cursor.seek(block * BLOCK_SIZE);
+		while (cursor.next()) {
+			int compare = PathBuffer.compare(cursor.path(), path);
+			if (compare == 0)
+				return cursor.index();
+			if (compare > 0)
+				return -cursor.index() - 1;
+		}
+		return -fSize - 1;
+	}
+
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Decodes the paths into a reusable buffer.
+	 */
+	public final class Cursor implements PathCursor {
+		private final PathBuffer fPath = new PathBuffer();
+		private int fIndex = -1;
+		private int fOffset;
+
+		/**
+		 * Positions the cursor before the path at index, the next call 
+		 * of {@link #next()} returns that path.
+		 */
+		public void seek(int index) {
+			if (index >= fSize) {
+				fIndex = fSize - 1;
+				return;
+			}
+			int block = index / BLOCK_SIZE;
+			fIndex = block * BLOCK_SIZE - 1;
+			fOffset = fBlocks[block];
+			while (fIndex < index - 1)
+				next();
+		}
+
+		public boolean next() {
+			if (fIndex + 1 >= fSize)
+				return false;
+			fIndex++;
+			if (fIndex % BLOCK_SIZE == 0)
+				fOffset = fBlocks[fIndex / BLOCK_SIZE];
+			int prefix = readLength();
+			int suffix = readLength();
+			fPath.setLength(prefix);
+			fPath.append(fData, fOffset, suffix);
+			fOffset += suffix;
+			return true;
+		}
+
+		private int readLength() {
+			int length = fData[fOffset++];
+			if ((length & 0x8000) != 0)
+				length = ((length & 0x7fff) << 16) | fData[fOffset++];
+			return length;
+		}
+
+		public PathBuffer path() {
+			return fPath;
+		}
+
+		/**
+		 * @return the index of the current path
+		 */
+		public int index() {
+			return fIndex;
+		}
+	}
+}
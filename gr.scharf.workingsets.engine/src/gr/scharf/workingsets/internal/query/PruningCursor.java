@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+/**
+ * Iterates the paths of a {@link PathIndex} and skips the paths below folders 
+ * pruned by a {@link SubtreePruner}. Each folder is checked once, when the first 
+ * path below it is reached.
+ */
+public class PruningCursor implements PathCursor {
+	private final PathIndex fIndex;
+	private final SubtreePruner fPruner;
+	private PathCursor fCursor;
+	/**
+	 * The parent folder of the last path returned, all its ancestors have been checked
+	 */
+	private final PathBuffer fFolder = new PathBuffer();
+
+	/**
+	 * @param from null for all paths
+	 */
+	public PruningCursor(PathIndex index, String from, SubtreePruner pruner) {
+		fIndex = index;
+		fPruner = pruner;
+		fCursor = index.cursor(from);
+	}
+
+	public boolean next() {
+		next: while (fCursor.next()) {
+			CharSequence path = fCursor.path();
+			int checked = checkedFolderLength(path);
+			int lastSlash = checked;
+			for (int i = checked + 1; i < path.length(); i++) {
+				if (path.charAt(i) != '/')
+					continue;
+				fFolder.setLength(0);
+				append(fFolder, path, i);
+				if (fPruner.isPruned(fFolder)) {
+					// continue after the last path below the folder ('0' follows '/')
+					fFolder.append('0');
+					fCursor = fIndex.cursor(fFolder.toString());
+					fFolder.setLength(0);
+					continue next;
+				}
+				lastSlash = i;
+			}
+			fFolder.setLength(0);
+			append(fFolder, path, Math.max(lastSlash, 0));
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the position of the slash after the deepest folder of path that 
+	 * has already been checked (0 for none)
+	 */
+	private int checkedFolderLength(CharSequence path) {
+		int max = Math.min(fFolder.length(), path.length());
+		int common = 0;
+		while (common < max && fFolder.charAt(common) == path.charAt(common))
+			common++;
+		if (common == fFolder.length() && common < path.length() && path.charAt(common) == '/')
+			return common;
+		// the last folder boundary within the common part
+		for (int i = Math.min(common, path.length() - 1); i > 0; i--) {
+			if (path.charAt(i) == '/' && i < common)
+				return i;
+		}
+		return 0;
+	}
+
+	private static void append(PathBuffer buffer, CharSequence path, int length) {
+		for (int i = 0; i < length; i++) {
+			buffer.append(path.charAt(i));
+		}
+	}
+
+	public CharSequence path() {
+		return fCursor.path();
+	}
+}
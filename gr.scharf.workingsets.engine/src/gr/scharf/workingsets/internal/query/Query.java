@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The lines of a query as entered by the user. One expression per line, lines
+ * starting with '-' are exclusions, lines starting with '#' are comments and
+ * lines starting with <code>#!</code> are options like <code>#!engine automaton</code>.
+ * <p>
+ * Lines are regular expressions unless they start with <code>glob:</code> (see {@link Glob})
+ * or the query has the option <code>#!syntax glob</code>. With that option lines starting
+ * with <code>regex:</code> are regular expressions. Glob lines can be excluded with 
+ * '-' or '!'.
+ * <p>
+ * Lines starting with <code>@</code> and the name of a predicate (see {@link #PREDICATES})
+ * are predicates on the attributes of the files (e.g. <code>@modified&lt;7d</code>),
+ * they are not matched against the path. Other lines starting with <code>@</code>
+ * (e.g. <code>@types/</code>, a scope of npm packages) are expressions.
+ * A file must satisfy all predicates and none of the excluded predicates
+ * (e.g. <code>-@derived</code>). Lines starting with <code>content:</code> are
+ * predicates as well, a regular expression that has to be found in the content.
+ */
+public class Query {
+	public static final String OPTION_PREFIX = "#!";
+	public static final String OPTION_ENGINE = "engine";
+	/**
+	 * Matches all lines of a query in one pass, see {@link MultiPatternAutomaton}
+	 */
+	public static final String ENGINE_AUTOMATON = "automaton";
+	/**
+	 * Like {@link #ENGINE_AUTOMATON}, but lines the automaton cannot match (e.g. back 
+	 * references) are errors instead of being matched by a backtracking {@link java.util.regex.Pattern}
+	 */
+	public static final String ENGINE_LINEAR = "linear";
+	/**
+	 * The number of characters the regular expressions may read per path, see 
+	 * <code>QueryMatcher.DEFAULT_BUDGET</code>
+	 */
+	public static final String OPTION_BUDGET = "budget";
+	public static final String OPTION_SYNTAX = "syntax";
+	/**
+	 * A folder whose files all match is an element of the working set instead of
+	 * its files
+	 */
+	public static final String OPTION_COLLAPSE = "collapse";
+	public static final String SYNTAX_GLOB = "glob";
+	public static final String GLOB_PREFIX = "glob:";
+	public static final String REGEX_PREFIX = "regex:";
+	public static final String PREDICATE_PREFIX = "@";
+	/**
+	 * The names of the predicates, queries saved before predicates existed may have
+	 * other lines starting with <code>@</code>
+	 */
+	public static final String[] PREDICATES = { "derived", "hidden", "team-private", "linked", "modified", "size",
+			"content-type" };
+	/**
+	 * A regular expression matched against the content of the files
+	 */
+	public static final String CONTENT_PREFIX = "content:";
+
+	public static class Line {
+		/**
+		 * The expression without the exclusion marker and the syntax prefix
+		 */
+		public final String text;
+		public final boolean exclusion;
+		/**
+		 * The text is a {@link Glob} and not a regular expression
+		 */
+		public final boolean glob;
+
+		Line(String text, boolean exclusion) {
+			this(text, exclusion, false);
+		}
+
+		Line(String text, boolean exclusion, boolean glob) {
+			this.text = text;
+			this.exclusion = exclusion;
+			this.glob = glob;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Line))
+				return false;
+			Line other = (Line) obj;
+			return exclusion == other.exclusion && glob == other.glob && text.equals(other.text);
+		}
+
+		@Override
+		public int hashCode() {
+			return text.hashCode() + (exclusion ? 1 : 0);
+		}
+	}
+
+	private final List<Line> fLines;
+	private final List<Line> fPredicates;
+	private final Map<String, String> fOptions;
+
+	private Query(List<Line> lines, List<Line> predicates, Map<String, String> options) {
+		fLines = Collections.unmodifiableList(lines);
+		fPredicates = Collections.unmodifiableList(predicates);
+		fOptions = Collections.unmodifiableMap(options);
+	}
+
+	public static Query parse(String query) {
+		List<String> expressions = new ArrayList<String>();
+		Map<String, String> options = new LinkedHashMap<String, String>();
+		for (String line : query.split("\\s*\\n\\s*")) {
+			if (line.startsWith(OPTION_PREFIX)) {
+				String[] option = line.substring(OPTION_PREFIX.length()).trim().split("\\s+", 2);
+				options.put(option[0], option.length > 1 ? option[1] : "");
+			} else if (line.startsWith("#")) {
+				// this is a comment -- ignore it
+			} else if (line.length() > 0) {
+				expressions.add(line);
+			}
+		}
+		// options apply to all lines, even to the lines before them
+		boolean globSyntax = SYNTAX_GLOB.equals(options.get(OPTION_SYNTAX));
+		List<Line> lines = new ArrayList<Line>();
+		List<Line> predicates = new ArrayList<Line>();
+		for (String line : expressions) {
+			boolean exclusion = line.startsWith("-");
+			if (exclusion)
+				line = line.substring(1);
+			if (isPredicate(line)) {
+				predicates.add(new Line(line.substring(PREDICATE_PREFIX.length()).trim(), exclusion));
+				continue;
+			}
+			if (line.startsWith(CONTENT_PREFIX)) {
+				// a predicate on the content, the prefix is kept
+				predicates.add(new Line(line, exclusion));
+				continue;
+			}
+			boolean glob = globSyntax;
+			if (line.startsWith(GLOB_PREFIX)) {
+				glob = true;
+				line = line.substring(GLOB_PREFIX.length());
+			} else if (line.startsWith(REGEX_PREFIX)) {
+				glob = false;
+				line = line.substring(REGEX_PREFIX.length());
+			}
+			if (glob && line.startsWith("!")) {
+				exclusion = true;
+				line = line.substring(1);
+			}
+			lines.add(new Line(line, exclusion, glob));
+		}
+		return new Query(lines, predicates, options);
+	}
+
+	/**
+	 * @return true if the line (without the exclusion marker) is an <code>@</code> predicate:
+	 * the name of a predicate followed by nothing, a blank or a comparison
+	 */
+	static boolean isPredicate(String line) {
+		if (!line.startsWith(PREDICATE_PREFIX))
+			return false;
+		String text = line.substring(PREDICATE_PREFIX.length()).trim();
+		for (String name : PREDICATES) {
+			if (!text.startsWith(name))
+				continue;
+			if (text.length() == name.length())
+				return true;
+			char c = text.charAt(name.length());
+			if (c == '<' || c == '>' || c == '=' || Character.isWhitespace(c))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the include and exclude lines in the order entered by the user
+	 */
+	public List<Line> getLines() {
+		return fLines;
+	}
+
+	/**
+	 * @return the predicates on the attributes of the files without the <code>@</code>
+	 * and the <code>content:</code> lines, excluded predicates are marked as exclusion
+	 */
+	public List<Line> getPredicates() {
+		return fPredicates;
+	}
+
+	/**
+	 * @return the value of an option or null if the option is not set
+	 */
+	public String getOption(String name) {
+		return fOptions.get(name);
+	}
+
+	public Map<String, String> getOptions() {
+		return fOptions;
+	}
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decides whether an edit of a query can only make the result smaller. In that case
+ * the new query only has to be evaluated on the result of the old query.
+ * <p>
+ * Because the last matching line decides, the result can only shrink if 
+ * <ul>
+ * <li>exclusions are inserted or include lines are removed (or replaced by exclusions)</li>
+ * <li>an include line becomes stricter or an exclusion becomes looser</li>
+ * </ul>
+ * A line is stricter than another if its expression contains the other expression 
+ * (e.g. <code>\.cof</code> becomes <code>\.coffee$</code>): every match of the 
+ * stricter line contains a match of the other. The check is conservative; if in doubt 
+ * the edit is not narrowing.
+ */
+public class QueryRefinement {
+
+	/**
+	 * @return true if every path matched by newQuery is matched by oldQuery
+	 */
+	public static boolean isNarrowing(String oldQuery, String newQuery) {
+		Query oldParsed = Query.parse(oldQuery);
+		Query newParsed = Query.parse(newQuery);
+		if (!oldParsed.getOptions().equals(newParsed.getOptions()))
+			return false;
+		// adding predicates can only make the result smaller
+		if (!newParsed.getPredicates().containsAll(oldParsed.getPredicates()))
+			return false;
+		List<Query.Line> oldLines = oldParsed.getLines();
+		List<Query.Line> newLines = newParsed.getLines();
+		int prefix = 0;
+		while (prefix < oldLines.size() && prefix < newLines.size() && oldLines.get(prefix).equals(newLines.get(prefix)))
+			prefix++;
+		int suffix = 0;
+		while (suffix < oldLines.size() - prefix && suffix < newLines.size() - prefix
+				&& oldLines.get(oldLines.size() - 1 - suffix).equals(newLines.get(newLines.size() - 1 - suffix)))
+			suffix++;
+		List<Query.Line> removed = oldLines.subList(prefix, oldLines.size() - suffix);
+		List<Query.Line> inserted = newLines.subList(prefix, newLines.size() - suffix);
+		if (removed.size() == 1 && inserted.size() == 1 && removed.get(0).exclusion == inserted.get(0).exclusion
+				&& !removed.get(0).glob && !inserted.get(0).glob) {
+			Query.Line oldLine = removed.get(0);
+			Query.Line newLine = inserted.get(0);
+			if (oldLine.exclusion ? isStricter(oldLine.text, newLine.text) : isStricter(newLine.text, oldLine.text))
+				return true;
+		}
+		// removing includes and inserting exclusions can only make the result smaller
+		for (Query.Line line : removed) {
+			if (line.exclusion)
+				return false;
+		}
+		for (Query.Line line : inserted) {
+			if (!line.exclusion)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if every input in which strict finds a match contains a match of loose
+	 */
+	public static boolean isStricter(String strict, String loose) {
+		if (strict.equals(loose))
+			return true;
+		try {
+			return isStricter(RegexParser.parse(strict), RegexParser.parse(loose));
+		} catch (UnsupportedRegexException e) {
+			return false;
+		}
+	}
+
+	private static boolean isStricter(RegexNode strict, RegexNode loose) {
+		if (loose instanceof RegexNode.Alternation) {
+			for (RegexNode branch : ((RegexNode.Alternation) loose).branches) {
+				if (isStricter(strict, branch))
+					return true;
+			}
+			return false;
+		}
+		// every match of strict contains a match of loose if the items of
+		// loose are a contiguous part of the items of strict
+		List<RegexNode> strictItems = items(strict);
+		List<RegexNode> looseItems = items(loose);
+		for (int i = 0; i + looseItems.size() <= strictItems.size(); i++) {
+			if (strictItems.subList(i, i + looseItems.size()).equals(looseItems))
+				return true;
+		}
+		return false;
+	}
+
+	private static List<RegexNode> items(RegexNode node) {
+		if (node instanceof RegexNode.Concat)
+			return ((RegexNode.Concat) node).items;
+		return Collections.singletonList(node);
+	}
+}
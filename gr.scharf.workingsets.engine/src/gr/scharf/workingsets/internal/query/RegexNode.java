@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The syntax tree of a regular expression as created by the {@link RegexParser}.
+ * Groups are not represented because the automaton does not care about captures. 
+ * The nodes are immutable and implement structural equality.
+ */
+public abstract class RegexNode {
+
+	/**
+	 * Matches one character of a {@link CharSet}
+	 */
+	public static final class Chars extends RegexNode {
+		public final CharSet set;
+
+		Chars(CharSet set) {
+			this.set = set;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Chars && set.equals(((Chars) obj).set);
+		}
+
+		@Override
+		public int hashCode() {
+			return set.hashCode();
+		}
+	}
+
+	/**
+	 * Zero width assertions: <code>^</code>, <code>$</code> and <code>\z</code>
+	 */
+	public static final class Anchor extends RegexNode {
+		public static final int BEGIN = 0;
+		/**
+		 * <code>$</code> end of input, or before a final line terminator 
+		 */
+		public static final int END = 1;
+		/**
+		 * <code>\z</code> end of input
+		 */
+		public static final int END_OF_INPUT = 2;
+		public final int kind;
+
+		Anchor(int kind) {
+			this.kind = kind;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Anchor && kind == ((Anchor) obj).kind;
+		}
+
+		@Override
+		public int hashCode() {
+			return kind;
+		}
+	}
+
+	public static final class Concat extends RegexNode {
+		public final List<RegexNode> items;
+
+		Concat(List<RegexNode> items) {
+			this.items = Collections.unmodifiableList(items);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Concat && items.equals(((Concat) obj).items);
+		}
+
+		@Override
+		public int hashCode() {
+			return items.hashCode();
+		}
+	}
+
+	public static final class Alternation extends RegexNode {
+		public final List<RegexNode> branches;
+
+		Alternation(List<RegexNode> branches) {
+			this.branches = Collections.unmodifiableList(branches);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Alternation && branches.equals(((Alternation) obj).branches);
+		}
+
+		@Override
+		public int hashCode() {
+			return branches.hashCode() + 1;
+		}
+	}
+
+	/**
+	 * Repetition of a node; <code>max</code> is {@link #UNBOUNDED} for <code>*</code> and <code>+</code>
+	 */
+	public static final class Repeat extends RegexNode {
+		public static final int UNBOUNDED = -1;
+		public final RegexNode node;
+		public final int min;
+		public final int max;
+
+		Repeat(RegexNode node, int min, int max) {
+			this.node = node;
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Repeat))
+				return false;
+			Repeat other = (Repeat) obj;
+			return min == other.min && max == other.max && node.equals(other.node);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(new int[] { node.hashCode(), min, max });
+		}
+	}
+
+	/**
+	 * @return true if the node can match the empty string
+	 */
+	public boolean isNullable() {
+		if (this instanceof Chars)
+			return false;
+		if (this instanceof Anchor)
+			return true;
+		if (this instanceof Repeat)
+			return ((Repeat) this).min == 0 || ((Repeat) this).node.isNullable();
+		if (this instanceof Concat) {
+			for (RegexNode item : ((Concat) this).items) {
+				if (!item.isNullable())
+					return false;
+			}
+			return true;
+		}
+		for (RegexNode branch : ((Alternation) this).branches) {
+			if (branch.isNullable())
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the subset of the {@link java.util.regex.Pattern} syntax that can be 
+ * matched by an automaton: literals, character classes, <code>.</code>, groups, 
+ * alternation, greedy and reluctant quantifiers, the anchors <code>^ $ \A \z \Z</code> 
+ * and the <code>(?i)</code> flag.
+ * <p>
+ * Everything else (back references, look arounds, word boundaries, other flags...) 
+ * raises an {@link UnsupportedRegexException}. Invalid expressions raise the
+ * exception as well; it is up to the caller to report the error using 
+ * {@link java.util.regex.Pattern#compile(String)}.
+ */
+public class RegexParser {
+	/**
+	 * Limit for the expansion of counted repetitions like <code>x{1,1000}</code>
+	 */
+	static final int MAX_REPEAT = 1000;
+
+	private final String fRegex;
+	private int fPos;
+	private boolean fIgnoreCase;
+
+	private RegexParser(String regex) {
+		fRegex = regex;
+	}
+
+	public static RegexNode parse(String regex) throws UnsupportedRegexException {
+		RegexParser parser = new RegexParser(regex);
+		RegexNode node = parser.parseAlternation();
+		if (parser.fPos < regex.length())
+			throw parser.unsupported("unbalanced ')'");
+		return node;
+	}
+
+	private UnsupportedRegexException unsupported(String what) {
+		return new UnsupportedRegexException(what + " at index " + fPos + " in: " + fRegex);
+	}
+
+	private boolean more() {
+		return fPos < fRegex.length();
+	}
+
+	private char peek() {
+		return fRegex.charAt(fPos);
+	}
+
+	private RegexNode parseAlternation() throws UnsupportedRegexException {
+		List<RegexNode> branches = new ArrayList<RegexNode>();
+		branches.add(parseConcat());
+		while (more() && peek() == '|') {
+			fPos++;
+			branches.add(parseConcat());
+		}
+		return branches.size() == 1 ? branches.get(0) : new RegexNode.Alternation(branches);
+	}
+
+	private RegexNode parseConcat() throws UnsupportedRegexException {
+		List<RegexNode> items = new ArrayList<RegexNode>();
+		while (more() && peek() != '|' && peek() != ')') {
+			if (fRegex.startsWith("\\Q", fPos)) {
+				parseQuoted(items);
+				continue;
+			}
+			RegexNode atom = parseAtom();
+			if (atom == null)
+				// a flag like (?i)
+				continue;
+			items.add(parseQuantifier(atom));
+		}
+		return items.size() == 1 ? items.get(0) : new RegexNode.Concat(items);
+	}
+
+	private void parseQuoted(List<RegexNode> items) throws UnsupportedRegexException {
+		int end = fRegex.indexOf("\\E", fPos + 2);
+		if (end < 0)
+			end = fRegex.length();
+		String quoted = fRegex.substring(fPos + 2, end);
+		fPos = Math.min(end + 2, fRegex.length());
+		for (int i = 0; i < quoted.length(); i++) {
+			RegexNode atom = new RegexNode.Chars(CharSet.single(quoted.charAt(i), fIgnoreCase));
+			// a quantifier applies to the last quoted character only
+			if (i == quoted.length() - 1)
+				atom = parseQuantifier(atom);
+			items.add(atom);
+		}
+	}
+
+	private RegexNode parseQuantifier(RegexNode atom) throws UnsupportedRegexException {
+		if (!more())
+			return atom;
+		int min, max;
+		switch (peek()) {
+			case '*':
+				min = 0;
+				max = RegexNode.Repeat.UNBOUNDED;
+				fPos++;
+				break;
+			case '+':
+				min = 1;
+				max = RegexNode.Repeat.UNBOUNDED;
+				fPos++;
+				break;
+			case '?':
+				min = 0;
+				max = 1;
+				fPos++;
+				break;
+			case '{':
+				int close = fRegex.indexOf('}', fPos);
+				if (close < 0)
+					throw unsupported("illegal repetition");
+				String spec = fRegex.substring(fPos + 1, close);
+				try {
+					int comma = spec.indexOf(',');
+					if (comma < 0) {
+						min = max = Integer.parseInt(spec);
+					} else {
+						min = Integer.parseInt(spec.substring(0, comma));
+						max = comma == spec.length() - 1 ? RegexNode.Repeat.UNBOUNDED : Integer.parseInt(spec.substring(comma + 1));
+					}
+				} catch (NumberFormatException e) {
+					throw unsupported("illegal repetition");
+				}
+				if (min < 0 || min > MAX_REPEAT || max > MAX_REPEAT || (max != RegexNode.Repeat.UNBOUNDED && max < min))
+					throw unsupported("repetition");
+				fPos = close + 1;
+				break;
+			default:
+				return atom;
+		}
+		if (atom instanceof RegexNode.Anchor)
+			throw unsupported("quantified anchor");
+		if (more() && peek() == '?') {
+			// reluctant: does not matter to decide whether there is a match
+			fPos++;
+		} else if (more() && peek() == '+') {
+			throw unsupported("possessive quantifier");
+		}
+		return new RegexNode.Repeat(atom, min, max);
+	}
+
+	private RegexNode parseAtom() throws UnsupportedRegexException {
+		char c = peek();
+		fPos++;
+		switch (c) {
+			case '(':
+				return parseGroup();
+			case '[':
+				return new RegexNode.Chars(parseClass());
+			case '.':
+				return new RegexNode.Chars(CharSet.DOT);
+			case '^':
+				return new RegexNode.Anchor(RegexNode.Anchor.BEGIN);
+			case '$':
+				return new RegexNode.Anchor(RegexNode.Anchor.END);
+			case '\\':
+				return parseEscape();
+			case '*':
+			case '+':
+			case '?':
+			case '{':
+				throw unsupported("dangling meta character");
+			default:
+				return new RegexNode.Chars(CharSet.single(c, fIgnoreCase));
+		}
+	}
+
+	/**
+	 * @return the group or null if it was a flag group like <code>(?i)</code>
+	 */
+	private RegexNode parseGroup() throws UnsupportedRegexException {
+		boolean ignoreCase = fIgnoreCase;
+		if (more() && peek() == '?') {
+			fPos++;
+			boolean on = true;
+			boolean flags = false;
+			while (more() && (peek() == 'i' || peek() == '-')) {
+				if (peek() == '-')
+					on = false;
+				else
+					fIgnoreCase = on;
+				flags = true;
+				fPos++;
+			}
+			if (!more())
+				throw unsupported("unclosed group");
+			if (peek() == ')' && flags) {
+				// the flag applies to the rest of the enclosing group
+				fPos++;
+				return null;
+			}
+			if (peek() != ':')
+				throw unsupported("special group");
+			fPos++;
+		}
+		RegexNode node = parseAlternation();
+		if (!more() || peek() != ')')
+			throw unsupported("unclosed group");
+		fPos++;
+		fIgnoreCase = ignoreCase;
+		return node;
+	}
+
+	private RegexNode parseEscape() throws UnsupportedRegexException {
+		if (!more())
+			throw unsupported("trailing backslash");
+		char c = peek();
+		switch (c) {
+			case 'A':
+				fPos++;
+				return new RegexNode.Anchor(RegexNode.Anchor.BEGIN);
+			case 'Z':
+				fPos++;
+				return new RegexNode.Anchor(RegexNode.Anchor.END);
+			case 'z':
+				fPos++;
+				return new RegexNode.Anchor(RegexNode.Anchor.END_OF_INPUT);
+		}
+		List<int[]> ranges = new ArrayList<int[]>();
+		boolean negated = parseClassEscape(ranges);
+		return new RegexNode.Chars(CharSet.of(ranges, negated, fIgnoreCase));
+	}
+
+	/**
+	 * Parses an escape (the backslash has been consumed) and adds the characters to the ranges
+	 * @return true if the result is a negated predefined class (<code>\D \W \S</code>)
+	 */
+	private boolean parseClassEscape(List<int[]> ranges) throws UnsupportedRegexException {
+		char c = peek();
+		fPos++;
+		CharSet predefined = null;
+		boolean negated = false;
+		switch (c) {
+			case 'd': predefined = CharSet.DIGIT; break;
+			case 'D': predefined = CharSet.DIGIT; negated = true; break;
+			case 'w': predefined = CharSet.WORD; break;
+			case 'W': predefined = CharSet.WORD; negated = true; break;
+			case 's': predefined = CharSet.SPACE; break;
+			case 'S': predefined = CharSet.SPACE; negated = true; break;
+			default:
+				char ch = parseEscapedChar(c);
+				ranges.add(new int[] { ch, ch });
+				return false;
+		}
+		ranges.addAll(predefined.toRanges());
+		return negated;
+	}
+
+	private char parseEscapedChar(char c) throws UnsupportedRegexException {
+		switch (c) {
+			case 't': return '\t';
+			case 'n': return '\n';
+			case 'r': return '\r';
+			case 'f': return '\f';
+			case 'a': return '\u0007';
+			case 'e': return '\u001B';
+			case 'x': return (char) parseHex(2);
+			case 'u': return (char) parseHex(4);
+		}
+		if (Character.isLetterOrDigit(c))
+			throw unsupported("escape \\" + c);
+		return c;
+	}
+
+	private int parseHex(int digits) throws UnsupportedRegexException {
+		if (fPos + digits > fRegex.length())
+			throw unsupported("illegal hex escape");
+		try {
+			int value = Integer.parseInt(fRegex.substring(fPos, fPos + digits), 16);
+			fPos += digits;
+			return value;
+		} catch (NumberFormatException e) {
+			throw unsupported("illegal hex escape");
+		}
+	}
+
+	private CharSet parseClass() throws UnsupportedRegexException {
+		boolean negated = false;
+		if (more() && peek() == '^') {
+			negated = true;
+			fPos++;
+		}
+		if (more() && peek() == ']')
+			throw unsupported("empty class");
+		List<int[]> ranges = new ArrayList<int[]>();
+		while (true) {
+			if (!more())
+				throw unsupported("unclosed character class");
+			char c = peek();
+			if (c == ']') {
+				fPos++;
+				break;
+			}
+			if (c == '[' || fRegex.startsWith("&&", fPos))
+				throw unsupported("nested character class");
+			fPos++;
+			int from;
+			if (c == '\\') {
+				if (!more())
+					throw unsupported("trailing backslash");
+				List<int[]> escaped = new ArrayList<int[]>();
+				boolean negatedEscape = parseClassEscape(escaped);
+				if (negatedEscape || escaped.size() != 1 || escaped.get(0)[0] != escaped.get(0)[1]) {
+					// a predefined class
+					ranges.addAll(negatedEscape ? CharSet.of(escaped, true, false).toRanges() : escaped);
+					continue;
+				}
+				from = escaped.get(0)[0];
+			} else {
+				from = c;
+			}
+			int to = from;
+			if (fPos + 1 < fRegex.length() && peek() == '-' && fRegex.charAt(fPos + 1) != ']') {
+				fPos++;
+				char end = peek();
+				fPos++;
+				if (end == '\\') {
+					if (!more())
+						throw unsupported("trailing backslash");
+					char escaped = peek();
+					fPos++;
+					to = parseEscapedChar(escaped);
+				} else if (end == '[') {
+					throw unsupported("nested character class");
+				} else {
+					to = end;
+				}
+				if (to < from)
+					throw unsupported("illegal character range");
+			}
+			ranges.add(new int[] { from, to });
+		}
+		return CharSet.of(ranges, negated, fIgnoreCase);
+	}
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Decides from the lines of a query if a folder can be skipped because no file
+ * below it can be included. Because the last matching line wins, a folder can be
+ * skipped if an exclusion line matches every path below the folder and no include
+ * line after it can match a path below the folder (or if no include line can 
+ * match a path below the folder at all).
+ * <ul>
+ * <li>An exclusion line matches every path below a folder if it matches 
+ * <code>folder/</code> and its match cannot depend on where the path ends (it has
+ * no <code>$</code>, look arounds or other constructs {@link RegexParser} rejects).
+ * E.g. <code>-node_modules</code> for <code>/p/web/node_modules</code>.</li>
+ * <li>An include line cannot match below a folder if it is anchored to a prefix
+ * that is not compatible with <code>folder/</code>. E.g. <code>^/p/src/</code>
+ * for <code>/p/web</code>.</li>
+ * <li>{@link Glob} lines are asked directly, e.g. <code>!**&#47;node_modules/**</code>
+ * matches everything below <code>/p/web/node_modules</code></li>
+ * </ul>
+ * The exclusion lines are matched by a {@link MultiPatternAutomaton}, a line the
+ * automaton does not support is not used for pruning. Like this a line that
+ * backtracks excessively cannot block the scan, whatever engine the query uses.
+ */
+public class SubtreePruner {
+	private final boolean[] fExclusions;
+	/**
+	 * The exclusion lines that match all paths below a folder they match
+	 */
+	private final MultiPatternAutomaton fPrefixStable;
+	/**
+	 * For exclusion lines: the line in {@link #fPrefixStable}, else -1
+	 */
+	private final int[] fPrefixStableLines;
+	/**
+	 * For include lines: the literal every match starts with or null
+	 */
+	private final String[] fAnchoredPrefixes;
+	/**
+	 * The compiled glob lines, null for regular expressions
+	 */
+	private final Glob[] fGlobs;
+	private final boolean fUseless;
+
+	/**
+	 * @param lines the lines of the query in the order entered by the user
+	 */
+	public SubtreePruner(List<Query.Line> lines) {
+		int n = lines.size();
+		fExclusions = new boolean[n];
+		fPrefixStableLines = new int[n];
+		fAnchoredPrefixes = new String[n];
+		fGlobs = new Glob[n];
+		List<String> prefixStable = new ArrayList<String>();
+		boolean useful = false;
+		for (int i = 0; i < n; i++) {
+			Query.Line line = lines.get(i);
+			fExclusions[i] = line.exclusion;
+			fPrefixStableLines[i] = -1;
+			try {
+				if (line.glob) {
+					// globs know which folders they can match below
+					fGlobs[i] = Glob.compile(line.text);
+					useful = true;
+					continue;
+				}
+				RegexNode node = RegexParser.parse(line.text);
+				if (line.exclusion) {
+					if (!LiteralAnalysis.hasEndAnchor(node)) {
+						fPrefixStableLines[i] = prefixStable.size();
+						prefixStable.add(line.text);
+					}
+				} else {
+					fAnchoredPrefixes[i] = LiteralAnalysis.anchoredPrefix(node);
+					useful |= fAnchoredPrefixes[i] != null;
+				}
+			} catch (UnsupportedRegexException e) {
+				// cannot be used for pruning
+			} catch (PatternSyntaxException e) {
+				// cannot be used for pruning
+			}
+		}
+		fPrefixStable = new MultiPatternAutomaton(prefixStable.toArray(new String[prefixStable.size()]));
+		for (int i = 0; i < n; i++) {
+			int line = fPrefixStableLines[i];
+			if (line >= 0 && !fPrefixStable.isSupported(line))
+				fPrefixStableLines[i] = -1;
+			useful |= fPrefixStableLines[i] >= 0;
+		}
+		fUseless = !useful;
+	}
+
+	/**
+	 * @param folder the full path of a folder or project without trailing slash
+	 * @return true if no file below the folder can be included
+	 */
+	public boolean isPruned(CharSequence folder) {
+		if (fUseless)
+			return false;
+		String prefix = null;
+		// the last exclusion line in fPrefixStable that matches the prefix, computed on demand
+		int excluded = Integer.MIN_VALUE;
+		for (int i = fExclusions.length - 1; i >= 0; i--) {
+			if (prefix == null)
+				prefix = folder.toString() + '/';
+			if (fGlobs[i] != null) {
+				if (fExclusions[i]) {
+					if (fGlobs[i].matchesAllBelow(folder))
+						return true;
+				} else if (fGlobs[i].mayMatchBelow(folder)) {
+					return false;
+				}
+			} else if (fExclusions[i]) {
+				if (fPrefixStableLines[i] < 0)
+					continue;
+				if (excluded == Integer.MIN_VALUE)
+					excluded = fPrefixStable.newRun().lastMatch(prefix);
+				// the lines above do not match, for MultiPatternAutomaton.UNDECIDED none does
+				if (fPrefixStableLines[i] == excluded)
+					return true;
+			} else if (mayMatchBelow(fAnchoredPrefixes[i], prefix)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean mayMatchBelow(String anchoredPrefix, String folderPrefix) {
+		if (anchoredPrefix == null)
+			return true;
+		return anchoredPrefix.startsWith(folderPrefix) || folderPrefix.startsWith(anchoredPrefix);
+	}
+}
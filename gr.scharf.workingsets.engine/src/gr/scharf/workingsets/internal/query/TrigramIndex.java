@@ -0,0 +1,411 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable snapshot of the trigrams of the contents of files. For each file
+ * the index keeps a signature: a bit set (a bloom filter) in which each trigram 
+ * (three consecutive characters, ASCII letters converted to lower case) of the 
+ * content sets two bits. The signature has two to four bits per distinct trigram, 
+ * so a trigram the file does not contain is reported as contained with a probability 
+ * of 15% to 40%. A literal has several trigrams, which is enough to read only a few 
+ * files to confirm a content query. The bits
+ * of a trigram depend on the path of the file, otherwise a rare trigram that
+ * shares its bit with a common trigram would be reported for almost all files.
+ * <p>
+ * Unlike an inverted index (trigram to files) the signatures can be replaced
+ * file by file and their size is bounded by the size of the files. The signatures
+ * of the table can be memory mapped from the file written by {@link #write(DataOutput)}.
+ * Changes are kept in a map until {@link #compact()} merges them into the table.
+ */
+public final class TrigramIndex {
+	/**
+	 * The stamp of files that are not in the index
+	 */
+	public static final long UNKNOWN = Long.MIN_VALUE;
+	private static final int MAX_BITS = 1 << 16;
+	private static final long[] NO_BITS = new long[0];
+	public static final TrigramIndex EMPTY = new TrigramIndex(PathTable.EMPTY, new long[0], new int[1],
+			LongBuffer.allocate(0), Collections.<String, Signature> emptyMap());
+
+	/**
+	 * The signature of a file
+	 */
+	public static final class Signature {
+		final long fStamp;
+		final long[] fBits;
+
+		Signature(long stamp, long[] bits) {
+			fStamp = stamp;
+			fBits = bits;
+		}
+	}
+
+	private final PathTable fPaths;
+	/**
+	 * The {@link #hash(CharSequence)} of each path and a hash table of the 
+	 * indexes (plus one) of the paths, a lookup by hash is much faster than
+	 * a search in the table.
+	 */
+	private final long[] fPathHashes;
+	private final int[] fSlots;
+	private final long[] fStamps;
+	/**
+	 * The signature of path i are the longs offsets[i] to offsets[i+1] of the bits
+	 */
+	private final int[] fOffsets;
+	private final LongBuffer fBits;
+	/**
+	 * Signatures that replace the signatures of the table, null for removed files
+	 */
+	private final Map<String, Signature> fChanges;
+
+	private TrigramIndex(PathTable paths, long[] stamps, int[] offsets, LongBuffer bits, Map<String, Signature> changes) {
+		fPaths = paths;
+		fStamps = stamps;
+		fOffsets = offsets;
+		fBits = bits;
+		fChanges = changes;
+		fPathHashes = new long[paths.size()];
+		fSlots = new int[Math.max(2, Integer.highestOneBit(paths.size()) << 2)];
+		PathCursor cursor = paths.cursor();
+		for (int i = 0; cursor.next(); i++) {
+			long hash = hash(cursor.path());
+			fPathHashes[i] = hash;
+			int slot = (int) hash & (fSlots.length - 1);
+			while (fSlots[slot] != 0)
+				slot = (slot + 1) & (fSlots.length - 1);
+			fSlots[slot] = i + 1;
+		}
+	}
+
+	private TrigramIndex(TrigramIndex table, Map<String, Signature> changes) {
+		fPaths = table.fPaths;
+		fPathHashes = table.fPathHashes;
+		fSlots = table.fSlots;
+		fStamps = table.fStamps;
+		fOffsets = table.fOffsets;
+		fBits = table.fBits;
+		fChanges = changes;
+	}
+
+	/**
+	 * @return the index of the path in the table or -1
+	 */
+	private int lookup(long hash) {
+		for (int slot = (int) hash & (fSlots.length - 1); fSlots[slot] != 0; slot = (slot + 1) & (fSlots.length - 1)) {
+			int index = fSlots[slot] - 1;
+			if (fPathHashes[index] == hash)
+				return index;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return a 64 bit hash of a path
+	 */
+	private static long hash(CharSequence path) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < path.length(); i++) {
+			h = (h ^ path.charAt(i)) * 0x100000001b3L;
+		}
+		return mix(h);
+	}
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * @param salt different for each file, so that two trigrams do not share their bits in all files
+	 * @return the two bits of a trigram in a signature in the lower and upper half
+	 */
+	private static long bits(int trigram, long salt) {
+		return mix(trigram ^ salt);
+	}
+
+	/**
+	 * @param path the path of the file
+	 * @param stamp identifies the version of the content, e.g. the modification time
+	 * @param content the text of the file or null if the file is not a text file
+	 * (a file without signature contains no trigram)
+	 */
+	public static Signature signature(CharSequence path, long stamp, CharSequence content) {
+		if (content == null || content.length() < 3)
+			return new Signature(stamp, NO_BITS);
+		// collect the distinct hashes first, the size of the signature depends on their number
+		int[] set = new int[Integer.highestOneBit(Math.min(content.length(), MAX_BITS)) << 2];
+		int count = 0;
+		char c0 = fold(content.charAt(0));
+		char c1 = fold(content.charAt(1));
+		for (int i = 2; i < content.length(); i++) {
+			char c2 = fold(content.charAt(i));
+			int hash = hash(c0, c1, c2);
+			for (int slot = hash & (set.length - 1);; slot = (slot + 1) & (set.length - 1)) {
+				if (set[slot] == 0) {
+					set[slot] = hash;
+					if (++count > set.length / 2)
+						set = grow(set);
+					break;
+				}
+				if (set[slot] == hash)
+					break;
+			}
+			c0 = c1;
+			c1 = c2;
+		}
+		int mask = Math.min(MAX_BITS, Math.max(64, Integer.highestOneBit(count) << 2)) - 1;
+		long[] signature = new long[(mask + 1) / 64];
+		long salt = hash(path);
+		for (int hash : set) {
+			if (hash != 0) {
+				long bits = bits(hash, salt);
+				int bit = (int) bits & mask;
+				signature[bit >>> 6] |= 1L << bit;
+				bit = (int) (bits >>> 32) & mask;
+				signature[bit >>> 6] |= 1L << bit;
+			}
+		}
+		return new Signature(stamp, signature);
+	}
+
+	private static int[] grow(int[] set) {
+		int[] result = new int[set.length * 2];
+		for (int hash : set) {
+			if (hash == 0)
+				continue;
+			int slot = hash & (result.length - 1);
+			while (result[slot] != 0)
+				slot = (slot + 1) & (result.length - 1);
+			result[slot] = hash;
+		}
+		return result;
+	}
+
+	/**
+	 * @param literal a literal every matching content contains, see {@link LiteralAnalysis#requiredLiteral(RegexNode)}
+	 * @return the hashes of the trigrams of the literal, empty if the literal is shorter than three characters
+	 */
+	public static int[] trigrams(String literal) {
+		if (literal == null || literal.length() < 3)
+			return new int[0];
+		int[] hashes = new int[literal.length() - 2];
+		for (int i = 0; i < hashes.length; i++) {
+			hashes[i] = hash(fold(literal.charAt(i)), fold(literal.charAt(i + 1)), fold(literal.charAt(i + 2)));
+		}
+		return hashes;
+	}
+
+	private static char fold(char c) {
+		return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+	}
+
+	/**
+	 * @return a well mixed hash that is never 0
+	 */
+	private static int hash(char c0, char c1, char c2) {
+		int result = (int) mix(((long) c0 << 32) | ((long) c1 << 16) | c2);
+		return result == 0 ? 1 : result;
+	}
+
+	public int size() {
+		return fPaths.size() + fChanges.size();
+	}
+
+	/**
+	 * @return the stamp of the indexed content of the file or {@link #UNKNOWN}
+	 */
+	public long getStamp(CharSequence path) {
+		if (!fChanges.isEmpty()) {
+			String key = path.toString();
+			if (fChanges.containsKey(key)) {
+				Signature signature = fChanges.get(key);
+				return signature == null ? UNKNOWN : signature.fStamp;
+			}
+		}
+		int index = lookup(hash(path));
+		return index < 0 ? UNKNOWN : fStamps[index];
+	}
+
+	/**
+	 * @param stamp the stamp of the current content of the file
+	 * @param trigrams see {@link #trigrams(String)}
+	 * @return false if the file does not contain all trigrams. Files that are
+	 * not in the index or have been changed since they were indexed might contain them.
+	 */
+	public boolean mayContain(CharSequence path, long stamp, int[] trigrams) {
+		long hash = hash(path);
+		if (!fChanges.isEmpty()) {
+			String key = path.toString();
+			if (fChanges.containsKey(key)) {
+				Signature signature = fChanges.get(key);
+				if (signature == null || signature.fStamp != stamp)
+					return true;
+				return mayContain(LongBuffer.wrap(signature.fBits), 0, signature.fBits.length, hash, trigrams);
+			}
+		}
+		int index = lookup(hash);
+		if (index < 0 || fStamps[index] != stamp)
+			return true;
+		return mayContain(fBits, fOffsets[index], fOffsets[index + 1] - fOffsets[index], hash, trigrams);
+	}
+
+	private static boolean mayContain(LongBuffer bits, int offset, int length, long salt, int[] trigrams) {
+		// a literal without trigrams rules out no file, a file without signature has no trigram
+		if (trigrams.length == 0)
+			return true;
+		if (length == 0)
+			return false;
+		int mask = length * 64 - 1;
+		for (int hash : trigrams) {
+			long pair = bits(hash, salt);
+			int bit = (int) pair & mask;
+			if ((bits.get(offset + (bit >>> 6)) & (1L << bit)) == 0)
+				return false;
+			bit = (int) (pair >>> 32) & mask;
+			if ((bits.get(offset + (bit >>> 6)) & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param changes the new signatures, null for removed files
+	 * @return a new snapshot with the changes
+	 */
+	public TrigramIndex withChanges(Map<String, Signature> changes) {
+		if (changes.isEmpty())
+			return this;
+		Map<String, Signature> newChanges = new HashMap<String, Signature>(fChanges);
+		newChanges.putAll(changes);
+		return new TrigramIndex(this, newChanges);
+	}
+
+	/**
+	 * @return true if the changes should be merged into the table
+	 */
+	public boolean needsCompaction() {
+		return fChanges.size() > Math.max(1000, fPaths.size() / 8);
+	}
+
+	/**
+	 * @return a snapshot with all changes merged into the table
+	 */
+	public TrigramIndex compact() {
+		if (fChanges.isEmpty())
+			return this;
+		TreeMap<String, Signature> changes = new TreeMap<String, Signature>(fChanges);
+		PathTable.Builder paths = new PathTable.Builder();
+		int size = fPaths.size() + changes.size();
+		long[] stamps = new long[size];
+		int[] offsets = new int[size + 1];
+		long[] bits = new long[fBits.limit() + 1024];
+		int n = 0;
+		PathTable.Cursor cursor = fPaths.cursor();
+		boolean valid = cursor.next();
+		String changed = changes.isEmpty() ? null : changes.firstKey();
+		while (valid || changed != null) {
+			int compare = !valid ? 1 : changed == null ? -1 : PathBuffer.compare(cursor.path(), changed);
+			if (compare < 0) {
+				// unchanged
+				int index = cursor.index();
+				paths.add(cursor.path());
+				int length = fOffsets[index + 1] - fOffsets[index];
+				bits = ensureCapacity(bits, offsets[n] + length);
+				for (int i = 0; i < length; i++) {
+					bits[offsets[n] + i] = fBits.get(fOffsets[index] + i);
+				}
+				stamps[n] = fStamps[index];
+				offsets[n + 1] = offsets[n] + length;
+				n++;
+				valid = cursor.next();
+				continue;
+			}
+			if (compare == 0)
+				valid = cursor.next();
+			Signature signature = changes.get(changed);
+			if (signature != null) {
+				paths.add(changed);
+				bits = ensureCapacity(bits, offsets[n] + signature.fBits.length);
+				System.arraycopy(signature.fBits, 0, bits, offsets[n], signature.fBits.length);
+				stamps[n] = signature.fStamp;
+				offsets[n + 1] = offsets[n] + signature.fBits.length;
+				n++;
+			}
+			changed = changes.higherKey(changed);
+		}
+		return new TrigramIndex(paths.build(), Arrays.copyOf(stamps, n), Arrays.copyOf(offsets, n + 1),
+				LongBuffer.wrap(Arrays.copyOf(bits, offsets[n])), Collections.<String, Signature> emptyMap());
+	}
+
+	private static long[] ensureCapacity(long[] bits, int length) {
+		if (length <= bits.length)
+			return bits;
+		return Arrays.copyOf(bits, Math.max(length, bits.length * 2));
+	}
+
+	/**
+	 * @return a cursor over the paths in the table (without the changes)
+	 */
+	public PathCursor cursor() {
+		return fPaths.cursor();
+	}
+
+	/**
+	 * Writes the table, the changes have to be {@link #compact() compacted} before.
+	 */
+	public void write(DataOutput out) throws IOException {
+		if (!fChanges.isEmpty())
+			throw new IllegalStateException("the index has to be compacted");
+		fPaths.write(out);
+		for (long stamp : fStamps) {
+			out.writeLong(stamp);
+		}
+		for (int offset : fOffsets) {
+			out.writeInt(offset);
+		}
+		for (int i = 0; i < fBits.limit(); i++) {
+			out.writeLong(fBits.get(i));
+		}
+	}
+
+	/**
+	 * Reads an index written by {@link #write(DataOutput)}. The signatures are not
+	 * copied, they remain in the buffer.
+	 */
+	public static TrigramIndex read(ByteBuffer buffer) throws IOException {
+		PathTable paths = PathTable.read(buffer);
+		long[] stamps = new long[paths.size()];
+		for (int i = 0; i < stamps.length; i++) {
+			stamps[i] = buffer.getLong();
+		}
+		int[] offsets = new int[paths.size() + 1];
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] = buffer.getInt();
+		}
+		ByteBuffer bits = buffer.slice();
+		bits.limit(offsets[offsets.length - 1] * 8);
+		buffer.position(buffer.position() + bits.limit());
+		return new TrigramIndex(paths, stamps, offsets, bits.asLongBuffer(), Collections.<String, Signature> emptyMap());
+	}
+}
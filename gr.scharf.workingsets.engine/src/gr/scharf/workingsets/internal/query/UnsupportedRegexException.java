@@ -0,0 +1,21 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+/**
+ * Thrown by the {@link RegexParser} if a regular expression uses a construct
+ * that is not supported by the automaton (back references, look arounds...).
+ * Callers fall back to {@link java.util.regex.Pattern} in that case.
+ */
+public class UnsupportedRegexException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	public UnsupportedRegexException(String message) {
+		super(message);
+	}
+}
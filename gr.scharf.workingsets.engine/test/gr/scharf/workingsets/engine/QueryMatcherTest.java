@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import gr.scharf.workingsets.internal.query.LiteralAnalysis;
+import gr.scharf.workingsets.internal.query.RandomRegex;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class QueryMatcherTest {
+	private static final String[] PATHS = { "/p/src/a/A.java", "/p/src/a/B.JAVA", "/p/test/a/ATest.java",
+			"/p/bin/a/A.class", "/p/plugin.xml", "/p/doc/index.html", "/q/src/b/C.java", "/q/README" };
+
+	private static Set<String> set(String... strings) {
+		return new HashSet<String>(Arrays.asList(strings));
+	}
+
+	/**
+	 * @return true if the file is a candidate for the query according to the requirements
+	 */
+	private static boolean isCandidate(QueryMatcher matcher, String path) {
+		if (matcher.isUnconstrained())
+			return true;
+		String lowerCasePath = LiteralAnalysis.toLowerCase(path);
+		int dot = lowerCasePath.lastIndexOf('.');
+		if (dot > lowerCasePath.lastIndexOf('/') && matcher.getExtensions().contains(lowerCasePath.substring(dot + 1)))
+			return true;
+		for (String literal : matcher.getLiterals()) {
+			if (lowerCasePath.contains(literal))
+				return true;
+		}
+		return false;
+	}
+
+	@Test
+	public void requirements() {
+		QueryMatcher matcher = new QueryMatcher("\\.java$\n-/test/\n(?i)\\.xml$\n/doc/");
+		assertFalse(matcher.isUnconstrained());
+		assertEquals(set("java", "xml"), matcher.getExtensions());
+		assertEquals(set("/doc/"), matcher.getLiterals());
+		assertTrue(new QueryMatcher("\\.java$\n[a-z]+").isUnconstrained());
+		assertEquals(set("java"), new QueryMatcher("glob:**/*.java").getExtensions());
+	}
+
+	@Test
+	public void requirementsOfTheExamples() {
+		String[] queries = { "\\.java$\n-/test/", "^/p/src/", "glob:/p/**/*.{java,xml}\nglob:!**/test/**",
+				"(?i)\\.java$", "#!engine automaton\n/src/\n-\\.class$", "/a/|/b/" };
+		for (String query : queries) {
+			QueryMatcher matcher = new QueryMatcher(query);
+			for (String path : PATHS) {
+				if (matcher.matches(path))
+					assertTrue(query + " on " + path, isCandidate(matcher, path));
+			}
+		}
+	}
+
+	/**
+	 * A query never includes a file that the requirements rule out, otherwise
+	 * the file would not be dispatched to the working set
+	 */
+	@Test
+	public void requirementsAreSound() {
+		RandomRegex random = new RandomRegex(42);
+		for (int i = 0; i < 5000; i++) {
+			String[] lines = random.lines();
+			StringBuilder query = new StringBuilder();
+			for (String line : lines) {
+				if (random.getRandom().nextInt(3) == 0)
+					query.append('-');
+				query.append(line).append('\n');
+			}
+			QueryMatcher matcher = new QueryMatcher(query.toString());
+			for (int j = 0; j < 20; j++) {
+				String path = random.path(false);
+				if (matcher.matches(path))
+					assertTrue(query + " on " + path, isCandidate(matcher, path));
+			}
+		}
+	}
+
+	@Test
+	public void lastLineDecides() {
+		QueryMatcher matcher = new QueryMatcher("\\.java$\n-/test/\nTest\\.java$");
+		assertTrue(matcher.matches("/p/src/A.java"));
+		assertFalse(matcher.matches("/p/test/A.java"));
+		assertTrue(matcher.matches("/p/test/ATest.java"));
+		assertFalse(matcher.matches("/p/src/A.class"));
+	}
+
+	/**
+	 * The context a thread keeps for a matcher does not keep the matcher alive
+	 */
+	@Test
+	public void matcherIsCollected() throws InterruptedException {
+		QueryMatcher matcher = new QueryMatcher("\\.java$\n-/test/\n#!engine automaton");
+		assertTrue(matcher.matches("/p/src/A.java"));
+		WeakReference<QueryMatcher> reference = new WeakReference<QueryMatcher>(matcher);
+		matcher = null;
+		for (int i = 0; i < 50 && reference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(reference.get());
+	}
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class QueryToolTest {
+	@Rule
+	public TemporaryFolder fFolder = new TemporaryFolder();
+
+	private void createFiles(String... paths) throws IOException {
+		for (String path : paths) {
+			File file = new File(fFolder.getRoot(), path);
+			file.getParentFile().mkdirs();
+			file.createNewFile();
+		}
+	}
+
+	private List<String> scan(String query) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		QueryTool tool = new QueryTool(new QueryMatcher(query), new PrintStream(out, true), false);
+		tool.scan(fFolder.getRoot().toPath());
+		List<String> paths = Arrays.asList(out.toString().split("\\R"));
+		Collections.sort(paths);
+		assertEquals(tool.getCount(), paths.size());
+		return paths;
+	}
+
+	/**
+	 * The paths start with the projects below the directory, the pruned folders do not
+	 * change the result
+	 */
+	@Test
+	public void scan() throws IOException {
+		createFiles("p/src/A.java", "p/src/a/B.java", "p/bin/A.class", "p/bin/x/C.java", "p/plugin.xml",
+				"q/test/ATest.java");
+		assertEquals(Arrays.asList("/p/src/A.java", "/p/src/a/B.java", "/q/test/ATest.java"),
+				scan("\\.java$\n-/bin/"));
+		assertEquals(Arrays.asList("/p/src/A.java", "/p/src/a/B.java"), scan("^/p/src/"));
+		assertEquals(Arrays.asList("/p/bin/A.class", "/p/plugin.xml"), scan("glob:/p/*/*.class\nglob:/p/*.xml"));
+	}
+
+	@Test
+	public void exitCodes() throws IOException {
+		createFiles("p/A.java");
+		String directory = fFolder.getRoot().getPath();
+		assertEquals(0, QueryTool.run(new String[] { "-c", "-e", "\\.java$", directory }));
+		assertEquals(1, QueryTool.run(new String[] { "-c", "\\.xml$", directory }));
+		assertEquals(2, QueryTool.run(new String[] { "-c", "(", directory }));
+		assertEquals(2, QueryTool.run(new String[] { "\\.java$" }));
+	}
+}
@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.junit.Test;
+
+public class GlobTest {
+	/**
+	 * Segments of random globs and the regular expressions matching them
+	 */
+	private static final String[][] SEGMENTS = { { "a", "a" }, { "b", "b" }, { "*", "[^/]*" }, { "?", "[^/]" },
+			{ "a*", "a[^/]*" }, { "*b", "[^/]*b" }, { "a?", "a[^/]" }, { "[ab]", "[ab]" }, { "[!a]", "[^a/]" },
+			{ "[a-b]*", "[a-b][^/]*" }, { "{a,b}", "(?:a|b)" }, { "{a,*b}", "(?:a|[^/]*b)" },
+			{ "{a,{b,ab}}", "(?:a|(?:b|ab))" }, { "\\*", "\\*" }, { "\\?a", "\\?a" } };
+	private static final String ANY_SEGMENTS = "(?:/[^/]+)*";
+	private static final String PATH_CHARS = "ab*?";
+
+	private static void assertMatches(String glob, String... paths) {
+		Glob compiled = Glob.compile(glob);
+		for (String path : paths) {
+			assertTrue(glob + " on " + path, compiled.matches(path));
+		}
+	}
+
+	private static void assertNoMatch(String glob, String... paths) {
+		Glob compiled = Glob.compile(glob);
+		for (String path : paths) {
+			assertFalse(glob + " on " + path, compiled.matches(path));
+		}
+	}
+
+	private static void assertInvalid(String glob) {
+		try {
+			Glob.compile(glob);
+			fail(glob);
+		} catch (PatternSyntaxException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void wildcardsStayInSegment() {
+		assertMatches("/p/*.java", "/p/A.java", "/p/.java");
+		assertNoMatch("/p/*.java", "/p/src/A.java", "/p/A.java/b");
+		assertMatches("/p/?.txt", "/p/a.txt");
+		assertNoMatch("/p/?.txt", "/p/ab.txt", "/p/.txt");
+		assertNoMatch("/p?q", "/p/q");
+		assertNoMatch("/p*q", "/p/q", "/pa/aq");
+	}
+
+	@Test
+	public void anySegments() {
+		assertMatches("/p/**/a.txt", "/p/a.txt", "/p/x/a.txt", "/p/x/y/a.txt");
+		assertNoMatch("/p/**/a.txt", "/q/a.txt", "/p/a.txt/x");
+		assertMatches("/p/**", "/p/a", "/p/x/y");
+		assertMatches("/p/**/**/a", "/p/a", "/p/x/a");
+		assertMatches("/**/a", "/a", "/p/a");
+	}
+
+	@Test
+	public void characterSets() {
+		assertMatches("/p/[a-c].txt", "/p/a.txt", "/p/c.txt");
+		assertNoMatch("/p/[a-c].txt", "/p/d.txt", "/p/ab.txt");
+		assertMatches("/p/[!a-z].txt", "/p/1.txt", "/p/A.txt");
+		assertNoMatch("/p/[!a-z].txt", "/p/b.txt");
+		assertMatches("/p/[^a].txt", "/p/b.txt");
+		assertNoMatch("/p/[^a].txt", "/p/a.txt");
+		assertMatches("/p/[]].txt", "/p/].txt");
+	}
+
+	@Test
+	public void alternatives() {
+		assertMatches("/p/{a,b{c,d}}.txt", "/p/a.txt", "/p/bc.txt", "/p/bd.txt");
+		assertNoMatch("/p/{a,b{c,d}}.txt", "/p/b.txt", "/p/c.txt");
+		assertMatches("/p/{src,test/java}/*.java", "/p/src/A.java", "/p/test/java/A.java");
+		assertNoMatch("/p/{src,test/java}/*.java", "/p/test/A.java");
+		assertMatches("/p/{,a}b", "/p/b", "/p/ab");
+		assertEquals(Glob.MAX_ALTERNATIVES, Glob.expandBraces("{a,b}{a,b}{a,b}{a,b}{a,b}{a,b}{a,b}{a,b}").size());
+		assertInvalid("{a,b}{a,b}{a,b}{a,b}{a,b}{a,b}{a,b}{a,b}{a,b}");
+		assertInvalid("/p/{a,b");
+	}
+
+	@Test
+	public void escapes() {
+		assertMatches("/p/\\*.txt", "/p/*.txt");
+		assertNoMatch("/p/\\*.txt", "/p/a.txt");
+		assertMatches("/p/\\{a,b\\}", "/p/{a,b}");
+		assertNoMatch("/p/\\{a,b\\}", "/p/a", "/p/b");
+		assertMatches("/p/\\[a]", "/p/[a]");
+		assertInvalid("/p/a\\");
+		assertInvalid("/p/[ab");
+	}
+
+	@Test
+	public void anchoredAndUnanchored() {
+		assertMatches("/p/a.txt", "/p/a.txt");
+		assertNoMatch("/p/a.txt", "/q/p/a.txt", "/p/a.txt/b");
+		assertMatches("p/a.txt", "/p/a.txt", "/q/p/a.txt", "/q/r/p/a.txt");
+		assertNoMatch("p/a.txt", "/q/a.txt", "/xp/a.txt");
+		assertMatches("*.txt", "/a.txt", "/p/q/a.txt");
+	}
+
+	@Test
+	public void folders() {
+		Glob glob = Glob.compile("/p/src/**/*.java");
+		assertTrue(glob.mayMatchBelow("/p"));
+		assertTrue(glob.mayMatchBelow("/p/src/x"));
+		assertFalse(glob.mayMatchBelow("/q"));
+		assertFalse(glob.matchesAllBelow("/p/src"));
+		assertTrue(Glob.compile("/p/src/**").matchesAllBelow("/p/src/x"));
+		assertFalse(Glob.compile("/p/src/**").matchesAllBelow("/p"));
+	}
+
+	@Test
+	public void sameResultAsPattern() {
+		Random random = new Random(4711);
+		for (int query = 0; query < 3000; query++) {
+			StringBuilder glob = new StringBuilder();
+			StringBuilder regex = new StringBuilder();
+			randomGlob(random, glob, regex);
+			Glob compiled = Glob.compile(glob.toString());
+			Pattern pattern = Pattern.compile(regex.toString());
+			for (int i = 0; i < 20; i++) {
+				String path = randomPath(random);
+				assertEquals(glob + " on " + path, pattern.matcher(path).matches(), compiled.matches(path));
+			}
+		}
+	}
+
+	@Test
+	public void trieSameResultAsGlobs() {
+		Random random = new Random(4712);
+		for (int query = 0; query < 3000; query++) {
+			List<Glob> globs = new ArrayList<Glob>();
+			int[] lines = new int[1 + random.nextInt(5)];
+			for (int i = 0; i < lines.length; i++) {
+				StringBuilder glob = new StringBuilder();
+				randomGlob(random, glob, new StringBuilder());
+				globs.add(Glob.compile(glob.toString()));
+				// the lines of a query are not all globs
+				lines[i] = 2 * i;
+			}
+			GlobTrie trie = new GlobTrie(globs, lines);
+			for (int i = 0; i < 20; i++) {
+				String path = randomPath(random);
+				int expected = -1;
+				for (int line = 0; line < lines.length; line++) {
+					if (globs.get(line).matches(path))
+						expected = lines[line];
+				}
+				assertEquals(globs + " on " + path, expected, trie.lastMatch(path));
+			}
+		}
+	}
+
+	@Test
+	public void triesOfDifferentSizesOnOneThread() {
+		List<Glob> small = new ArrayList<Glob>();
+		small.add(Glob.compile("/a"));
+		List<Glob> large = new ArrayList<Glob>();
+		for (int i = 0; i < 100; i++) {
+			large.add(Glob.compile("/a/b" + i + "/**/*.c"));
+		}
+		GlobTrie smallTrie = new GlobTrie(small, new int[] { 0 });
+		GlobTrie largeTrie = new GlobTrie(large, new int[100]);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, smallTrie.lastMatch("/a"));
+			assertEquals(0, largeTrie.lastMatch("/a/b99/x/y.c"));
+			assertEquals(-1, largeTrie.lastMatch("/a/b99/x/y.h"));
+		}
+	}
+
+	/**
+	 * Appends a glob of 1 to 4 segments and the regular expression matching the
+	 * same paths
+	 */
+	private static void randomGlob(Random random, StringBuilder glob, StringBuilder regex) {
+		regex.append('^');
+		if (random.nextBoolean()) {
+			glob.append('/');
+		} else {
+			// the glob matches the segments at the end of the path
+			regex.append(ANY_SEGMENTS);
+		}
+		for (int n = 1 + random.nextInt(4); n > 0; n--) {
+			if (random.nextInt(5) == 0) {
+				glob.append("**");
+				regex.append(ANY_SEGMENTS);
+			} else {
+				String[] segment = SEGMENTS[random.nextInt(SEGMENTS.length)];
+				glob.append(segment[0]);
+				regex.append('/').append(segment[1]);
+			}
+			if (n > 1)
+				glob.append('/');
+		}
+		regex.append('$');
+	}
+
+	/**
+	 * @return a path of 1 to 4 segments
+	 */
+	private static String randomPath(Random random) {
+		StringBuilder path = new StringBuilder();
+		for (int n = 1 + random.nextInt(4); n > 0; n--) {
+			path.append('/');
+			for (int length = 1 + random.nextInt(3); length > 0; length--) {
+				path.append(PATH_CHARS.charAt(random.nextInt(PATH_CHARS.length())));
+			}
+		}
+		return path.toString();
+	}
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class LiteralAnalysisTest {
+	private static RegexNode parse(String regex) {
+		try {
+			return RegexParser.parse(regex);
+		} catch (UnsupportedRegexException e) {
+			throw new AssertionError(e.getMessage());
+		}
+	}
+
+	private static Set<String> set(String... strings) {
+		return new HashSet<String>(Arrays.asList(strings));
+	}
+
+	@Test
+	public void extensions() {
+		assertEquals(set("java"), LiteralAnalysis.extensions(parse("\\.java$")));
+		assertEquals(set("py"), LiteralAnalysis.extensions(parse("[.]py$")));
+		assertEquals(set("md", "txt"), LiteralAnalysis.extensions(parse("\\.(md|txt)$")));
+		assertEquals(set("md", "txt"), LiteralAnalysis.extensions(parse("\\.md\\z|\\.txt$")));
+		assertEquals(set("xml"), LiteralAnalysis.extensions(parse("(?i)\\.XML$")));
+		assertEquals(set("java"), LiteralAnalysis.extensions(parse("/src/.*\\.java$")));
+		assertNull(LiteralAnalysis.extensions(parse("\\.java")));
+		assertNull(LiteralAnalysis.extensions(parse("java$")));
+		assertNull(LiteralAnalysis.extensions(parse("\\.[a-z]+$")));
+		assertNull(LiteralAnalysis.extensions(parse("\\.$")));
+		assertNull(LiteralAnalysis.extensions(parse("\\.java$|/test/")));
+	}
+
+	@Test
+	public void requiredLiteral() {
+		assertEquals("/src/", LiteralAnalysis.requiredLiteral(parse("^/p/.*/src/")));
+		assertEquals("/test/", LiteralAnalysis.requiredLiteral(parse("(?i)/TEST/")));
+		assertEquals(".java", LiteralAnalysis.requiredLiteral(parse("[a-z]+\\.java$")));
+		assertEquals("abab", LiteralAnalysis.requiredLiteral(parse("x?(?:ab){2}")));
+		assertNull(LiteralAnalysis.requiredLiteral(parse("a|b")));
+		assertNull(LiteralAnalysis.requiredLiteral(parse("(?:abc)?")));
+		assertNull(LiteralAnalysis.requiredLiteral(parse("\\w*")));
+	}
+
+	@Test
+	public void anchoredPrefix() {
+		assertEquals("/project/src/", LiteralAnalysis.anchoredPrefix(parse("^/project/src/")));
+		assertEquals("/p/", LiteralAnalysis.anchoredPrefix(parse("^/p/[a-z]+/")));
+		assertNull(LiteralAnalysis.anchoredPrefix(parse("/project/")));
+		// the letters might be upper case
+		assertEquals("/", LiteralAnalysis.anchoredPrefix(parse("(?i)^/project/")));
+		assertNull(LiteralAnalysis.anchoredPrefix(parse("^a|^b")));
+	}
+
+	@Test
+	public void hasEndAnchor() {
+		assertTrue(LiteralAnalysis.hasEndAnchor(parse("\\.java$")));
+		assertTrue(LiteralAnalysis.hasEndAnchor(parse("(a\\z|b)+")));
+		assertFalse(LiteralAnalysis.hasEndAnchor(parse("^/src/")));
+	}
+
+	@Test
+	public void toLowerCase() {
+		String lower = "/p/a.java";
+		assertTrue(lower == LiteralAnalysis.toLowerCase(lower));
+		assertEquals("/p/a.java", LiteralAnalysis.toLowerCase("/P/A.Java"));
+		// only ASCII, one char for one char
+		assertEquals("\u0130x", LiteralAnalysis.toLowerCase("\u0130X"));
+	}
+
+	/**
+	 * Every path an expression finds has one of its extensions and contains its
+	 * required literal, otherwise a file would not be dispatched to a working set
+	 * it belongs to
+	 */
+	@Test
+	public void soundOnRandomExpressions() {
+		RandomRegex random = new RandomRegex(815);
+		for (int i = 0; i < 20000; i++) {
+			String regex = random.regex();
+			RegexNode node;
+			try {
+				node = RegexParser.parse(regex);
+			} catch (UnsupportedRegexException e) {
+				continue;
+			}
+			Pattern pattern = Pattern.compile(regex);
+			Set<String> extensions = LiteralAnalysis.extensions(node);
+			String literal = LiteralAnalysis.requiredLiteral(node);
+			for (int j = 0; j < 20; j++) {
+				String path = random.path(false);
+				if (!pattern.matcher(path).find())
+					continue;
+				String lowerCasePath = LiteralAnalysis.toLowerCase(path);
+				if (literal != null)
+					assertTrue(regex + " on " + path, lowerCasePath.contains(literal));
+				if (extensions != null) {
+					int dot = lowerCasePath.lastIndexOf('.');
+					assertTrue(regex + " on " + path, dot > lowerCasePath.lastIndexOf('/')
+							&& extensions.contains(lowerCasePath.substring(dot + 1)));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class MultiPatternAutomatonTest {
+	/**
+	 * @return the index of the last line that java.util.regex finds in the input, -1 if none
+	 */
+	private static int expected(MultiPatternAutomaton automaton, Pattern[] patterns, String input) {
+		for (int line = patterns.length - 1; line >= 0; line--) {
+			if (automaton.isSupported(line) && patterns[line].matcher(input).find())
+				return line;
+		}
+		return -1;
+	}
+
+	private static void assertMatches(String[] lines, String... inputs) {
+		MultiPatternAutomaton automaton = new MultiPatternAutomaton(lines);
+		Pattern[] patterns = new Pattern[lines.length];
+		for (int i = 0; i < lines.length; i++) {
+			patterns[i] = Pattern.compile(lines[i]);
+		}
+		MultiPatternAutomaton.Run run = automaton.newRun();
+		for (String input : inputs) {
+			assertEquals(join(lines) + " on " + input, expected(automaton, patterns, input), run.lastMatch(input));
+		}
+	}
+
+	private static String join(String[] lines) {
+		StringBuilder result = new StringBuilder();
+		for (String line : lines) {
+			result.append(line).append('\n');
+		}
+		return result.toString();
+	}
+
+	@Test
+	public void sameResultAsPattern() {
+		RandomRegex random = new RandomRegex(4711);
+		String[] inputs = new String[40];
+		for (int query = 0; query < 3000; query++) {
+			String[] lines = random.lines();
+			for (int i = 0; i < inputs.length; i++) {
+				inputs[i] = random.path(true);
+			}
+			assertMatches(lines, inputs);
+		}
+	}
+
+	@Test
+	public void linesGrowingTheStateArrays() {
+		// the states of the last line cross the initial capacity of 64 states
+		assertMatches(new String[] { "\\/*?", "^(?:ab|a)xb+\\w{1,3}(?:ab|a){1,3}$", "^(a|b){1,3}/{1,3}[a-c]/\\/*",
+				"\\/(a|b)+?\\/b?\\.$" }, "/b/1bb.", "/ab/b.", "b/a/", "");
+		assertMatches(new String[] { "(?:a|b|c){30}", "x(a|b)*y" }, "xaby", "xy", "/x/y", "abcabcabcabcabcabcabcabcabcabc");
+	}
+
+	@Test
+	public void anchors() {
+		assertMatches(new String[] { "^/a", "b$", "\\Aa", "b\\z", "b\\Z" }, "/a/b", "a/b\n", "/b\r\n", "b\n\n", "");
+	}
+
+	@Test
+	public void lastLineWins() {
+		MultiPatternAutomaton automaton = new MultiPatternAutomaton(new String[] { "a", "b", "c" });
+		MultiPatternAutomaton.Run run = automaton.newRun();
+		assertEquals(2, run.lastMatch("abc"));
+		assertEquals(1, run.lastMatch("ab"));
+		assertEquals(-1, run.lastMatch("x"));
+		assertEquals(1, run.lastMatch("ab", 0));
+		assertEquals(1, run.lastMatch("a", 1));
+	}
+
+	@Test
+	public void unsupportedLines() {
+		MultiPatternAutomaton automaton = new MultiPatternAutomaton(new String[] { "a", "(a)\\1", "(?:b{1000}){11}" });
+		assertTrue(automaton.isSupported(0));
+		assertFalse(automaton.isSupported(1));
+		assertFalse(automaton.isSupported(2));
+		assertEquals(0, automaton.newRun().lastMatch("aa"));
+	}
+
+	@Test
+	public void surrogatesAreUndecided() {
+		MultiPatternAutomaton automaton = new MultiPatternAutomaton(new String[] { "x" });
+		assertEquals(MultiPatternAutomaton.UNDECIDED, automaton.newRun().lastMatch("a\uD83D\uDE00"));
+	}
+}
@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class PathIndexTest {
+	/**
+	 * '-' and '.' sort before '/', '0' after it
+	 */
+	private static final String[] NAMES = { "a", "b", "ab", "a.c", "a-", "a0", "b.c" };
+
+	private static String randomPath(Random random) {
+		StringBuilder path = new StringBuilder();
+		for (int n = 1 + random.nextInt(4); n > 0; n--) {
+			path.append('/').append(NAMES[random.nextInt(NAMES.length)]);
+		}
+		return path.toString();
+	}
+
+	private static PathTable table(Iterable<String> sorted) {
+		PathTable.Builder builder = new PathTable.Builder();
+		for (String path : sorted) {
+			builder.add(path);
+		}
+		return builder.build();
+	}
+
+	private static List<String> toList(PathCursor cursor) {
+		List<String> paths = new ArrayList<String>();
+		while (cursor.next()) {
+			paths.add(cursor.path().toString());
+		}
+		return paths;
+	}
+
+	private static void assertSame(TreeSet<String> expected, PathIndex index, Random random) {
+		assertEquals(expected.size(), index.size());
+		assertEquals(new ArrayList<String>(expected), toList(index.cursor()));
+		for (int i = 0; i < 20; i++) {
+			String path = randomPath(random);
+			assertEquals(path, expected.contains(path), index.contains(path));
+			assertEquals(path, new ArrayList<String>(expected.tailSet(path)), toList(index.cursor(path)));
+			String folder = path + '/';
+			String end = path + '0';
+			assertEquals(folder, expected.subSet(folder, end).size(), index.count(folder));
+		}
+	}
+
+	@Test
+	public void sameResultAsTreeSet() {
+		Random random = new Random(4711);
+		for (int round = 0; round < 200; round++) {
+			TreeSet<String> expected = new TreeSet<String>();
+			for (int n = random.nextInt(300); n > 0; n--) {
+				expected.add(randomPath(random));
+			}
+			PathIndex index = new PathIndex(table(expected));
+			assertSame(expected, index, random);
+			for (int batch = 0; batch < 5; batch++) {
+				List<String> added = new ArrayList<String>();
+				List<String> removed = new ArrayList<String>();
+				// existing and missing paths
+				for (int n = random.nextInt(30); n > 0; n--) {
+					added.add(randomPath(random));
+				}
+				for (int n = random.nextInt(30); n > 0; n--) {
+					removed.add(randomPath(random));
+				}
+				// the removals are applied before the additions
+				expected.removeAll(removed);
+				expected.addAll(added);
+				index = index.withChanges(added, removed);
+				assertSame(expected, index, random);
+			}
+			PathIndex compacted = index.compact();
+			assertEquals(0, compacted.getChangeCount());
+			assertSame(expected, compacted, random);
+		}
+	}
+
+	@Test
+	public void unchangedSnapshot() {
+		PathIndex index = new PathIndex(table(Collections.singletonList("/a/b")));
+		List<String> none = Collections.emptyList();
+		assertTrue(index == index.withChanges(none, none));
+		assertTrue(index == index.compact());
+	}
+
+	@Test
+	public void splitPoints() {
+		Random random = new Random(4712);
+		for (int round = 0; round < 100; round++) {
+			TreeSet<String> paths = new TreeSet<String>();
+			for (int n = random.nextInt(2000); n > 0; n--) {
+				paths.add(randomPath(random));
+			}
+			int minSize = 1 + random.nextInt(200);
+			List<String> points = new PathIndex(table(paths)).getSplitPoints(minSize);
+			int[] sizes = new int[points.size() + 1];
+			String lastFolder = null;
+			int lastRange = -1;
+			for (String path : paths) {
+				int range = 0;
+				while (range < points.size() && points.get(range).compareTo(path) <= 0)
+					range++;
+				sizes[range]++;
+				// a top-level folder is never split
+				String folder = topLevelFolder(path);
+				if (folder.equals(lastFolder))
+					assertEquals(path, lastRange, range);
+				lastFolder = folder;
+				lastRange = range;
+			}
+			for (int i = 0; i < points.size(); i++) {
+				if (i > 0)
+					assertTrue(points.get(i - 1).compareTo(points.get(i)) < 0);
+				assertTrue(points + " " + minSize, sizes[i] > 0);
+			}
+		}
+	}
+
+	private static String topLevelFolder(String path) {
+		String[] segments = path.split("/");
+		if (segments.length > 3)
+			return "/" + segments[1] + "/" + segments[2] + "/";
+		return path.substring(0, path.lastIndexOf('/') + 1);
+	}
+
+	@Test
+	public void tableIndexOf() {
+		Random random = new Random(4713);
+		for (int round = 0; round < 100; round++) {
+			TreeSet<String> paths = new TreeSet<String>();
+			for (int n = random.nextInt(500); n > 0; n--) {
+				paths.add(randomPath(random));
+			}
+			List<String> sorted = new ArrayList<String>(paths);
+			PathTable table = table(paths);
+			assertEquals(sorted.size(), table.size());
+			for (int i = 0; i < sorted.size(); i++) {
+				assertEquals(i, table.indexOf(sorted.get(i)));
+				assertEquals(sorted.get(i), table.get(i));
+			}
+			for (int i = 0; i < 50; i++) {
+				String path = randomPath(random);
+				assertEquals(path, Collections.binarySearch(sorted, path), table.indexOf(path));
+			}
+		}
+	}
+
+	@Test
+	public void longPaths() throws IOException {
+		StringBuilder longName = new StringBuilder("/a/");
+		while (longName.length() < 0x10000)
+			longName.append("abc");
+		TreeSet<String> paths = new TreeSet<String>();
+		paths.add("/a/b");
+		paths.add(longName.toString());
+		paths.add(longName + "d");
+		PathTable table = read(write(table(paths)));
+		assertEquals(new ArrayList<String>(paths), toList(new PathIndex(table).cursor()));
+		assertEquals(1, table.indexOf(longName + "d"));
+	}
+
+	@Test
+	public void writeAndRead() throws IOException {
+		Random random = new Random(4714);
+		TreeSet<String> paths = new TreeSet<String>();
+		for (int n = 0; n < 1000; n++) {
+			paths.add(randomPath(random));
+		}
+		PathTable table = read(write(table(paths)));
+		assertEquals(new ArrayList<String>(paths), toList(new PathIndex(table).cursor()));
+		assertEquals(0, read(write(PathTable.EMPTY)).size());
+	}
+
+	@Test
+	public void corruptTables() throws IOException {
+		TreeSet<String> paths = new TreeSet<String>();
+		for (int i = 0; i < 100; i++) {
+			paths.add("/a/" + i);
+		}
+		byte[] bytes = write(table(paths));
+		// a huge data length must be rejected before the array is allocated
+		assertCorrupt(bytes, 8, Integer.MAX_VALUE);
+		assertCorrupt(bytes, 8, -1);
+		assertCorrupt(bytes, 4, Integer.MAX_VALUE);
+		assertCorrupt(bytes, 0, -1);
+		// the block offsets
+		assertCorrupt(bytes, 12, -1);
+		assertCorrupt(bytes, 16, 0);
+		try {
+			read(Arrays.copyOf(bytes, bytes.length - 1));
+			fail("truncated");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private static void assertCorrupt(byte[] bytes, int offset, int value) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.clone());
+		buffer.putInt(offset, value);
+		try {
+			PathTable.read(buffer);
+			fail("offset " + offset + ": " + value);
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private static byte[] write(PathTable table) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		table.write(out);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static PathTable read(byte[] bytes) throws IOException {
+		return PathTable.read(ByteBuffer.wrap(bytes));
+	}
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gr.scharf.workingsets.engine.QueryMatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QueryRefinementTest {
+	@Test
+	public void isStricter() {
+		assertTrue(QueryRefinement.isStricter("\\.coffee$", "\\.cof"));
+		assertTrue(QueryRefinement.isStricter("/src/.*\\.java", "\\.java"));
+		assertTrue(QueryRefinement.isStricter("/src/", "/src/|/test/"));
+		assertFalse(QueryRefinement.isStricter("\\.cof", "\\.coffee$"));
+		assertFalse(QueryRefinement.isStricter("/src/|/test/", "/src/"));
+		assertFalse(QueryRefinement.isStricter("(a)\\1", "a"));
+	}
+
+	@Test
+	public void isNarrowing() {
+		assertTrue(QueryRefinement.isNarrowing("\\.java$", "\\.java$\n-/test/"));
+		assertTrue(QueryRefinement.isNarrowing("\\.java$\n\\.xml$", "\\.java$"));
+		assertTrue(QueryRefinement.isNarrowing("\\.cof", "\\.coffee$"));
+		assertTrue(QueryRefinement.isNarrowing("\\.java$\n-/te", "\\.java$\n-/t"));
+		assertTrue(QueryRefinement.isNarrowing("\\.java$", "\\.java$\n@derived"));
+		assertFalse(QueryRefinement.isNarrowing("\\.java$\n-/test/", "\\.java$"));
+		assertFalse(QueryRefinement.isNarrowing("\\.java$", "\\.java$\n\\.xml$"));
+		assertFalse(QueryRefinement.isNarrowing("\\.java$\n-/t", "\\.java$\n-/te"));
+		assertFalse(QueryRefinement.isNarrowing("\\.java$", "#!collapse\n\\.java$"));
+		assertFalse(QueryRefinement.isNarrowing("\\.java$\n@derived", "\\.java$"));
+	}
+
+	/**
+	 * A narrowing edit never adds a path, otherwise the preview would miss it
+	 */
+	@Test
+	public void soundOnRandomEdits() {
+		RandomRegex random = new RandomRegex(2605);
+		Random r = random.getRandom();
+		int narrowing = 0;
+		for (int i = 0; i < 5000; i++) {
+			List<String> lines = lines(random);
+			List<String> edited = new ArrayList<String>(lines);
+			int line = r.nextInt(edited.size());
+			switch (r.nextInt(4)) {
+				case 0:
+					edited.add(r.nextInt(edited.size() + 1), (r.nextBoolean() ? "-" : "") + random.regex());
+					break;
+				case 1:
+					edited.remove(line);
+					break;
+				case 2:
+					// a longer line, stricter if it is an include line
+					edited.set(line, edited.get(line) + random.regex());
+					break;
+				default:
+					// a shorter line, looser if it is an exclusion
+					String text = edited.get(line);
+					edited.set(line, text.substring(0, r.nextInt(text.length())));
+			}
+			String oldQuery = join(lines);
+			String newQuery = join(edited);
+			QueryMatcher oldMatcher;
+			QueryMatcher newMatcher;
+			try {
+				oldMatcher = new QueryMatcher(oldQuery);
+				newMatcher = new QueryMatcher(newQuery);
+			} catch (RuntimeException e) {
+				// the edit broke the expression
+				continue;
+			}
+			if (!QueryRefinement.isNarrowing(oldQuery, newQuery))
+				continue;
+			narrowing++;
+			for (int j = 0; j < 40; j++) {
+				String path = random.path(false);
+				if (newMatcher.matches(path))
+					assertTrue(oldQuery + "narrowed to\n" + newQuery + "on " + path, oldMatcher.matches(path));
+			}
+		}
+		assertTrue(narrowing > 1000);
+	}
+
+	private static List<String> lines(RandomRegex random) {
+		List<String> lines = new ArrayList<String>(Arrays.asList(random.lines()));
+		for (int i = 0; i < lines.size(); i++) {
+			if (random.getRandom().nextInt(3) == 0)
+				lines.set(i, "-" + lines.get(i));
+		}
+		return lines;
+	}
+
+	private static String join(List<String> lines) {
+		StringBuilder query = new StringBuilder();
+		for (String line : lines) {
+			query.append(line).append('\n');
+		}
+		return query.toString();
+	}
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import gr.scharf.workingsets.engine.QueryMatcher;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class QueryTest {
+	@Test
+	public void linesAndOptions() {
+		Query query = Query.parse("\\.java$ \n# a comment\n\n-/test/\n#!engine automaton\n#!collapse");
+		assertEquals(Arrays.asList(new Query.Line("\\.java$", false), new Query.Line("/test/", true)),
+				query.getLines());
+		assertEquals("automaton", query.getOption(Query.OPTION_ENGINE));
+		assertEquals("", query.getOption(Query.OPTION_COLLAPSE));
+		assertNull(query.getOption(Query.OPTION_BUDGET));
+	}
+
+	@Test
+	public void globs() {
+		Query query = Query.parse("glob:**/*.java\n-glob:**/test/**\nglob:!**/gen/**\n/src/");
+		assertEquals(Arrays.asList(new Query.Line("**/*.java", false, true), new Query.Line("**/test/**", true, true),
+				new Query.Line("**/gen/**", true, true), new Query.Line("/src/", false)), query.getLines());
+		query = Query.parse("#!syntax glob\n**/*.java\nregex:/src/");
+		assertEquals(Arrays.asList(new Query.Line("**/*.java", false, true), new Query.Line("/src/", false)),
+				query.getLines());
+	}
+
+	@Test
+	public void predicates() {
+		Query query = Query.parse("\\.java$\n@modified<7d\n-@derived\n@ size > 1k\ncontent:TODO\n-content:FIXME");
+		assertEquals(Arrays.asList(new Query.Line("\\.java$", false)), query.getLines());
+		assertEquals(Arrays.asList(new Query.Line("modified<7d", false), new Query.Line("derived", true),
+				new Query.Line("size > 1k", false), new Query.Line("content:TODO", false),
+				new Query.Line("content:FIXME", true)), query.getPredicates());
+	}
+
+	/**
+	 * Queries saved before the predicates existed keep their meaning
+	 */
+	@Test
+	public void unknownPredicatesAreExpressions() {
+		Query query = Query.parse("@scope/\n-@types/\n@sizes\n@derived-data\n@[a-z]+/");
+		assertEquals(0, query.getPredicates().size());
+		assertEquals(Arrays.asList(new Query.Line("@scope/", false), new Query.Line("@types/", true),
+				new Query.Line("@sizes", false), new Query.Line("@derived-data", false), new Query.Line("@[a-z]+/", false)),
+				query.getLines());
+		QueryMatcher matcher = new QueryMatcher("/node_modules/@scope/\n-@scope/internal/");
+		assertTrue(matcher.matches("/p/node_modules/@scope/a/index.js"));
+		assertFalse(matcher.matches("/p/node_modules/@scope/internal/index.js"));
+		assertTrue(matcher.getPredicates().isEmpty());
+	}
+
+	@Test
+	public void isPredicate() {
+		assertTrue(Query.isPredicate("@linked"));
+		assertTrue(Query.isPredicate("@content-type=org.eclipse.core.runtime.xml"));
+		assertTrue(Query.isPredicate("@team-private "));
+		assertFalse(Query.isPredicate("@content"));
+		assertFalse(Query.isPredicate("@hidden/"));
+		assertFalse(Query.isPredicate("linked"));
+	}
+}
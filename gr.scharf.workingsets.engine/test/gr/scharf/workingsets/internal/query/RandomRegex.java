@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import java.util.Random;
+
+/**
+ * Generates regular expressions of the subset the {@link RegexParser} supports 
+ * and short paths over a small alphabet, so that random expressions often match.
+ */
+public class RandomRegex {
+	private static final String[] ATOMS = { "a", "b", "A", "1", "/", "\\/", "\\.", ".", "[a-c]", "[^/]", "\\w", "\\d",
+			"\\s", "\\W", "[\\w.]", "\\Qa.\\E" };
+	private static final String[] QUANTIFIERS = { "*", "+", "?", "{2}", "{1,3}", "{0,2}", "{2,}" };
+	private static final String PATH_CHARS = "ab1/.A";
+
+	private final Random fRandom;
+
+	public RandomRegex(long seed) {
+		fRandom = new Random(seed);
+	}
+
+	public Random getRandom() {
+		return fRandom;
+	}
+
+	public String regex() {
+		return regex(0);
+	}
+
+	private String regex(int depth) {
+		StringBuilder regex = new StringBuilder();
+		if (fRandom.nextInt(8) == 0)
+			regex.append(fRandom.nextBoolean() ? "^" : "(?i)");
+		int items = 1 + fRandom.nextInt(4);
+		for (int i = 0; i < items; i++) {
+			if (fRandom.nextInt(10) == 0 && depth < 2) {
+				regex.append(fRandom.nextBoolean() ? "(" : "(?:").append(regex(depth + 1));
+				for (int branches = fRandom.nextInt(3); branches > 0; branches--) {
+					regex.append('|').append(regex(depth + 1));
+				}
+				regex.append(')');
+			} else {
+				regex.append(ATOMS[fRandom.nextInt(ATOMS.length)]);
+			}
+			if (fRandom.nextInt(3) == 0) {
+				regex.append(QUANTIFIERS[fRandom.nextInt(QUANTIFIERS.length)]);
+				if (fRandom.nextInt(4) == 0)
+					regex.append('?');
+			}
+		}
+		if (fRandom.nextInt(6) == 0)
+			regex.append(fRandom.nextBoolean() ? "$" : "\\z");
+		return regex.toString();
+	}
+
+	/**
+	 * @return 1 to 5 expressions
+	 */
+	public String[] lines() {
+		String[] lines = new String[1 + fRandom.nextInt(5)];
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = regex();
+		}
+		return lines;
+	}
+
+	/**
+	 * @param lineTerminators true to end some paths with a line terminator
+	 */
+	public String path(boolean lineTerminators) {
+		StringBuilder path = new StringBuilder();
+		for (int n = fRandom.nextInt(12); n > 0; n--) {
+			path.append(PATH_CHARS.charAt(fRandom.nextInt(PATH_CHARS.length())));
+		}
+		if (lineTerminators && fRandom.nextInt(20) == 0)
+			path.append('\n');
+		return path.toString();
+	}
+}
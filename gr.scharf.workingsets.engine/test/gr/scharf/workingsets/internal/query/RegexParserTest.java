@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class RegexParserTest {
+	private static void assertSupported(String regex) {
+		try {
+			RegexParser.parse(regex);
+		} catch (UnsupportedRegexException e) {
+			fail(regex + ": " + e.getMessage());
+		}
+	}
+
+	private static void assertUnsupported(String regex) {
+		try {
+			RegexParser.parse(regex);
+			fail(regex + " should not be supported");
+		} catch (UnsupportedRegexException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void supported() {
+		assertSupported("\\.java$");
+		assertSupported("^/project/src/");
+		assertSupported("(?i)/readme\\.(txt|md)$");
+		assertSupported("/(?:a|b)+?/[^/]*\\.[a-z]{1,3}$");
+		assertSupported("\\Qa.b\\E+");
+		assertSupported("[\\w.-]\\x41\\u0042\\t");
+		assertSupported("\\Aa\\Z|b\\z");
+		assertSupported("");
+	}
+
+	@Test
+	public void unsupported() {
+		assertUnsupported("(a)\\1");
+		assertUnsupported("(?=a)");
+		assertUnsupported("(?<!a)b");
+		assertUnsupported("\\bword\\b");
+		assertUnsupported("a++");
+		assertUnsupported("(?s)a");
+		assertUnsupported("[a[b]]");
+		assertUnsupported("[a&&b]");
+		assertUnsupported("a{1001}");
+	}
+
+	@Test
+	public void invalid() {
+		assertUnsupported("(a");
+		assertUnsupported("a)");
+		assertUnsupported("*a");
+		assertUnsupported("[a");
+		assertUnsupported("[z-a]");
+		assertUnsupported("a\\");
+		assertUnsupported("a{2,1}");
+	}
+
+	@Test
+	public void structure() throws UnsupportedRegexException {
+		RegexNode node = RegexParser.parse("a|bc*");
+		assertTrue(node instanceof RegexNode.Alternation);
+		RegexNode second = ((RegexNode.Alternation) node).branches.get(1);
+		assertTrue(second instanceof RegexNode.Concat);
+		RegexNode.Repeat repeat = (RegexNode.Repeat) ((RegexNode.Concat) second).items.get(1);
+		assertEquals(0, repeat.min);
+		assertEquals(RegexNode.Repeat.UNBOUNDED, repeat.max);
+	}
+
+	@Test
+	public void ignoreCaseEndsWithTheGroup() throws UnsupportedRegexException {
+		RegexNode.Concat node = (RegexNode.Concat) RegexParser.parse("((?i)a)a");
+		assertTrue(((RegexNode.Chars) node.items.get(0)).set.matches('A'));
+		assertTrue(!((RegexNode.Chars) node.items.get(1)).set.matches('A'));
+	}
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gr.scharf.workingsets.engine.QueryMatcher;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SubtreePrunerTest {
+	private static SubtreePruner pruner(String query) {
+		return new SubtreePruner(Query.parse(query).getLines());
+	}
+
+	@Test
+	public void exclusions() {
+		SubtreePruner pruner = pruner("\\.java$\n-/bin/\n-(?i)/TARGET");
+		assertTrue(pruner.isPruned("/p/bin"));
+		assertTrue(pruner.isPruned("/p/a/bin/b"));
+		assertTrue(pruner.isPruned("/p/Target"));
+		assertTrue(pruner.isPruned("/p/targets"));
+		assertFalse(pruner.isPruned("/p/binary"));
+		assertFalse(pruner.isPruned("/p"));
+		// a line after the exclusion might include the files again
+		assertFalse(pruner("-/bin/\n\\.class$").isPruned("/p/bin"));
+		// the match depends on the end of the path
+		assertFalse(pruner("\\.java$\n-/bin$").isPruned("/p/bin"));
+	}
+
+	@Test
+	public void anchoredIncludes() {
+		SubtreePruner pruner = pruner("^/p/src/\n^/q/");
+		assertFalse(pruner.isPruned("/p"));
+		assertFalse(pruner.isPruned("/p/src"));
+		assertFalse(pruner.isPruned("/p/src/a"));
+		assertFalse(pruner.isPruned("/q/a"));
+		assertTrue(pruner.isPruned("/p/doc"));
+		assertTrue(pruner.isPruned("/r"));
+		// an include line that is not anchored can match anywhere
+		assertFalse(pruner("^/p/src/\n\\.xml$").isPruned("/r"));
+	}
+
+	@Test
+	public void globs() {
+		SubtreePruner pruner = pruner("glob:/p/**/*.java\nglob:!**/node_modules/**");
+		assertTrue(pruner.isPruned("/q"));
+		assertTrue(pruner.isPruned("/p/web/node_modules"));
+		assertFalse(pruner.isPruned("/p/web"));
+	}
+
+	/**
+	 * No folder is pruned that contains a file the query includes
+	 */
+	@Test
+	public void soundOnRandomQueries() {
+		RandomRegex random = new RandomRegex(1213);
+		Random r = random.getRandom();
+		String[] globs = { "glob:**/a/**", "glob:!**/b*/**", "glob:/a/**/*.A", "glob:!/1/**", "glob:**/*.{a,b}" };
+		String[] paths = new String[200];
+		int pruned = 0;
+		for (int query = 0; query < 3000; query++) {
+			StringBuilder text = new StringBuilder();
+			for (String line : random.lines()) {
+				if (r.nextInt(5) == 0) {
+					text.append(globs[r.nextInt(globs.length)]).append('\n');
+					continue;
+				}
+				if (r.nextInt(2) == 0)
+					text.append('-');
+				else if (r.nextInt(3) == 0)
+					text.append("^/").append(r.nextBoolean() ? "a" : "a/b");
+				text.append(line).append('\n');
+			}
+			QueryMatcher matcher;
+			try {
+				matcher = new QueryMatcher(text.toString());
+			} catch (RuntimeException e) {
+				// e.g. a line that is only valid after a prefix
+				continue;
+			}
+			for (int i = 0; i < paths.length; i++) {
+				paths[i] = path(r);
+			}
+			for (String path : paths) {
+				for (int slash = path.indexOf('/', 1); slash > 0; slash = path.indexOf('/', slash + 1)) {
+					String folder = path.substring(0, slash);
+					if (matcher.getPruner().isPruned(folder)) {
+						pruned++;
+						assertFalse(text + "prunes " + folder + " of " + path, matcher.matches(path));
+					}
+				}
+			}
+		}
+		// the pruner is not useless
+		assertTrue(pruned > 10000);
+	}
+
+	/**
+	 * @return a path of one to four segments over a small alphabet
+	 */
+	private static String path(Random random) {
+		StringBuilder path = new StringBuilder();
+		for (int segments = 1 + random.nextInt(4); segments > 0; segments--) {
+			path.append('/');
+			for (int n = 1 + random.nextInt(3); n > 0; n--) {
+				path.append("ab1.A".charAt(random.nextInt(5)));
+			}
+		}
+		return path.toString();
+	}
+
+	/**
+	 * The exclusion lines are not matched by a backtracking pattern
+	 */
+	@Test(timeout = 10000)
+	public void noCatastrophicBacktracking() {
+		StringBuilder folder = new StringBuilder("/p/");
+		for (int i = 0; i < 40; i++) {
+			folder.append('a');
+		}
+		SubtreePruner pruner = pruner("#!engine linear\n\\.java$\n-(?:a+){10}b");
+		assertFalse(pruner.isPruned(folder));
+		assertTrue(pruner.isPruned(folder + "b"));
+	}
+
+	@Test
+	public void unsupportedLinesDoNotPrune() {
+		// a back reference and a surrogate
+		assertFalse(pruner("\\.java$\n-/(bin)/\\1").isPruned("/p/bin/bin"));
+		assertFalse(pruner("\\.java$\n-/bin/").isPruned("/p/\uD83D\uDE00/bin"));
+		assertTrue(pruner("\\.java$\n-/bin/").isPruned("/p/x/bin"));
+	}
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class TrigramIndexTest {
+	private static final String SMALL_ALPHABET = "abcAB \n";
+
+	/**
+	 * The contents of the files and the stamps of the contents
+	 */
+	private final Map<String, String> fContents = new TreeMap<String, String>();
+	private final Map<String, Long> fStamps = new HashMap<String, Long>();
+	private final Random fRandom = new Random(4711);
+	private int fFiles;
+	private int fRuledOut;
+
+	private String randomText(String alphabet, int length) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			text.append(alphabet.charAt(fRandom.nextInt(alphabet.length())));
+		}
+		return text.toString();
+	}
+
+	private String randomContent() {
+		if (fRandom.nextInt(50) == 0) {
+			// more distinct trigrams than the largest signature has bits
+			return randomText("abcdefghijklmnopqrstuvwxyz0123456789ABCDEF", 100000);
+		}
+		return randomText(SMALL_ALPHABET, fRandom.nextInt(2000));
+	}
+
+	/**
+	 * @return new signatures for some of the files, null for removed files
+	 */
+	private Map<String, TrigramIndex.Signature> randomChanges(int files) {
+		Map<String, TrigramIndex.Signature> changes = new HashMap<String, TrigramIndex.Signature>();
+		for (int i = 0; i < files; i++) {
+			String path = "/p/f" + fRandom.nextInt(files * 2);
+			if (fRandom.nextInt(8) == 0) {
+				fContents.remove(path);
+				fStamps.remove(path);
+				changes.put(path, null);
+			} else {
+				String content = randomContent();
+				long stamp = fRandom.nextLong();
+				fContents.put(path, content);
+				fStamps.put(path, stamp);
+				changes.put(path, TrigramIndex.signature(path, stamp, content));
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * A file containing a literal must never be ruled out
+	 */
+	private void assertMayContain(TrigramIndex index) {
+		for (Map.Entry<String, String> entry : fContents.entrySet()) {
+			String path = entry.getKey();
+			String content = entry.getValue();
+			long stamp = fStamps.get(path);
+			assertEquals(path, stamp, index.getStamp(path));
+			for (int i = 0; i < 20; i++) {
+				String literal;
+				if (content.length() >= 3 && fRandom.nextBoolean()) {
+					int start = fRandom.nextInt(content.length() - 2);
+					int end = Math.min(content.length(), start + 3 + fRandom.nextInt(10));
+					literal = content.substring(start, end);
+					// the trigrams of ASCII letters are case insensitive
+					if (fRandom.nextBoolean())
+						literal = literal.toUpperCase();
+				} else {
+					literal = randomText(SMALL_ALPHABET, 3 + fRandom.nextInt(10));
+				}
+				if (content.toLowerCase().contains(literal.toLowerCase()))
+					assertTrue(path + " contains " + literal, index.mayContain(path, stamp, TrigramIndex.trigrams(literal)));
+			}
+			fFiles++;
+			// the characters are in no content
+			if (!index.mayContain(path, stamp, TrigramIndex.trigrams("~~~~")))
+				fRuledOut++;
+			// a changed file might contain anything
+			assertTrue(index.mayContain(path, stamp + 1, TrigramIndex.trigrams("xyz")));
+		}
+		assertTrue(index.mayContain("/p/unknown", 0, TrigramIndex.trigrams("xyz")));
+		assertEquals(TrigramIndex.UNKNOWN, index.getStamp("/p/unknown"));
+	}
+
+	@Test
+	public void neverRulesOutContainedLiterals() throws IOException {
+		for (int round = 0; round < 10; round++) {
+			fContents.clear();
+			fStamps.clear();
+			// the changes of a new index
+			TrigramIndex index = TrigramIndex.EMPTY.withChanges(randomChanges(50));
+			assertMayContain(index);
+			index = index.compact();
+			assertMayContain(index);
+			index = read(write(index));
+			assertMayContain(index);
+			// changes pending on a table that has been read
+			index = index.withChanges(randomChanges(50));
+			assertMayContain(index);
+			index = index.withChanges(randomChanges(50));
+			assertMayContain(index);
+			index = index.compact();
+			assertEquals(fContents.size(), index.size());
+			assertMayContain(index);
+			index = read(write(index));
+			assertMayContain(index);
+		}
+		// the index must rule out files too
+		assertTrue(fRuledOut > fFiles / 2);
+	}
+
+	@Test
+	public void emptyContents() throws IOException {
+		TrigramIndex.Signature binary = TrigramIndex.signature("/p/binary", 1, null);
+		TrigramIndex.Signature empty = TrigramIndex.signature("/p/empty", 1, "ab");
+		Map<String, TrigramIndex.Signature> changes = new HashMap<String, TrigramIndex.Signature>();
+		changes.put("/p/binary", binary);
+		changes.put("/p/empty", empty);
+		TrigramIndex index = TrigramIndex.EMPTY.withChanges(changes);
+		for (int i = 0; i < 2; i++) {
+			assertFalse(index.mayContain("/p/binary", 1, TrigramIndex.trigrams("abc")));
+			assertFalse(index.mayContain("/p/empty", 1, TrigramIndex.trigrams("abc")));
+			// a literal without trigrams rules out nothing
+			assertTrue(index.mayContain("/p/empty", 1, TrigramIndex.trigrams("ab")));
+			index = read(write(index.compact()));
+		}
+	}
+
+	private static byte[] write(TrigramIndex index) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		index.write(out);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static TrigramIndex read(byte[] bytes) throws IOException {
+		return TrigramIndex.read(ByteBuffer.wrap(bytes));
+	}
+}
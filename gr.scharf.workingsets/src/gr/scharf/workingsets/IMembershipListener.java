@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets;
+
+import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.ui.IWorkingSet;
+
+/**
+ * Gets the elements added to and removed from the query working sets, so that
+ * consumers do not have to compare the elements of a working set before and
+ * after each change. Register with
+ * {@link QueryWorkingSetUpdater#addMembershipListener(IMembershipListener)}.
+ */
+public interface IMembershipListener {
+	/**
+	 * Called in the update job after the working set got its new elements.
+	 * Changes of the same element within an update cancel each other.
+	 *
+	 * @param workingSet the query working set
+	 * @param added the elements that are new in the working set
+	 * @param removed the elements that are no longer in the working set
+	 */
+	void membershipChanged(IWorkingSet workingSet, IAdaptable[] added, IAdaptable[] removed);
+}
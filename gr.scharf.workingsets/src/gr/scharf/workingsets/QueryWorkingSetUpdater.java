@@ -6,23 +6,55 @@
  * http://www.eclipse.org/legal/epl-v10.html
  *******************************************************************************/package gr.scharf.workingsets;
 
+import gr.scharf.workingsets.internal.Activator;
+import gr.scharf.workingsets.internal.ContentIndex;
+import gr.scharf.workingsets.internal.DispatchIndex;
+import gr.scharf.workingsets.internal.MembershipCache;
 import gr.scharf.workingsets.internal.RegExResourceFilter;
+import gr.scharf.workingsets.internal.ShownWorkingSetsTracker;
+import gr.scharf.workingsets.internal.Trace;
+import gr.scharf.workingsets.internal.UpdaterStatistics;
+import gr.scharf.workingsets.internal.WorkspacePathIndex;
+import gr.scharf.workingsets.internal.query.PathIndex;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.ISaveContext;
+import org.eclipse.core.resources.ISaveParticipant;
+import org.eclipse.core.resources.ISavedState;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobManager;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.util.IPropertyChangeListener;
+import org.eclipse.jface.util.PropertyChangeEvent;
 import org.eclipse.ui.IWorkingSet;
+import org.eclipse.ui.IWorkingSetManager;
 import org.eclipse.ui.IWorkingSetUpdater;
+import org.eclipse.ui.PlatformUI;
 
 /**
  * This class observes the workspace and updates the working sets when the workspace changes.
@@ -31,76 +63,725 @@ import org.eclipse.ui.IWorkingSetUpdater;
  */
 public class QueryWorkingSetUpdater implements IWorkingSetUpdater {
 	/**
-	 * Working sets maintained by the updater
+	 * Filters of the working sets maintained by the updater. The filters live as long 
+	 * as the working set is maintained by the updater and keep the membership between 
+	 * resource change events. The working sets are mutable, therefore we use identity.
 	 */
-	Map<String, IWorkingSet> workingSets = new HashMap<String, IWorkingSet>();
+	Map<IWorkingSet, RegExResourceFilter> filters = new IdentityHashMap<IWorkingSet, RegExResourceFilter>();
 	/**
-	 * Currently active filters. 
+	 * Selects the filters an added file is offered to. Rebuilt lazily when
+	 * the filters or their queries change.
 	 */
-	Collection<RegExResourceFilter> filters = new ArrayList<RegExResourceFilter>();
+	private DispatchIndex fDispatchIndex;
+	/**
+	 * Working sets that are registered but not evaluated yet, see {@link #LAZY}
+	 */
+	private final Set<IWorkingSet> fDormant = Collections.newSetFromMap(new IdentityHashMap<IWorkingSet, Boolean>());
+	/**
+	 * Working sets that have been shown in a workbench page
+	 */
+	private final Set<IWorkingSet> fShown = Collections.newSetFromMap(new IdentityHashMap<IWorkingSet, Boolean>());
+	/**
+	 * A copy of {@link #filters} for the threads asking for the membership,
+	 * replaced when a working set is added or removed
+	 */
+	private volatile Map<IWorkingSet, RegExResourceFilter> fPublishedFilters = Collections.emptyMap();
+	/**
+	 * The working sets added and not removed, changed by the UI thread right away
+	 * (see {@link #contains(IWorkingSet)}) while {@link #filters} is changed by the
+	 * update job
+	 */
+	private final Set<IWorkingSet> fRegistered = Collections.synchronizedSet(
+			Collections.newSetFromMap(new IdentityHashMap<IWorkingSet, Boolean>()));
+	/**
+	 * Working sets added, removed, shown or changed by somebody else. The UI thread
+	 * never waits for a batch: it queues the request and the update job applies
+	 * it before its next batch, see {@link #applyRequests()}.
+	 */
+	private final ConcurrentLinkedQueue<Request> fRequests = new ConcurrentLinkedQueue<Request>();
+	private ShownWorkingSetsTracker fTracker;
+	/**
+	 * Set by {@link #dispose()}, the update job disposes the filters
+	 */
+	private volatile boolean fDisposed;
+	private static volatile QueryWorkingSetUpdater fgDefault;
+	private static final CopyOnWriteArrayList<IMembershipListener> fgListeners = new CopyOnWriteArrayList<IMembershipListener>();
 	
-	public QueryWorkingSetUpdater() {
-		ResourcesPlugin.getWorkspace().addResourceChangeListener(new IResourceChangeListener() {
-			public void resourceChanged(IResourceChangeEvent event) {
+	/**
+	 * Passes the changes of the filters to the registered listeners
+	 */
+	private final IMembershipListener fMembershipListener = new IMembershipListener() {
+		public void membershipChanged(IWorkingSet workingSet, IAdaptable[] added, IAdaptable[] removed) {
+			for (IMembershipListener listener : fgListeners) {
 				try {
-					if (event.getDelta() == null) {
-						return;
-					}
-					// make sure do not update the working set for every file that has changed
-					beginUpdateWorkingSets();
-					event.getDelta().accept(new IResourceDeltaVisitor() {
-						public boolean visit(IResourceDelta delta) throws CoreException {
-							IResource resource = null;
-							switch (delta.getKind()) {
-								case IResourceDelta.ADDED:
-									// resources are added one by one
-									addToWorkingSets(delta.getResource());
-									break;
-								case IResourceDelta.CHANGED: 
-									// handle project opened/closed
-									if ((delta.getFlags() & IResourceDelta.OPEN) != 0) {
-										resource = delta.getResource();
-									} else if (".project".equals(delta.getResource().getName())) {
+					listener.membershipChanged(workingSet, added, removed);
+				} catch (RuntimeException e) {
+					Activator.log(e);
+				}
+			}
+		}
+	};
+	
+	/**
+	 * Jobs of the updater belong to this family
+	 */
+	public static final Object FAMILY = QueryWorkingSetUpdater.class;
+	/**
+	 * Resource change events within this time (in milliseconds) are merged into one update.
+	 * Can be set with the system property <code>gr.scharf.workingsets.debounce</code>.
+	 */
+	public static final long DEFAULT_DEBOUNCE_DELAY = Long.getLong("gr.scharf.workingsets.debounce", 200);
+	/**
+	 * In lazy mode working sets are not evaluated (and not updated on resource changes) 
+	 * until they are shown in a workbench page, edited or {@link #materialize(IWorkingSet)} 
+	 * is called. Set with the system property <code>gr.scharf.workingsets.lazy=true</code>.
+	 */
+	public static final boolean LAZY = Boolean.getBoolean("gr.scharf.workingsets.lazy");
+	/**
+	 * Working sets with time dependent queries (e.g. <code>@modified&lt;7d</code>) are
+	 * re-evaluated after this time (in milliseconds). Can be set with the system 
+	 * property <code>gr.scharf.workingsets.refresh</code>.
+	 */
+	public static final long REFRESH_INTERVAL = Long.getLong("gr.scharf.workingsets.refresh", 60 * 60 * 1000);
+	
+	private static final class Request {
+		final int kind;
+		final IWorkingSet workingSet;
+
+		Request(int kind, IWorkingSet workingSet) {
+			this.kind = kind;
+			this.workingSet = workingSet;
+		}
+	}
+	private static final int REQUEST_ADD = 1;
+	private static final int REQUEST_REMOVE = 2;
+	private static final int REQUEST_MATERIALIZE = 3;
+	/**
+	 * The elements of the working set have been changed by somebody else
+	 */
+	private static final int REQUEST_RELOAD = 4;
+	
+	private static final int ADD = 1;
+	private static final int REMOVE = 2;
+	private static final int UPDATE = ADD | REMOVE;
+	/**
+	 * The content or the attributes of a file have changed, only relevant for
+	 * queries with predicates on the attributes
+	 */
+	private static final int METADATA = 4;
+	/**
+	 * Changes of a file that are of interest for queries with predicates on the attributes
+	 */
+	private static final int METADATA_FLAGS = IResourceDelta.CONTENT | IResourceDelta.REPLACED | IResourceDelta.DERIVED_CHANGED;
+	
+	/**
+	 * Changes collected by the resource listener that have not been applied yet.
+	 * Guarded by itself, the listener never waits for the update job.
+	 */
+	private final Map<IResource, Integer> fPending = new LinkedHashMap<IResource, Integer>();
+	private boolean fScheduled;
+	private long fDebounceDelay = DEFAULT_DEBOUNCE_DELAY;
+	
+	private final Job fUpdateJob = new Job("Updating query working sets") {
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			applyPending();
+			return Status.OK_STATUS;
+		}
+		@Override
+		public boolean belongsTo(Object family) {
+			return family == FAMILY;
+		}
+	};
+	
+	/**
+	 * True if a query has predicates on the attributes of the files, only then 
+	 * changes of the content are of interest.
+	 */
+	private volatile boolean fMetadataQueries;
+	
+	private final Job fRefreshJob = new Job("Refreshing query working sets") {
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			synchronized (QueryWorkingSetUpdater.this) {
+				for (RegExResourceFilter filter : filters.values()) {
+					if (filter.isTimeDependent())
+						filter.invalidate();
+				}
+			}
+			scheduleUpdate();
+			return Status.OK_STATUS;
+		}
+	};
+	
+	/**
+	 * Registered as <code>gr.scharf.workingsets:type=Updater</code>, each working set 
+	 * registers the statistics of its filter
+	 */
+	private final UpdaterStatistics fStatistics = new UpdaterStatistics() {
+		public int getPendingChanges() {
+			synchronized (fPending) {
+				return fPending.size();
+			}
+		}
+		public int getWorkingSets() {
+			return fPublishedFilters.size();
+		}
+	};
+	
+	private final IResourceChangeListener fResourceListener = new IResourceChangeListener() {
+		public void resourceChanged(IResourceChangeEvent event) {
+			if (event.getDelta() == null) {
+				return;
+			}
+			fStatistics.event();
+			try {
+				event.getDelta().accept(new IResourceDeltaVisitor() {
+					public boolean visit(IResourceDelta delta) throws CoreException {
+						IResource resource = delta.getResource();
+						int flags = delta.getFlags();
+						switch (delta.getKind()) {
+							case IResourceDelta.ADDED:
+								if ((flags & IResourceDelta.MOVED_FROM) != 0 && resource instanceof IContainer) {
+									// a moved folder or a renamed project is matched in one go, 
+									// the old location is removed with the other end of the move 
+									addPending(resource, UPDATE);
+									return false;
+								}
+								// resources are added one by one
+								addPending(resource, ADD);
+								return true;
+							case IResourceDelta.REMOVED:
+								// removes the files below a container too, no need to recurse down
+								addPending(resource, REMOVE);
+								return false;
+							case IResourceDelta.CHANGED: 
+								if (resource.getType() == IResource.FILE) {
+									if (".project".equals(resource.getName()) && (flags & (IResourceDelta.CONTENT | IResourceDelta.REPLACED)) != 0) {
 										// properties of the project might have changed
-										resource = delta.getResource();
-									}
-									if (resource != null) {
-										updateResourceInWorkingSets(delta.getResource());
-										// no need to recurse down
-										return false;
+										addPending(resource, UPDATE);
+									} else if (fMetadataQueries && (flags & METADATA_FLAGS) != 0) {
+										addPending(resource, METADATA);
 									}
-									break;
-								case IResourceDelta.REMOVED:
-									removeFromWorkingSets(delta.getResource());
-									break;
-							}
-							return true;
+									// markers, sync info... do not change the path of a file
+									return false;
+								}
+								// handle project opened/closed
+								if ((flags & IResourceDelta.OPEN) != 0) {
+									addPending(resource, UPDATE);
+									// no need to recurse down
+									return false;
+								}
+								return true;
 						}
+						return false;
+					}
 
-					});
-				} catch (CoreException e) {
-					// TODO log the error
-					e.printStackTrace();
-				} finally {
-					endUpdateWorkingSets();
+				});
+			} catch (CoreException e) {
+				Activator.log(e);
+			} finally {
+				schedulePending();
+			}
+		}
+	};
+	
+	/**
+	 * The membership of the working sets when the workspace was saved
+	 */
+	private final MembershipCache fCache;
+	/**
+	 * True until the first batch has been applied. The changes since the last save 
+	 * are applied with that batch, a working set added later would miss them if it 
+	 * was restored from the {@link #fCache}. Guarded by the lock.
+	 */
+	private boolean fRestoring = true;
+	
+	/**
+	 * Writes the membership of the working sets to the {@link MembershipCache} 
+	 * when the workspace is saved.
+	 */
+	private final ISaveParticipant fSaveParticipant = new ISaveParticipant() {
+		public void prepareToSave(ISaveContext context) throws CoreException {
+		}
+		public void saving(ISaveContext context) throws CoreException {
+			if (context.getKind() == ISaveContext.PROJECT_SAVE)
+				return;
+			// the cache must contain all changes up to the save
+			applyPending();
+			synchronized (QueryWorkingSetUpdater.this) {
+				Set<String> queries = new HashSet<String>();
+				for (RegExResourceFilter filter : filters.values()) {
+					if (queries.add(filter.getQuery())) {
+						try {
+							fCache.write(filter.getQuery(), filter.getMemberPaths(), context.getSaveNumber());
+						} catch (IOException e) {
+							Activator.log("Cannot cache the membership of " + filter.getWorkingSet().getName(), e);
+						}
+					}
+				}
+				for (IWorkingSet workingSet : fDormant) {
+					// keep the entry, it is still better than nothing
+					queries.add(RegExResourceFilter.getFilterString(workingSet));
 				}
+				fCache.retain(queries);
 			}
-		});
+			ContentIndex.saveDefault();
+			// we want the changes after the save on the next startup
+			context.needDelta();
+		}
+		public void doneSaving(ISaveContext context) {
+		}
+		public void rollback(ISaveContext context) {
+		}
+	};
+	
+	/**
+	 * Detects changes of the elements that are not done by the filters (e.g. by the 
+	 * working set page) 
+	 */
+	private final IPropertyChangeListener fWorkingSetListener = new IPropertyChangeListener() {
+		public void propertyChange(PropertyChangeEvent event) {
+			boolean nameChange = IWorkingSetManager.CHANGE_WORKING_SET_NAME_CHANGE.equals(event.getProperty());
+			if (!nameChange && !IWorkingSetManager.CHANGE_WORKING_SET_CONTENT_CHANGE.equals(event.getProperty()))
+				return;
+			IWorkingSet workingSet = (IWorkingSet) event.getNewValue();
+			if (!fRegistered.contains(workingSet))
+				return;
+			RegExResourceFilter filter = fPublishedFilters.get(workingSet);
+			if (filter == null) {
+				// the working set is being edited
+				request(REQUEST_MATERIALIZE, workingSet);
+			} else if (nameChange) {
+				// the query is compiled with the next update
+				scheduleUpdate();
+			} else if (!filter.isPublished()) {
+				// the notifications of our own changes arrive asynchronously and are 
+				// recognised without waiting for the update job
+				request(REQUEST_RELOAD, workingSet);
+			}
+		}
+	};
+	
+	public QueryWorkingSetUpdater() {
+		fUpdateJob.setSystem(true);
+		fUpdateJob.setPriority(Job.DECORATE);
+		fRefreshJob.setSystem(true);
+		fRefreshJob.setPriority(Job.DECORATE);
+		// only the changes after the operations have completed are of interest
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(fResourceListener, IResourceChangeEvent.POST_CHANGE);
+		PlatformUI.getWorkbench().getWorkingSetManager().addPropertyChangeListener(fWorkingSetListener);
+		ISavedState savedState = null;
+		try {
+			savedState = ResourcesPlugin.getWorkspace().addSaveParticipant(Activator.PLUGIN_ID, fSaveParticipant);
+		} catch (CoreException e) {
+			Activator.log(e);
+		}
+		fCache = new MembershipCache(Activator.getDefault().getStateLocation().append("membership").toFile(), 
+				savedState == null ? 0 : savedState.getSaveNumber());
+		if (savedState != null) {
+			// the cached membership misses the changes since the last save. The queries 
+			// are not known yet, so the changes of the content are kept for all of them
+			// until the first batch has applied them after the working sets have been added
+			fMetadataQueries = true;
+			savedState.processResourceChangeEvents(fResourceListener);
+		}
+		if (LAZY) {
+			fTracker = new ShownWorkingSetsTracker(new ShownWorkingSetsTracker.Listener() {
+				public void workingSetsShown(List<IWorkingSet> workingSets) {
+					for (IWorkingSet workingSet : workingSets) {
+						request(REQUEST_MATERIALIZE, workingSet);
+					}
+				}
+			});
+			fTracker.install();
+		}
+		fStatistics.register();
+		fgDefault = this;
+	}
 
+	/**
+	 * Makes sure a query working set is evaluated and kept up to date. In lazy mode 
+	 * (see {@link #LAZY}) this has to be called before the elements of a working set
+	 * that is not shown in the workbench are used. The evaluation is done in 
+	 * the background, call {@link #waitForPendingUpdates()} to wait for it.
+	 */
+	public static void materialize(IWorkingSet workingSet) {
+		QueryWorkingSetUpdater updater = fgDefault;
+		if (updater != null)
+			updater.request(REQUEST_MATERIALIZE, workingSet);
 	}
+
+	/**
+	 * Queues a request for the update job, can be called from any thread
+	 */
+	private void request(int kind, IWorkingSet workingSet) {
+		fRequests.add(new Request(kind, workingSet));
+		scheduleUpdate();
+	}
+
+	/**
+	 * Applies the requests queued so far, called by the update job with the lock held
+	 */
+	private void applyRequests() {
+		Request request;
+		while ((request = fRequests.poll()) != null) {
+			switch (request.kind) {
+				case REQUEST_ADD:
+					addWorkingSet(request.workingSet);
+					break;
+				case REQUEST_REMOVE:
+					removeWorkingSet(request.workingSet);
+					break;
+				case REQUEST_MATERIALIZE:
+					materializeWorkingSet(request.workingSet);
+					break;
+				case REQUEST_RELOAD:
+					RegExResourceFilter filter = filters.get(request.workingSet);
+					// e.g. a collapsed working set gets its folders with this update
+					if (filter != null)
+						filter.elementsChanged();
+					break;
+			}
+		}
+	}
+
+	private void materializeWorkingSet(IWorkingSet workingSet) {
+		fShown.add(workingSet);
+		if (!fDormant.remove(workingSet))
+			return;
+		RegExResourceFilter filter = new RegExResourceFilter(workingSet);
+		// the resource changes since startup have not been applied
+		filter.invalidate();
+		filter.setMembershipListener(getMembershipListener());
+		filters.put(workingSet, filter);
+		filter.getStatistics().register();
+		filtersChanged();
+		// evaluated by the batch following the requests
+		if (filter.hasMetadataMatchers())
+			fMetadataQueries = true;
+	}
+	/**
+	 * The working set is evaluated (or restored from the cache) by the update job
+	 */
 	public void add(IWorkingSet workingSet) {
-		workingSets.put(workingSet.getName(), workingSet);
+		fRegistered.add(workingSet);
+		request(REQUEST_ADD, workingSet);
+	}
+
+	private void addWorkingSet(IWorkingSet workingSet) {
+		if (filters.containsKey(workingSet) || fDormant.contains(workingSet))
+			return;
+		if (LAZY && !fShown.contains(workingSet)) {
+			fDormant.add(workingSet);
+			return;
+		}
+		RegExResourceFilter filter = new RegExResourceFilter(workingSet);
+		filter.setMembershipListener(getMembershipListener());
+		MembershipCache.Entry entry = fCache.read(filter.getQuery());
+		if (entry != null) {
+			// the batch following the requests sets the elements
+			if (entry.isCurrent() && fRestoring) {
+				filter.restore(entry.getMembers());
+			} else {
+				// the workspace has been saved without us (or not at all) after 
+				// the entry was written, or the changes since the save have already
+				// been applied to the other working sets: we cannot tell what has changed
+				filter.invalidate();
+			}
+		}
+		filters.put(workingSet, filter);
+		filter.getStatistics().register();
+		filtersChanged();
+		if (filter.hasMetadataMatchers())
+			fMetadataQueries = true;
 	}
 
 	public boolean contains(IWorkingSet workingSet) {
-		return workingSets.values().contains(workingSet);
+		return fRegistered.contains(workingSet);
+	}
+
+	/**
+	 * Called with the lock held after a working set has been added or removed
+	 */
+	private void filtersChanged() {
+		fDispatchIndex = null;
+		fPublishedFilters = new IdentityHashMap<IWorkingSet, RegExResourceFilter>(filters);
+	}
+
+	/**
+	 * @return the filter of a working set the updater keeps up to date or null,
+	 * does not wait for the update job
+	 */
+	private static RegExResourceFilter getFilter(IWorkingSet workingSet) {
+		QueryWorkingSetUpdater updater = fgDefault;
+		return updater == null ? null : updater.fPublishedFilters.get(workingSet);
+	}
+
+	/**
+	 * Tests if a resource is in a query working set without copying the elements 
+	 * like {@link IWorkingSet#getElements()}. Can be called from any thread, 
+	 * changes the update job has not applied yet are not seen.
+	 * 
+	 * @return true if the resource is an element of the working set
+	 */
+	public static boolean isMember(IWorkingSet workingSet, IResource resource) {
+		RegExResourceFilter filter = getFilter(workingSet);
+		if (filter == null) {
+			// e.g. not materialized in lazy mode, the elements of a collapsed 
+			// working set contain folders
+			IPath path = resource.getFullPath();
+			for (IAdaptable element : workingSet.getElements()) {
+				if (element.equals(resource)
+						|| (element instanceof IContainer && ((IContainer) element).getFullPath().isPrefixOf(path)))
+					return true;
+			}
+			return false;
+		}
+		return filter.getResult().contains(resource);
+	}
+
+	/**
+	 * @param path the full path of a file
+	 * @see #isMember(IWorkingSet, IResource)
+	 */
+	public static boolean isMember(IWorkingSet workingSet, IPath path) {
+		return isMember(workingSet, ResourcesPlugin.getWorkspace().getRoot().getFile(path));
+	}
+
+	/**
+	 * @return the number of elements of a query working set, without copying them
+	 * @see #isMember(IWorkingSet, IResource)
+	 */
+	public static int getMemberCount(IWorkingSet workingSet) {
+		RegExResourceFilter filter = getFilter(workingSet);
+		if (filter == null)
+			return workingSet.getElements().length;
+		return filter.getResult().size();
+	}
+
+	/**
+	 * Adds a listener that gets the elements added to and removed from the query 
+	 * working sets with each update. Changes are tracked from the next update on.
+	 */
+	public static void addMembershipListener(IMembershipListener listener) {
+		fgListeners.addIfAbsent(listener);
+	}
+
+	public static void removeMembershipListener(IMembershipListener listener) {
+		fgListeners.remove(listener);
+	}
+
+	/**
+	 * @return the listener for the filters or null if nobody listens, the filters 
+	 * do not track the changes then
+	 */
+	private IMembershipListener getMembershipListener() {
+		return fgListeners.isEmpty() ? null : fMembershipListener;
 	}
 
 	public void dispose() {
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(fResourceListener);
+		ResourcesPlugin.getWorkspace().removeSaveParticipant(Activator.PLUGIN_ID);
+		PlatformUI.getWorkbench().getWorkingSetManager().removePropertyChangeListener(fWorkingSetListener);
+		fDisposed = true;
+		fUpdateJob.cancel();
+		fRefreshJob.cancel();
+		synchronized (fPending) {
+			fPending.clear();
+		}
+		fRequests.clear();
+		fRegistered.clear();
+		if (fTracker != null)
+			fTracker.uninstall();
+		fStatistics.unregister();
+		if (fgDefault == this)
+			fgDefault = null;
+		// a running batch is not interrupted by the cancellation, the calling thread 
+		// must not wait for it: the job disposes the filters after the batch
+		fUpdateJob.schedule();
 	}
 
+	/**
+	 * Disposes the filters, called by the update job with the lock held once the 
+	 * updater has been disposed
+	 */
+	private void disposeFilters() {
+		for (RegExResourceFilter filter : filters.values()) {
+			filter.getStatistics().unregister();
+			filter.dispose();
+		}
+		filters.clear();
+		fDormant.clear();
+		fShown.clear();
+		filtersChanged();
+	}
+
+	/**
+	 * The filter of the working set is disposed by the update job
+	 */
 	public boolean remove(IWorkingSet workingSet) {
-		return workingSets.remove(workingSet.getName()) != null;
+		if (!fRegistered.remove(workingSet))
+			return false;
+		request(REQUEST_REMOVE, workingSet);
+		return true;
+	}
+
+	private void removeWorkingSet(IWorkingSet workingSet) {
+		fShown.remove(workingSet);
+		if (fDormant.remove(workingSet))
+			return;
+		RegExResourceFilter filter = filters.remove(workingSet);
+		if (filter == null)
+			return;
+		filter.getStatistics().unregister();
+		filtersChanged();
+		filter.dispose();
+	}
+
+	/**
+	 * @param delay resource change events within this time (in milliseconds) are merged 
+	 * into one update of the working sets
+	 */
+	public void setDebounceDelay(long delay) {
+		fDebounceDelay = delay;
+	}
+
+	/**
+	 * Blocks until all resource changes that have been reported so far
+	 * are applied to the working sets. Pending updates are not delayed any longer.
+	 * @throws InterruptedException
+	 */
+	public static void waitForPendingUpdates() throws InterruptedException {
+		IJobManager jobManager = Job.getJobManager();
+		Job[] jobs;
+		while ((jobs = jobManager.find(FAMILY)).length > 0) {
+			for (Job job : jobs) {
+				job.wakeUp();
+			}
+			jobManager.join(FAMILY, null);
+		}
+	}
+
+	/**
+	 * Remembers a change to be applied by the update job. A later change of 
+	 * the same resource is merged with the earlier one. 
+	 */
+	private void addPending(IResource resource, int kind) {
+		synchronized (fPending) {
+			Integer previous = fPending.get(resource);
+			if (previous != null && kind == METADATA) {
+				// adding, removing and updating evaluate the attributes anyway
+				return;
+			}
+			if (previous != null && kind == ADD && previous.intValue() != ADD) {
+				// removed and added again: the old membership has to go
+				kind = UPDATE;
+			}
+			fPending.put(resource, kind);
+		}
+	}
+
+	private void schedulePending() {
+		synchronized (fPending) {
+			if (fScheduled || fPending.isEmpty())
+				return;
+			fScheduled = true;
+		}
+		// all events within the delay are collected and applied together
+		fUpdateJob.schedule(fDebounceDelay);
+	}
+
+	/**
+	 * Schedules the update job even if there are no pending changes
+	 */
+	private void scheduleUpdate() {
+		synchronized (fPending) {
+			fScheduled = true;
+		}
+		fUpdateJob.schedule(fDebounceDelay);
+	}
+
+	/**
+	 * Applies the requests and the changes collected so far. Holding the lock while 
+	 * taking the changes makes sure batches are applied in the order they were collected.
+	 */
+	private synchronized void applyPending() {
+		if (fDisposed) {
+			disposeFilters();
+			return;
+		}
+		applyRequests();
+		Map<IResource, Integer> pending;
+		synchronized (fPending) {
+			pending = new LinkedHashMap<IResource, Integer>(fPending);
+			fPending.clear();
+			fScheduled = false;
+		}
+		applyChanges(pending);
+		// the changes since the last save have been applied to the restored working sets
+		fRestoring = false;
+	}
+
+	/**
+	 * Applies the changes collected from the resource change events
+	 */
+	protected synchronized void applyChanges(Map<IResource, Integer> changes) {
+		long start = System.nanoTime();
+		try {
+			// make sure do not update the working set for every file that has changed
+			beginUpdateWorkingSets();
+			for (Map.Entry<IResource, Integer> entry : changes.entrySet()) {
+				if (fDisposed)
+					// the filters are disposed by the next run of the job
+					break;
+				IResource resource = entry.getKey();
+				int kind = entry.getValue().intValue();
+				if (kind == REMOVE || !resource.exists()) {
+					removeFromWorkingSets(resource);
+				} else if (kind == ADD) {
+					addToWorkingSets(resource);
+				} else if (kind == METADATA) {
+					updateMetadataInWorkingSets(resource);
+				} else {
+					updateResourceInWorkingSets(resource);
+				}
+			}
+		} catch (CoreException e) {
+			Activator.log(e);
+		} finally {
+			endUpdateWorkingSets();
+			long time = System.nanoTime() - start;
+			fStatistics.batch(changes.size(), time);
+			if (Trace.DEBUG_UPDATER)
+				Trace.trace(Trace.UPDATER, "Applied " + changes.size() + " changes to " + filters.size() 
+						+ " working sets in " + toMillis(time) + " ms");
+			if (Trace.DEBUG_SLOW && time > Trace.slowThreshold * 1000000)
+				traceSlowBatch(changes.size(), time);
+		}
+	}
+
+	/**
+	 * Traces the time spent in each working set, the slowest first
+	 */
+	private void traceSlowBatch(int changes, long time) {
+		List<RegExResourceFilter> slowest = new ArrayList<RegExResourceFilter>(filters.values());
+		Collections.sort(slowest, new Comparator<RegExResourceFilter>() {
+			public int compare(RegExResourceFilter f1, RegExResourceFilter f2) {
+				return Long.compare(f2.getBatchTime(), f1.getBatchTime());
+			}
+		});
+		StringBuilder message = new StringBuilder();
+		message.append("Slow batch of ").append(changes).append(" changes: ").append(toMillis(time)).append(" ms");
+		for (RegExResourceFilter filter : slowest) {
+			message.append("\n  ").append(toMillis(filter.getBatchTime())).append(" ms ")
+					.append(filter.getWorkingSet().getName().replace('\n', ' '));
+		}
+		Trace.trace(Trace.SLOW, message.toString());
+	}
+
+	private static String toMillis(long nanos) {
+		return String.format("%.1f", nanos / 1000000.0);
 	}
 
 	/**
@@ -108,38 +789,85 @@ public class QueryWorkingSetUpdater implements IWorkingSetUpdater {
 	 * @throws CoreException
 	 */
 	protected void updateResourceInWorkingSets(IResource resource) throws CoreException {
-		for (RegExResourceFilter filter : filters) {
+		if (resource instanceof IContainer) {
+			if (!resource.isAccessible()) {
+				// a closed project, the filters drop its members at once
+				removeFromWorkingSets(resource);
+				return;
+			}
+			// e.g. a project has been opened, only its files are matched
+			PathIndex index = WorkspacePathIndex.getDefault().getIndex();
+			for (RegExResourceFilter filter : filters.values()) {
+				filter.updateContainer((IContainer) resource, index);
+			}
+			return;
+		}
+		for (RegExResourceFilter filter : filters.values()) {
 			filter.updateResource(resource.createProxy());
 		}
 	}
 
+	/**
+	 * Re-evaluates a file whose content or attributes have changed in the working sets
+	 * with predicates on the attributes, the path has not changed.
+	 */
+	protected void updateMetadataInWorkingSets(IResource resource) throws CoreException {
+		IResourceProxy proxy = null;
+		for (RegExResourceFilter filter : filters.values()) {
+			if (filter.hasMetadataMatchers()) {
+				if (proxy == null)
+					proxy = resource.createProxy();
+				filter.updateResource(proxy);
+			}
+		}
+	}
+
 	protected void removeFromWorkingSets(IResource resource) throws CoreException {
-		for (RegExResourceFilter filter : filters) {
+		if (resource instanceof IContainer) {
+			// e.g. a folder has been deleted or moved away
+			for (RegExResourceFilter filter : filters.values()) {
+				filter.removeContainer((IContainer) resource);
+			}
+			return;
+		}
+		for (RegExResourceFilter filter : filters.values()) {
 			filter.removeResource(resource);
 		}
 	}
 
 	protected void addToWorkingSets(IResource resource) throws CoreException {
+		if (resource.getType() != IResource.FILE)
+			// the filters only add files
+			return;
 		IResourceProxy proxy = resource.createProxy();
-		for (RegExResourceFilter filter : filters) {
+		for (RegExResourceFilter filter : fDispatchIndex.getCandidates(resource.getFullPath().toString())) {
 			filter.addResource(proxy);
 		}
 	}
 
 	protected void endUpdateWorkingSets() {
-		for (RegExResourceFilter filter : filters) {
+		for (RegExResourceFilter filter : filters.values()) {
 			filter.endUpdate();
 		}
-		// filters are not needed anymore
-		filters.clear();
 	}
 
 	protected void beginUpdateWorkingSets() {
-		filters.clear();
-		for (IWorkingSet workingSet : workingSets.values()) {
-			RegExResourceFilter filter = new RegExResourceFilter(workingSet);
-			filters.add(filter);
-		}	
+		// the filters are only recompiled if the query has changed
+		boolean metadataQueries = false;
+		boolean timeDependent = false;
+		IMembershipListener listener = getMembershipListener();
+		for (RegExResourceFilter filter : filters.values()) {
+			filter.setMembershipListener(listener);
+			if (filter.beginUpdate())
+				fDispatchIndex = null;
+			metadataQueries |= filter.hasMetadataMatchers();
+			timeDependent |= filter.isTimeDependent();
+		}
+		fMetadataQueries = metadataQueries;
+		if (timeDependent && fRefreshJob.getState() == Job.NONE)
+			fRefreshJob.schedule(REFRESH_INTERVAL);
+		if (fDispatchIndex == null)
+			fDispatchIndex = new DispatchIndex(filters.values());
 	}
 
 }
@@ -9,9 +9,17 @@ package gr.scharf.workingsets.internal;
 
 import gr.scharf.workingsets.QueryWorkingSetUpdater;
 
+import java.util.Hashtable;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.osgi.service.debug.DebugOptions;
+import org.eclipse.osgi.service.debug.DebugOptionsListener;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 
 public class Activator extends AbstractUIPlugin {
 	// The plug-in ID
@@ -19,17 +27,29 @@ public class Activator extends AbstractUIPlugin {
 
 	// The shared instance
 	private static Activator fgPlugin;
+	
+	private ServiceRegistration<?> fTraceRegistration;
 
 	@Override
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
 		Activator.fgPlugin = this;
+		// the trace options (see .options) are passed to the listener
+		Hashtable<String, String> properties = new Hashtable<String, String>();
+		properties.put(DebugOptions.LISTENER_SYMBOLICNAME, PLUGIN_ID);
+		fTraceRegistration = context.registerService(DebugOptionsListener.class.getName(), new Trace(), properties);
 		// make sure we load the updater when the bundle is loaded
 		Class.forName(QueryWorkingSetUpdater.class.getName());
 	}
 
 	@Override
 	public void stop(BundleContext context) throws Exception {
+		ContentIndex.disposeDefault();
+		WorkspacePathIndex.disposeDefault();
+		if (fTraceRegistration != null) {
+			fTraceRegistration.unregister();
+			fTraceRegistration = null;
+		}
 		Activator.fgPlugin = null;
 		super.stop(context);
 	}
@@ -41,4 +61,23 @@ public class Activator extends AbstractUIPlugin {
 	public static ImageDescriptor getImageDescriptor(String path) {
 		return AbstractUIPlugin.imageDescriptorFromPlugin(PLUGIN_ID, path);
 	}
+
+	/**
+	 * Writes an error to the error log (or to stderr if the plug-in is not running)
+	 */
+	public static void log(String message, Throwable e) {
+		Activator plugin = fgPlugin;
+		if (plugin == null) {
+			e.printStackTrace();
+			return;
+		}
+		if (e instanceof CoreException && message == null)
+			plugin.getLog().log(((CoreException) e).getStatus());
+		else
+			plugin.getLog().log(new Status(IStatus.ERROR, PLUGIN_ID, message == null ? String.valueOf(e.getMessage()) : message, e));
+	}
+
+	public static void log(Throwable e) {
+		log(null, e);
+	}
 }
@@ -0,0 +1,372 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import gr.scharf.workingsets.internal.query.PathCursor;
+import gr.scharf.workingsets.internal.query.PathIndex;
+import gr.scharf.workingsets.internal.query.TrigramIndex;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * The {@link TrigramIndex} of the contents of the files in the workspace, used by the
+ * <code>content:</code> lines of queries to read only the files that might match.
+ * <p>
+ * The index is created when it is used the first time. It is stored in the state
+ * location of the plug-in when the workspace is saved, and the signatures are memory
+ * mapped from that file on the next start. A job indexes the files whose modification
+ * stamp differs from the stamp in the index: on creation all files are checked, later
+ * the {@link WorkspacePathIndex} reports the changed files. Files that have not
+ * been indexed yet are always reported as candidates, so the results are correct
+ * while the index is being built.
+ */
+public class ContentIndex {
+	/**
+	 * Larger files are not searched
+	 */
+	public static final int MAX_FILE_SIZE = 1 << 20;
+	private static final int MAGIC = 0x51575449; // QWTI
+	private static final int VERSION = 1;
+	private static final String PREFIX = "trigrams-";
+	private static final String SUFFIX = ".index";
+	private static final int BATCH_SIZE = 200;
+
+	private static ContentIndex fgDefault;
+
+	private volatile TrigramIndex fIndex = TrigramIndex.EMPTY;
+	/**
+	 * Serializes the updates of {@link #fIndex}
+	 */
+	private final Object fUpdateLock = new Object();
+	/**
+	 * Files to index and folders (ending with '/') whose files have to be checked, guarded by itself
+	 */
+	private final Set<String> fQueue = new LinkedHashSet<String>();
+	private final File fDirectory;
+	/**
+	 * The number of the last file written, the file of the current index might be mapped
+	 */
+	private int fFileNumber;
+	/**
+	 * The index has changed since it has been written
+	 */
+	private boolean fDirty;
+
+	private final Job fIndexJob = new Job("Indexing file contents") {
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			while (!monitor.isCanceled() && indexBatch()) {
+			}
+			return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+		}
+	};
+
+	private ContentIndex(File directory) {
+		fDirectory = directory;
+		fIndexJob.setSystem(true);
+		fIndexJob.setPriority(Job.DECORATE);
+		load();
+		// the workspace might have changed since the index was written
+		enqueue("/");
+	}
+
+	public static synchronized ContentIndex getDefault() {
+		if (fgDefault == null)
+			fgDefault = new ContentIndex(Activator.getDefault().getStateLocation().append("content").toFile());
+		return fgDefault;
+	}
+
+	public static synchronized void disposeDefault() {
+		if (fgDefault != null) {
+			fgDefault.fIndexJob.cancel();
+			fgDefault = null;
+		}
+	}
+
+	/**
+	 * Writes the index if it exists and has changed
+	 */
+	public static void saveDefault() {
+		ContentIndex index;
+		synchronized (ContentIndex.class) {
+			index = fgDefault;
+		}
+		if (index != null)
+			index.save();
+	}
+
+	/**
+	 * Called for added, removed and changed files and for opened and closed
+	 * projects (the path of a container ends with '/'). Nothing to do if there is no index.
+	 */
+	static void changed(String path) {
+		ContentIndex index;
+		synchronized (ContentIndex.class) {
+			index = fgDefault;
+		}
+		if (index != null)
+			index.enqueue(path);
+	}
+
+	private void enqueue(String path) {
+		synchronized (fQueue) {
+			fQueue.add(path);
+		}
+		fIndexJob.schedule(100);
+	}
+
+	/**
+	 * @param trigrams the trigrams every match contains, see {@link TrigramIndex#trigrams(String)}
+	 * @return false if the file cannot contain a match
+	 */
+	public boolean mayContain(IFile file, int[] trigrams) {
+		return fIndex.mayContain(file.getFullPath().toString(), file.getLocalTimeStamp(), trigrams);
+	}
+
+	/**
+	 * @return the content of a text file or null if the file is too large, binary
+	 * or cannot be read
+	 */
+	public static CharSequence readText(IFile file) throws CoreException {
+		URI location = file.getLocationURI();
+		if (location == null)
+			return null;
+		IFileInfo info = EFS.getStore(location).fetchInfo();
+		if (!info.exists() || info.getLength() > MAX_FILE_SIZE)
+			return null;
+		StringBuilder text = new StringBuilder();
+		InputStream in = file.getContents(true);
+		try {
+			Reader reader = new InputStreamReader(in, file.getCharset());
+			char[] buffer = new char[8192];
+			int n;
+			while ((n = reader.read(buffer)) > 0) {
+				for (int i = 0; i < n; i++) {
+					// a binary file
+					if (buffer[i] == 0)
+						return null;
+				}
+				text.append(buffer, 0, n);
+			}
+		} catch (IOException e) {
+			return null;
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+		return text;
+	}
+
+	/**
+	 * Indexes the next batch of queued files
+	 * @return false if the queue is empty
+	 */
+	private boolean indexBatch() {
+		List<String> paths = new ArrayList<String>();
+		synchronized (fQueue) {
+			for (Iterator<String> it = fQueue.iterator(); it.hasNext() && paths.size() < BATCH_SIZE;) {
+				paths.add(it.next());
+				it.remove();
+			}
+		}
+		if (paths.isEmpty())
+			return false;
+		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		// the files are read without holding the lock, a save does not have to wait
+		TrigramIndex index = fIndex;
+		Map<String, TrigramIndex.Signature> changes = new HashMap<String, TrigramIndex.Signature>();
+		for (String path : paths) {
+			if (path.endsWith("/")) {
+				checkFolder(index, path);
+				continue;
+			}
+			IFile file = root.getFile(new Path(path));
+			long stamp = file.getLocalTimeStamp();
+			if (!file.exists()) {
+				if (index.getStamp(path) != TrigramIndex.UNKNOWN)
+					changes.put(path, null);
+			} else if (stamp != index.getStamp(path)) {
+				try {
+					changes.put(path, TrigramIndex.signature(path, stamp, readText(file)));
+				} catch (CoreException e) {
+					// e.g. out of sync with the file system, it will be indexed when it is refreshed
+				}
+			}
+		}
+		if (changes.isEmpty())
+			return true;
+		synchronized (fUpdateLock) {
+			index = fIndex.withChanges(changes);
+			if (index.needsCompaction())
+				index = index.compact();
+			fIndex = index;
+			fDirty = true;
+		}
+		return true;
+	}
+
+	/**
+	 * Queues the files below the folder that are not indexed or have changed. Files
+	 * that do not exist anymore are queued as well, to be removed.
+	 */
+	private void checkFolder(TrigramIndex index, String folder) {
+		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		PathIndex files = WorkspacePathIndex.getDefault().getIndex();
+		List<String> stale = new ArrayList<String>();
+		PathCursor cursor = files.cursor(folder);
+		while (cursor.next()) {
+			String path = cursor.path().toString();
+			if (!path.startsWith(folder))
+				break;
+			if (index.getStamp(path) != root.getFile(new Path(path)).getLocalTimeStamp())
+				stale.add(path);
+		}
+		cursor = index.cursor();
+		while (cursor.next()) {
+			CharSequence path = cursor.path();
+			if (path.toString().startsWith(folder) && !files.contains(path))
+				stale.add(path.toString());
+		}
+		synchronized (fQueue) {
+			fQueue.addAll(stale);
+		}
+	}
+
+	private void load() {
+		File[] files = fDirectory.listFiles();
+		if (files == null)
+			return;
+		File newest = null;
+		for (File file : files) {
+			int number = getFileNumber(file);
+			if (number > fFileNumber) {
+				fFileNumber = number;
+				newest = file;
+			}
+		}
+		if (newest == null)
+			return;
+		try {
+			fIndex = read(newest);
+		} catch (IOException e) {
+			Activator.log("Cannot read the content index " + newest, e);
+		} catch (RuntimeException e) {
+			// a corrupt file is like a missing index
+			Activator.log("Ignoring the corrupt content index " + newest, e);
+		}
+	}
+
+	/**
+	 * @return the index with the signatures mapped from the file
+	 */
+	private static TrigramIndex read(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = in.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+				throw new IOException("Not an index file: " + file);
+			return TrigramIndex.read(buffer);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return the number of an index file or 0
+	 */
+	private static int getFileNumber(File file) {
+		String name = file.getName();
+		if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX))
+			return 0;
+		try {
+			return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Writes the index to a new file and deletes the older files. The current
+	 * file cannot be replaced, it might be mapped.
+	 */
+	private void save() {
+		synchronized (fUpdateLock) {
+			if (!fDirty)
+				return;
+			TrigramIndex index = fIndex.compact();
+			fIndex = index;
+			fDirectory.mkdirs();
+			File file = new File(fDirectory, PREFIX + (fFileNumber + 1) + SUFFIX);
+			File tmp = new File(fDirectory, file.getName() + ".tmp");
+			try {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+				try {
+					out.writeInt(MAGIC);
+					out.writeInt(VERSION);
+					index.write(out);
+				} finally {
+					out.close();
+				}
+				if (!tmp.renameTo(file))
+					throw new IOException("Cannot rename " + tmp + " to " + file);
+			} catch (IOException e) {
+				Activator.log("Cannot write the content index " + file, e);
+				tmp.delete();
+				return;
+			}
+			fFileNumber++;
+			fDirty = false;
+			try {
+				// the compacted signatures are on the heap, map them from the file instead
+				fIndex = read(file);
+			} catch (IOException e) {
+				Activator.log("Cannot read the content index " + file, e);
+			}
+			File[] files = fDirectory.listFiles();
+			for (File old : files == null ? new File[0] : files) {
+				// might fail while the file is still mapped, we try again with the next save
+				if (getFileNumber(old) < fFileNumber)
+					old.delete();
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import gr.scharf.workingsets.internal.query.LiteralAnalysis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the filters that might include a new file. The filters are indexed by 
+ * the file extensions and literals their include lines require, see 
+ * {@link RegExResourceFilter#getExtensions()} and {@link RegExResourceFilter#getLiterals()}.
+ * Filters that have an include line without such a requirement are always candidates.
+ */
+public class DispatchIndex {
+	private final Map<String, List<RegExResourceFilter>> fByExtension = new HashMap<String, List<RegExResourceFilter>>();
+	private final Map<String, List<RegExResourceFilter>> fByLiteral = new HashMap<String, List<RegExResourceFilter>>();
+	private final List<RegExResourceFilter> fUnconstrained = new ArrayList<RegExResourceFilter>();
+
+	public DispatchIndex(Collection<RegExResourceFilter> filters) {
+		for (RegExResourceFilter filter : filters) {
+			if (filter.isUnconstrained()) {
+				fUnconstrained.add(filter);
+				continue;
+			}
+			for (String extension : filter.getExtensions()) {
+				put(fByExtension, extension, filter);
+			}
+			for (String literal : filter.getLiterals()) {
+				put(fByLiteral, literal, filter);
+			}
+		}
+	}
+
+	private static void put(Map<String, List<RegExResourceFilter>> map, String key, RegExResourceFilter filter) {
+		List<RegExResourceFilter> list = map.get(key);
+		if (list == null) {
+			list = new ArrayList<RegExResourceFilter>(2);
+			map.put(key, list);
+		}
+		list.add(filter);
+	}
+
+	/**
+	 * @param path the full path of a file
+	 * @return the filters that might include the file
+	 */
+	public Collection<RegExResourceFilter> getCandidates(String path) {
+		if (fByExtension.isEmpty() && fByLiteral.isEmpty())
+			return fUnconstrained;
+		Set<RegExResourceFilter> result = Collections.newSetFromMap(new IdentityHashMap<RegExResourceFilter, Boolean>());
+		result.addAll(fUnconstrained);
+		String lowerCasePath = LiteralAnalysis.toLowerCase(path);
+		int dot = lowerCasePath.lastIndexOf('.');
+		if (dot > lowerCasePath.lastIndexOf('/')) {
+			List<RegExResourceFilter> filters = fByExtension.get(lowerCasePath.substring(dot + 1));
+			if (filters != null)
+				result.addAll(filters);
+		}
+		for (Map.Entry<String, List<RegExResourceFilter>> entry : fByLiteral.entrySet()) {
+			if (lowerCasePath.contains(entry.getKey()))
+				result.addAll(entry.getValue());
+		}
+		return result;
+	}
+}
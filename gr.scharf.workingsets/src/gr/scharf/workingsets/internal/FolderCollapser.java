@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import gr.scharf.workingsets.internal.query.PathIndex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Computes the elements of a working set with the option <code>#!collapse</code>:
+ * a folder (or project) all of whose files are members is an element instead of its
+ * files. The membership itself stays a set of files, only the elements given to
+ * the workbench are collapsed.
+ * <p>
+ * The number of members below each folder is updated with each change. A folder
+ * is compared with the number of files the {@link PathIndex} has below it when
+ * its count has changed or when a file that is not a member has been added or
+ * removed below it, see {@link #fileChanged(IPath)}. A folder gets expanded as
+ * soon as a file that does not match appears.
+ */
+class FolderCollapser {
+	private static class Folder {
+		final IPath fPath;
+		final Folder fParent;
+		/**
+		 * The number of members in the folder and its subfolders
+		 */
+		int fMembers;
+		/**
+		 * All files in the folder and its subfolders are members
+		 */
+		boolean fFull;
+		/**
+		 * The folder has to be compared with the index again
+		 */
+		boolean fDirty = true;
+		/**
+		 * The value of {@link FolderCollapser#fGeneration} when {@link #fCovered} was computed
+		 */
+		int fGeneration;
+		boolean fCovered;
+		IContainer fHandle;
+
+		Folder(IPath path, Folder parent) {
+			fPath = path;
+			fParent = parent;
+		}
+	}
+
+	/**
+	 * The folders with at least one member
+	 */
+	private final Map<IPath, Folder> fFolders = new HashMap<IPath, Folder>();
+	private final List<Folder> fDirty = new ArrayList<Folder>();
+	private int fGeneration;
+
+	private Folder getFolder(IPath path) {
+		Folder folder = fFolders.get(path);
+		if (folder == null) {
+			folder = new Folder(path, path.segmentCount() > 1 ? getFolder(path.removeLastSegments(1)) : null);
+			fFolders.put(path, folder);
+			fDirty.add(folder);
+		}
+		return folder;
+	}
+
+	private void setDirty(Folder folder) {
+		if (!folder.fDirty) {
+			folder.fDirty = true;
+			fDirty.add(folder);
+		}
+	}
+
+	/**
+	 * Starts over with the members of a new membership. The folders keep their state
+	 * until they are compared with the index, so that reloading the same members
+	 * does not change the elements.
+	 */
+	void reset(Collection<IAdaptable> members) {
+		Map<IPath, Folder> old = new HashMap<IPath, Folder>(fFolders);
+		fFolders.clear();
+		fDirty.clear();
+		for (IAdaptable element : members) {
+			if (element instanceof IResource)
+				added((IResource) element);
+		}
+		for (Folder folder : fFolders.values()) {
+			Folder oldFolder = old.get(folder.fPath);
+			if (oldFolder != null) {
+				folder.fFull = oldFolder.fFull;
+				folder.fHandle = oldFolder.fHandle;
+			}
+		}
+	}
+
+	void added(IResource resource) {
+		IPath path = resource.getFullPath();
+		if (path.segmentCount() < 2)
+			return;
+		for (Folder folder = getFolder(path.removeLastSegments(1)); folder != null; folder = folder.fParent) {
+			folder.fMembers++;
+			setDirty(folder);
+		}
+	}
+
+	void removed(IResource resource) {
+		IPath path = resource.getFullPath();
+		if (path.segmentCount() < 2)
+			return;
+		for (Folder folder = fFolders.get(path.removeLastSegments(1)); folder != null; folder = folder.fParent) {
+			if (--folder.fMembers == 0) {
+				// its subfolders have been removed before
+				fFolders.remove(folder.fPath);
+				folder.fFull = false;
+			} else {
+				setDirty(folder);
+			}
+		}
+	}
+
+	/**
+	 * A file or container has been added or removed without changing the
+	 * membership, the folders above it might no longer be (or now be) full.
+	 * @param path the full path of the resource
+	 */
+	void fileChanged(IPath path) {
+		for (IPath parent = path.removeLastSegments(1); parent.segmentCount() > 0; parent = parent.removeLastSegments(1)) {
+			Folder folder = fFolders.get(parent);
+			if (folder != null) {
+				for (; folder != null; folder = folder.fParent) {
+					setDirty(folder);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return true if folders have to be compared with the index
+	 */
+	boolean needsUpdate() {
+		return !fDirty.isEmpty();
+	}
+
+	/**
+	 * Compares the changed folders with the index
+	 * @return true if a folder has become full or is no longer full
+	 */
+	boolean update(PathIndex index) {
+		boolean changed = false;
+		for (Folder folder : fDirty) {
+			folder.fDirty = false;
+			if (fFolders.get(folder.fPath) != folder)
+				// removed in the meantime
+				continue;
+			boolean full = folder.fMembers == index.count(folder.fPath.toString() + '/');
+			if (full != folder.fFull) {
+				folder.fFull = full;
+				changed = true;
+			}
+		}
+		fDirty.clear();
+		return changed;
+	}
+
+	/**
+	 * @return true if the folder or one of its parents is full
+	 */
+	private boolean isCovered(Folder folder) {
+		if (folder == null)
+			return false;
+		if (folder.fGeneration != fGeneration) {
+			folder.fCovered = folder.fFull || isCovered(folder.fParent);
+			folder.fGeneration = fGeneration;
+		}
+		return folder.fCovered;
+	}
+
+	/**
+	 * @param members the members after {@link #update(PathIndex)}
+	 * @return the full folders whose parents are not full and the members outside of them
+	 */
+	IAdaptable[] getElements(IAdaptable[] members) {
+		fGeneration++;
+		List<IAdaptable> elements = new ArrayList<IAdaptable>();
+		IWorkspaceRoot root = null;
+		for (Folder folder : fFolders.values()) {
+			if (folder.fFull && !isCovered(folder.fParent)) {
+				if (folder.fHandle == null) {
+					if (root == null)
+						root = ResourcesPlugin.getWorkspace().getRoot();
+					folder.fHandle = folder.fPath.segmentCount() == 1 ? root.getProject(folder.fPath.segment(0))
+							: root.getFolder(folder.fPath);
+				}
+				elements.add(folder.fHandle);
+			}
+		}
+		if (elements.isEmpty())
+			return members;
+		for (IAdaptable element : members) {
+			if (element instanceof IResource) {
+				IPath path = ((IResource) element).getFullPath();
+				if (path.segmentCount() > 1 && isCovered(fFolders.get(path.removeLastSegments(1))))
+					continue;
+			}
+			elements.add(element);
+		}
+		return elements.toArray(new IAdaptable[elements.size()]);
+	}
+}
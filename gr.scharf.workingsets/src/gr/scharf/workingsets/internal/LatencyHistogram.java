@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import java.util.Arrays;
+
+/**
+ * Counts durations in logarithmic buckets (four per power of two, starting at
+ * one microsecond) to report percentiles with an error of less than 25%
+ * in constant space.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKETS = 4;
+	private static final int SUB_BITS = 2;
+	private final long[] fCounts = new long[64 * SUB_BUCKETS];
+	private long fCount;
+	private long fTotal;
+	private long fMax;
+
+	/**
+	 * @param nanos a duration in nanoseconds
+	 */
+	public synchronized void record(long nanos) {
+		fCounts[bucket(Math.max(0, nanos) / 1000)]++;
+		fCount++;
+		fTotal += nanos;
+		fMax = Math.max(fMax, nanos);
+	}
+
+	private static int bucket(long micros) {
+		if (micros < SUB_BUCKETS)
+			return (int) micros;
+		int log = 63 - Long.numberOfLeadingZeros(micros);
+		int sub = (int) (micros >>> (log - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (log - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @return the largest duration (in microseconds) of a bucket
+	 */
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket + 1;
+		int log = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (log - SUB_BITS)) - 1;
+	}
+
+	/**
+	 * @param percentile e.g. 99
+	 * @return the duration (in milliseconds) the given percentage of the recorded durations
+	 * do not exceed
+	 */
+	public synchronized double getPercentile(double percentile) {
+		if (fCount == 0)
+			return 0;
+		long rank = (long) Math.ceil(fCount * percentile / 100);
+		long count = 0;
+		for (int i = 0; i < fCounts.length; i++) {
+			count += fCounts[i];
+			if (count >= rank)
+				return Math.min(upperBound(i) / 1000.0, getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * @return the longest duration in milliseconds
+	 */
+	public synchronized double getMax() {
+		return fMax / 1000000.0;
+	}
+
+	/**
+	 * @return the sum of the durations in milliseconds
+	 */
+	public synchronized double getTotal() {
+		return fTotal / 1000000.0;
+	}
+
+	public synchronized long getCount() {
+		return fCount;
+	}
+
+	public synchronized void reset() {
+		Arrays.fill(fCounts, 0);
+		fCount = 0;
+		fTotal = 0;
+		fMax = 0;
+	}
+}
@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import gr.scharf.workingsets.internal.query.PathTable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores the membership of the query working sets in the state location of the
+ * plug-in, one file per query named by a hash of the query. The files are written
+ * when the workspace is saved and contain the save number, so that on startup
+ * a cached membership can be trusted if it was written by the last save
+ * (the changes since then are replayed from the saved state).
+ * <p>
+ * The files are mapped when they are read and cannot be replaced while they
+ * are mapped (on Windows). Like the {@link ContentIndex} each write creates a
+ * new generation of the file (<code>hash-generation.members</code>) and the
+ * older generations are deleted when they are no longer mapped.
+ */
+public class MembershipCache {
+	private static final int MAGIC = 0x51575343; // QWSC
+	private static final int VERSION = 1;
+	private static final String SUFFIX = ".members";
+
+	private final File fDirectory;
+	/**
+	 * The save number of the last save the plug-in participated in or 0
+	 */
+	private final int fSaveNumber;
+
+	/**
+	 * The membership of a query read from the cache
+	 */
+	public static class Entry {
+		private final int fSaveNumber;
+		private final PathTable fMembers;
+		private final boolean fCurrent;
+
+		Entry(int saveNumber, PathTable members, boolean current) {
+			fSaveNumber = saveNumber;
+			fMembers = members;
+			fCurrent = current;
+		}
+
+		/**
+		 * @return true if the entry has been written by the last save
+		 */
+		public boolean isCurrent() {
+			return fCurrent;
+		}
+
+		public int getSaveNumber() {
+			return fSaveNumber;
+		}
+
+		/**
+		 * @return the full paths of the members
+		 */
+		public PathTable getMembers() {
+			return fMembers;
+		}
+	}
+
+	/**
+	 * @param saveNumber the save number of the saved state of the plug-in or 0
+	 */
+	public MembershipCache(File directory, int saveNumber) {
+		fDirectory = directory;
+		fSaveNumber = saveNumber;
+	}
+
+	/**
+	 * @return the cached membership or null if the query is not in the cache
+	 */
+	public Entry read(String query) {
+		String name = getName(query);
+		int generation = getGeneration(name);
+		if (generation == 0)
+			return null;
+		File file = getFile(name, generation);
+		try {
+			RandomAccessFile in = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = in.getChannel();
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+					return null;
+				int saveNumber = buffer.getInt();
+				if (!query.equals(readString(buffer)))
+					return null;
+				PathTable members = PathTable.read(buffer);
+				return new Entry(saveNumber, members, saveNumber != 0 && saveNumber == fSaveNumber);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			Activator.log("Cannot read the cached membership " + file, e);
+		} catch (RuntimeException e) {
+			// a corrupt file is like a missing entry
+			Activator.log("Ignoring the corrupt cached membership " + file, e);
+		}
+		return null;
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		char[] chars = new char[buffer.getInt()];
+		buffer.asCharBuffer().get(chars);
+		buffer.position(buffer.position() + 2 * chars.length);
+		return new String(chars);
+	}
+
+	/**
+	 * Writes the membership of a query to a new generation of its file, the older
+	 * generations are deleted unless they are still mapped.
+	 * @param members the full paths of the members
+	 */
+	public void write(String query, PathTable members, int saveNumber) throws IOException {
+		fDirectory.mkdirs();
+		String name = getName(query);
+		int generation = getGeneration(name) + 1;
+		File file = getFile(name, generation);
+		File tmp = new File(fDirectory, file.getName() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(saveNumber);
+			out.writeInt(query.length());
+			out.writeChars(query);
+			members.write(out);
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(file)) {
+			tmp.delete();
+			throw new IOException("Cannot rename " + tmp + " to " + file);
+		}
+		File[] files = fDirectory.listFiles();
+		for (File old : files == null ? new File[0] : files) {
+			// might fail while the file is still mapped, we try again with the next save
+			if (name.equals(getName(old)) && getGeneration(old) < generation)
+				old.delete();
+		}
+	}
+
+	/**
+	 * Deletes the entries of all queries but the given ones and the older generations
+	 */
+	public void retain(Set<String> queries) {
+		File[] files = fDirectory.listFiles();
+		if (files == null)
+			return;
+		Map<String, Integer> generations = new HashMap<String, Integer>();
+		for (String query : queries) {
+			generations.put(getName(query), 0);
+		}
+		for (File file : files) {
+			String name = getName(file);
+			Integer newest = generations.get(name);
+			if (newest != null && getGeneration(file) > newest.intValue())
+				generations.put(name, getGeneration(file));
+		}
+		for (File file : files) {
+			Integer newest = generations.get(getName(file));
+			if (newest == null || getGeneration(file) < newest.intValue())
+				file.delete();
+		}
+	}
+
+	private File getFile(String name, int generation) {
+		return new File(fDirectory, name + '-' + generation + SUFFIX);
+	}
+
+	/**
+	 * @return the newest generation of the file of a query or 0 if there is none
+	 */
+	private int getGeneration(String name) {
+		File[] files = fDirectory.listFiles();
+		int newest = 0;
+		for (File file : files == null ? new File[0] : files) {
+			if (name.equals(getName(file)))
+				newest = Math.max(newest, getGeneration(file));
+		}
+		return newest;
+	}
+
+	/**
+	 * @return the hash of the query of a cache file or null if it is not a cache file
+	 */
+	private static String getName(File file) {
+		String name = file.getName();
+		int dash = name.lastIndexOf('-');
+		if (dash < 0 || !name.endsWith(SUFFIX))
+			return null;
+		return name.substring(0, dash);
+	}
+
+	/**
+	 * @return the generation of a cache file or 0
+	 */
+	private static int getGeneration(File file) {
+		String name = file.getName();
+		int dash = name.lastIndexOf('-');
+		if (dash < 0 || !name.endsWith(SUFFIX))
+			return 0;
+		try {
+			return Integer.parseInt(name.substring(dash + 1, name.length() - SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @return the hash of the query
+	 */
+	private static String getName(String query) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] hash = digest.digest(query.getBytes("UTF-8"));
+			StringBuilder name = new StringBuilder();
+			for (byte b : hash) {
+				name.append(Character.forDigit((b >> 4) & 0xf, 16));
+				name.append(Character.forDigit(b & 0xf, 16));
+			}
+			return name.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import java.lang.reflect.Array;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * The members of a query working set partitioned by project. The members of
+ * a closed or deleted project are dropped without looking at the members of 
+ * the other projects, the same holds for the members below a folder.
+ * <p>
+ * The resources are stored as their ids in the {@link ResourceDictionary}, a 
+ * member takes a few bytes in each working set and its handle is shared by all
+ * working sets. The ids have to be given back with {@link #clear()} or
+ * {@link #release(MembershipSet)} before the set is dropped. The ids of a 
+ * closed project are given back later by {@link #releaseDropped()}.
+ * <p>
+ * The set is changed by the update job only, other threads may call
+ * {@link #contains(Object)} and {@link #size()} at any time. The iterator 
+ * must only be used by the thread changing the set.
+ */
+class MembershipSet extends AbstractSet<IAdaptable> {
+	private final ResourceDictionary fDictionary = ResourceDictionary.getDefault();
+	/**
+	 * The ids of the members by the name of their project
+	 */
+	private final Map<String, IntSet> fPartitions = new HashMap<String, IntSet>();
+	/**
+	 * The elements that are not resources
+	 */
+	private final Set<IAdaptable> fOthers = new HashSet<IAdaptable>();
+	/**
+	 * The partitions of the projects removed by {@link #removeAll(IPath, Collection)}
+	 * whose ids have not been released yet
+	 */
+	private final List<IntSet> fDropped = new ArrayList<IntSet>();
+	private volatile int fSize;
+	/**
+	 * The set that replaced this set, see {@link #release(MembershipSet)}
+	 */
+	private volatile MembershipSet fSuccessor;
+
+	private static String getProject(IResource resource) {
+		IPath path = resource.getFullPath();
+		return path.segmentCount() == 0 ? "" : path.segment(0);
+	}
+
+	@Override
+	public synchronized boolean add(IAdaptable element) {
+		if (!(element instanceof IResource)) {
+			if (!fOthers.add(element))
+				return false;
+			fSize++;
+			return true;
+		}
+		IResource resource = (IResource) element;
+		String project = getProject(resource);
+		IntSet partition = fPartitions.get(project);
+		if (partition == null) {
+			partition = new IntSet();
+			fPartitions.put(project, partition);
+		}
+		int id = fDictionary.acquire(resource);
+		if (!partition.add(id)) {
+			fDictionary.release(id);
+			return false;
+		}
+		fSize++;
+		return true;
+	}
+
+	@Override
+	public synchronized boolean remove(Object element) {
+		if (!(element instanceof IResource)) {
+			if (!fOthers.remove(element))
+				return false;
+			fSize--;
+			return true;
+		}
+		int id = fDictionary.find(element);
+		if (id == 0)
+			return false;
+		String project = getProject((IResource) element);
+		IntSet partition = fPartitions.get(project);
+		if (partition == null || !partition.remove(id))
+			return false;
+		if (partition.size() == 0)
+			fPartitions.remove(project);
+		fDictionary.release(id);
+		fSize--;
+		return true;
+	}
+
+	@Override
+	public synchronized boolean contains(Object element) {
+		if (fSuccessor != null)
+			return fSuccessor.contains(element);
+		if (!(element instanceof IResource))
+			return fOthers.contains(element);
+		int id = fDictionary.find(element);
+		if (id == 0)
+			return false;
+		IntSet partition = fPartitions.get(getProject((IResource) element));
+		return partition != null && partition.contains(id);
+	}
+
+	@Override
+	public int size() {
+		MembershipSet successor = fSuccessor;
+		return successor != null ? successor.size() : fSize;
+	}
+
+	/**
+	 * Removes all members and releases their ids
+	 */
+	@Override
+	public synchronized void clear() {
+		for (IntSet partition : fPartitions.values()) {
+			for (int id : partition.toArray()) {
+				fDictionary.release(id);
+			}
+		}
+		fPartitions.clear();
+		fOthers.clear();
+		fSize = 0;
+		releaseDropped();
+	}
+
+	/**
+	 * Releases the ids of the projects that have been removed, called after the 
+	 * batch that removed them
+	 */
+	public synchronized void releaseDropped() {
+		for (IntSet partition : fDropped) {
+			for (int id : partition.toArray()) {
+				fDictionary.release(id);
+			}
+		}
+		fDropped.clear();
+	}
+
+	/**
+	 * Releases the members of a set that has been replaced. Threads that still
+	 * use the set see the members of the successor.
+	 * @param successor the set replacing this set
+	 */
+	public synchronized void release(MembershipSet successor) {
+		fSuccessor = successor;
+		clear();
+	}
+
+	/**
+	 * Removes the members below a container
+	 * @param container the full path of a project or folder
+	 * @param removed collects the removed members, may be null
+	 * @return the number of members removed
+	 */
+	public synchronized int removeAll(IPath container, Collection<? super IAdaptable> removed) {
+		if (container.segmentCount() == 0) {
+			int count = fSize;
+			if (removed != null)
+				removed.addAll(this);
+			clear();
+			return count;
+		}
+		String project = container.segment(0);
+		IntSet partition = container.segmentCount() == 1 ? fPartitions.remove(project) : fPartitions.get(project);
+		if (partition == null)
+			return 0;
+		if (container.segmentCount() == 1) {
+			// a closed project is dropped at once, its ids are released after the batch
+			fDropped.add(partition);
+			int count = partition.size();
+			if (removed != null) {
+				IResource[] resources = new IResource[count];
+				fDictionary.get(partition.toArray(), resources, 0);
+				for (IResource resource : resources) {
+					removed.add(resource);
+				}
+			}
+			fSize -= count;
+			return count;
+		}
+		int[] ids = partition.toArray();
+		IResource[] resources = new IResource[ids.length];
+		fDictionary.get(ids, resources, 0);
+		int count = 0;
+		for (int i = 0; i < ids.length; i++) {
+			if (!container.isPrefixOf(resources[i].getFullPath()))
+				continue;
+			partition.remove(ids[i]);
+			if (removed != null)
+				removed.add(resources[i]);
+			fDictionary.release(ids[i]);
+			count++;
+		}
+		if (partition.size() == 0)
+			fPartitions.remove(project);
+		fSize -= count;
+		return count;
+	}
+
+	/**
+	 * Fills the array without an iterator, the working set gets its elements as an array
+	 * after each update
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public synchronized <T> T[] toArray(T[] array) {
+		if (array.length < fSize)
+			array = (T[]) Array.newInstance(array.getClass().getComponentType(), fSize);
+		Object[] elements = array;
+		int length = 0;
+		for (IntSet partition : fPartitions.values()) {
+			int[] ids = partition.toArray();
+			fDictionary.get(ids, elements, length);
+			length += ids.length;
+		}
+		for (IAdaptable element : fOthers) {
+			elements[length++] = element;
+		}
+		if (elements.length > length)
+			elements[length] = null;
+		return array;
+	}
+
+	@Override
+	public Object[] toArray() {
+		return toArray(new Object[fSize]);
+	}
+
+	/**
+	 * Iterates over a copy of the members
+	 */
+	@Override
+	public Iterator<IAdaptable> iterator() {
+		final IAdaptable[] elements = toArray(new IAdaptable[fSize]);
+		return new Iterator<IAdaptable>() {
+			private int fNext;
+			private IAdaptable fLast;
+
+			public boolean hasNext() {
+				return fNext < elements.length && elements[fNext] != null;
+			}
+
+			public IAdaptable next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				fLast = elements[fNext++];
+				return fLast;
+			}
+
+			public void remove() {
+				if (fLast == null)
+					throw new IllegalStateException();
+				MembershipSet.this.remove(fLast);
+				fLast = null;
+			}
+		};
+	}
+}
@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import gr.scharf.workingsets.engine.QueryMatcher;
+import gr.scharf.workingsets.internal.query.LiteralAnalysis;
+import gr.scharf.workingsets.internal.query.MultiPatternAutomaton;
+import gr.scharf.workingsets.internal.query.Query;
+import gr.scharf.workingsets.internal.query.RegexParser;
+import gr.scharf.workingsets.internal.query.TrigramIndex;
+import gr.scharf.workingsets.internal.query.UnsupportedRegexException;
+
+import java.net.URI;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.content.IContentDescription;
+import org.eclipse.core.runtime.content.IContentType;
+
+/**
+ * A predicate on the attributes of a file, the <code>@</code> lines of a query:
+ * <ul>
+ * <li><code>@derived</code>, <code>@hidden</code>, <code>@team-private</code>, <code>@linked</code></li>
+ * <li><code>@modified&lt;7d</code> (modified within the last 7 days), <code>@modified&gt;1h</code>
+ * (units <code>s m h d w</code>, default days)</li>
+ * <li><code>@size&gt;100k</code>, <code>@size&lt;1m</code> (units <code>k m g</code>)</li>
+ * <li><code>@content-type=org.eclipse.core.runtime.xml</code> (the content type or a subtype)</li>
+ * <li><code>content:TODO-\d+</code> (a regular expression found in the content of the file,
+ * see {@link ContentIndex})</li>
+ * </ul>
+ * The predicates differ a lot in what they cost: the flags are kept in memory by
+ * the workspace, the size needs a file system call and the content type might
+ * read the file. Therefore the filter evaluates them in the order of their {@link #getCost()}
+ * and only for files whose path is matched by the query.
+ */
+public abstract class MetadataMatcher implements Comparable<MetadataMatcher> {
+	/**
+	 * Flags of the resource tree, in memory
+	 */
+	public static final int COST_FLAGS = 1;
+	/**
+	 * Time stamps of the resource tree, in memory
+	 */
+	public static final int COST_TIMESTAMP = 2;
+	/**
+	 * Asks the file system
+	 */
+	public static final int COST_FILE_SYSTEM = 10;
+	/**
+	 * Might read the content of the file
+	 */
+	public static final int COST_CONTENT = 100;
+	/**
+	 * Searches the content of the file
+	 */
+	public static final int COST_CONTENT_SEARCH = 1000;
+
+	private static final int DERIVED = 0;
+	private static final int HIDDEN = 1;
+	private static final int TEAM_PRIVATE = 2;
+	private static final int LINKED = 3;
+	private static final long DAY = 24 * 3600 * 1000L;
+
+	private static final Pattern SYNTAX = Pattern.compile("([a-z-]+)\\s*(?:([<>=])\\s*(\\S+))?");
+	private static final Pattern AMOUNT = Pattern.compile("(\\d+)([a-z]?)");
+
+	private final String fText;
+	private final boolean fExclusion;
+	private final int fCost;
+
+	protected MetadataMatcher(String text, boolean exclusion, int cost) {
+		fText = text;
+		fExclusion = exclusion;
+		fCost = cost;
+	}
+
+	/**
+	 * @param text the predicate without the <code>@</code>
+	 * @param exclusion the files matching the predicate are excluded
+	 * @throws PatternSyntaxException if the predicate is unknown or malformed
+	 */
+	public static MetadataMatcher parse(String text, boolean exclusion) {
+		if (text.startsWith(Query.CONTENT_PREFIX))
+			return new ContentMatcher(text, exclusion, text.substring(Query.CONTENT_PREFIX.length()));
+		Matcher m = SYNTAX.matcher(text);
+		if (!m.matches())
+			throw new PatternSyntaxException("Malformed predicate", text, 0);
+		String name = m.group(1);
+		String op = m.group(2);
+		String value = m.group(3);
+		if (op == null) {
+			if ("derived".equals(name))
+				return new FlagMatcher(text, exclusion, DERIVED);
+			if ("hidden".equals(name))
+				return new FlagMatcher(text, exclusion, HIDDEN);
+			if ("team-private".equals(name))
+				return new FlagMatcher(text, exclusion, TEAM_PRIVATE);
+			if ("linked".equals(name))
+				return new FlagMatcher(text, exclusion, LINKED);
+		} else if ("modified".equals(name) && !"=".equals(op)) {
+			return new ModifiedMatcher(text, exclusion, "<".equals(op), parseAmount(text, value, "smhdw",
+					new long[] { 1000L, 60 * 1000L, 3600 * 1000L, DAY, 7 * DAY }, DAY));
+		} else if ("size".equals(name) && !"=".equals(op)) {
+			return new SizeMatcher(text, exclusion, "<".equals(op), parseAmount(text, value, "kmg",
+					new long[] { 1L << 10, 1L << 20, 1L << 30 }, 1));
+		} else if ("content-type".equals(name) && "=".equals(op)) {
+			return new ContentTypeMatcher(text, exclusion, value);
+		}
+		throw new PatternSyntaxException("Unknown predicate", text, 0);
+	}
+
+	/**
+	 * @param units the unit characters with their factors
+	 * @param factor the factor of an amount without unit
+	 */
+	private static long parseAmount(String text, String value, String units, long[] factors, long factor) {
+		Matcher m = AMOUNT.matcher(value.toLowerCase());
+		if (!m.matches())
+			throw new PatternSyntaxException("Malformed amount", text, text.indexOf(value));
+		long amount = Long.parseLong(m.group(1));
+		String unit = m.group(2);
+		if (unit.length() == 0)
+			return amount * factor;
+		int i = units.indexOf(unit);
+		if (i < 0)
+			throw new PatternSyntaxException("Unknown unit '" + unit + "', use one of '" + units + "'", text, text.indexOf(value));
+		return amount * factors[i];
+	}
+
+	/**
+	 * @return true if the resource is accepted by this line of the query
+	 */
+	public boolean accepts(IResource resource) {
+		try {
+			return matches(resource) != fExclusion;
+		} catch (CoreException e) {
+			// e.g. the file has been deleted meanwhile
+			return fExclusion;
+		}
+	}
+
+	protected abstract boolean matches(IResource resource) throws CoreException;
+
+	/**
+	 * @return a relative measure of the cost of the evaluation, see {@link #COST_FLAGS}
+	 */
+	public int getCost() {
+		return fCost;
+	}
+
+	/**
+	 * @return true if the result changes with time (without a change of the file)
+	 */
+	public boolean isTimeDependent() {
+		return false;
+	}
+
+	public int compareTo(MetadataMatcher other) {
+		return fCost < other.fCost ? -1 : fCost == other.fCost ? 0 : 1;
+	}
+
+	@Override
+	public String toString() {
+		return (fExclusion ? "-@" : "@") + fText;
+	}
+
+	static class FlagMatcher extends MetadataMatcher {
+		private final int fFlag;
+
+		FlagMatcher(String text, boolean exclusion, int flag) {
+			super(text, exclusion, COST_FLAGS);
+			fFlag = flag;
+		}
+
+		@Override
+		protected boolean matches(IResource resource) {
+			switch (fFlag) {
+				case HIDDEN:
+					return resource.isHidden();
+				case TEAM_PRIVATE:
+					return resource.isTeamPrivateMember();
+				case LINKED:
+					return resource.isLinked();
+				default:
+					return resource.isDerived();
+			}
+		}
+	}
+
+	static class ModifiedMatcher extends MetadataMatcher {
+		private final boolean fWithin;
+		private final long fAge;
+
+		/**
+		 * @param within true for files modified within the age, false for older files
+		 * @param age in milliseconds
+		 */
+		ModifiedMatcher(String text, boolean exclusion, boolean within, long age) {
+			super(text, exclusion, COST_TIMESTAMP);
+			fWithin = within;
+			fAge = age;
+		}
+
+		@Override
+		protected boolean matches(IResource resource) {
+			// the local time stamp is kept in the resource tree, no need to ask the file system
+			long stamp = resource.getLocalTimeStamp();
+			if (stamp == IResource.NULL_STAMP)
+				return false;
+			boolean within = System.currentTimeMillis() - stamp < fAge;
+			return within == fWithin;
+		}
+
+		@Override
+		public boolean isTimeDependent() {
+			return true;
+		}
+	}
+
+	static class SizeMatcher extends MetadataMatcher {
+		private final boolean fSmaller;
+		private final long fSize;
+
+		SizeMatcher(String text, boolean exclusion, boolean smaller, long size) {
+			super(text, exclusion, COST_FILE_SYSTEM);
+			fSmaller = smaller;
+			fSize = size;
+		}
+
+		@Override
+		protected boolean matches(IResource resource) throws CoreException {
+			URI location = resource.getLocationURI();
+			if (location == null)
+				return false;
+			IFileInfo info = EFS.getStore(location).fetchInfo();
+			if (!info.exists())
+				return false;
+			return fSmaller ? info.getLength() < fSize : info.getLength() > fSize;
+		}
+	}
+
+	static class ContentTypeMatcher extends MetadataMatcher {
+		private final String fContentTypeId;
+
+		ContentTypeMatcher(String text, boolean exclusion, String contentTypeId) {
+			super(text, exclusion, COST_CONTENT);
+			fContentTypeId = contentTypeId;
+		}
+
+		@Override
+		protected boolean matches(IResource resource) throws CoreException {
+			if (!(resource instanceof IFile))
+				return false;
+			// the content types are resolved late, they might be contributed by plug-ins that start later
+			IContentType contentType = Platform.getContentTypeManager().getContentType(fContentTypeId);
+			if (contentType == null)
+				return false;
+			IContentDescription description = ((IFile) resource).getContentDescription();
+			return description != null && description.getContentType() != null
+					&& description.getContentType().isKindOf(contentType);
+		}
+	}
+
+	/**
+	 * Searches the content with a {@link MultiPatternAutomaton} in linear time. Expressions
+	 * the automaton does not support and contents with surrogates are searched by the 
+	 * {@link Pattern} through a budget, a {@link gr.scharf.workingsets.engine.BudgetExceededException}
+	 * turns the query off.
+	 */
+	static class ContentMatcher extends MetadataMatcher {
+		/**
+		 * The characters the pattern may read per character of the content 
+		 * (in addition to {@link QueryMatcher#DEFAULT_BUDGET})
+		 */
+		private static final long BUDGET_PER_CHAR = 100;
+		private final Pattern fPattern;
+		/**
+		 * The automaton of the expression or null if it is not supported
+		 */
+		private final MultiPatternAutomaton fAutomaton;
+		/**
+		 * The trigrams of a literal every match contains, empty if there is no such literal
+		 */
+		private final int[] fTrigrams;
+
+		ContentMatcher(String text, boolean exclusion, String regex) {
+			super(text, exclusion, COST_CONTENT_SEARCH);
+			fPattern = Pattern.compile(regex);
+			int[] trigrams;
+			try {
+				trigrams = TrigramIndex.trigrams(LiteralAnalysis.requiredLiteral(RegexParser.parse(regex)));
+			} catch (UnsupportedRegexException e) {
+				trigrams = new int[0];
+			}
+			fTrigrams = trigrams;
+			MultiPatternAutomaton automaton = new MultiPatternAutomaton(new String[] { regex });
+			fAutomaton = automaton.isSupported(0) ? automaton : null;
+		}
+
+		@Override
+		protected boolean matches(IResource resource) throws CoreException {
+			if (!(resource instanceof IFile))
+				return false;
+			IFile file = (IFile) resource;
+			// only read the files the index cannot rule out
+			if (fTrigrams.length > 0 && !ContentIndex.getDefault().mayContain(file, fTrigrams))
+				return false;
+			CharSequence text = ContentIndex.readText(file);
+			if (text == null)
+				return false;
+			if (fAutomaton != null) {
+				int match = fAutomaton.newRun().lastMatch(text);
+				if (match != MultiPatternAutomaton.UNDECIDED)
+					return match == 0;
+			}
+			long budget = QueryMatcher.DEFAULT_BUDGET == 0 ? 0 : QueryMatcher.DEFAULT_BUDGET + BUDGET_PER_CHAR * text.length();
+			QueryMatcher.BudgetedPath budgeted = new QueryMatcher.BudgetedPath(toString(), budget);
+			budgeted.reset(text, file.getFullPath().toString());
+			return fPattern.matcher(budgeted).find();
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import gr.scharf.workingsets.internal.query.PathCursor;
+import gr.scharf.workingsets.internal.query.PathTable;
+
+import java.util.Arrays;
+
+/**
+ * The matches shown in the preview of the {@link RegExWorkingSetPage}. The paths
+ * are kept in sorted order in front coded {@link PathTable}s, one per batch
+ * published while the query is evaluated. The table asks for the paths of
+ * the visible rows only.
+ * <p>
+ * The order by name is computed once (in the background) and kept, so sorting
+ * the table by a column does not compare any paths in the UI thread.
+ */
+class PreviewMatches {
+	static final PreviewMatches EMPTY = new PreviewMatches(new PathTable[0]);
+
+	private final PathTable[] fTables;
+	/**
+	 * The index of the first path of each table
+	 */
+	private final int[] fStarts;
+	private final int fSize;
+	/**
+	 * The indexes of the paths sorted by name or null if not computed yet
+	 */
+	private volatile int[] fNameOrder;
+
+	private PreviewMatches(PathTable[] tables) {
+		fTables = tables;
+		fStarts = new int[tables.length];
+		int size = 0;
+		for (int i = 0; i < tables.length; i++) {
+			fStarts[i] = size;
+			size += tables[i].size();
+		}
+		fSize = size;
+	}
+
+	/**
+	 * @param batch paths that are greater than the paths in this
+	 * @return the matches with the batch appended
+	 */
+	PreviewMatches append(PathTable batch) {
+		if (batch.size() == 0)
+			return this;
+		PathTable[] tables = Arrays.copyOf(fTables, fTables.length + 1);
+		tables[fTables.length] = batch;
+		return new PreviewMatches(tables);
+	}
+
+	int size() {
+		return fSize;
+	}
+
+	/**
+	 * @param index the index in sorted order
+	 */
+	String getPath(int index) {
+		int table = Arrays.binarySearch(fStarts, index);
+		if (table < 0)
+			table = -table - 2;
+		return fTables[table].get(index - fStarts[table]);
+	}
+
+	static String getName(String path) {
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+
+	/**
+	 * @return a cursor over all paths in sorted order
+	 */
+	PathCursor cursor() {
+		return new PathCursor() {
+			private int fTable = -1;
+			private PathTable.Cursor fCursor;
+
+			public boolean next() {
+				while (fCursor == null || !fCursor.next()) {
+					if (++fTable >= fTables.length)
+						return false;
+					fCursor = fTables[fTable].cursor();
+				}
+				return true;
+			}
+
+			public CharSequence path() {
+				return fCursor.path();
+			}
+		};
+	}
+
+	/**
+	 * @return the indexes of the paths sorted by name or null if
+	 * {@link #computeNameOrder()} has not been called yet
+	 */
+	int[] getNameOrder() {
+		return fNameOrder;
+	}
+
+	/**
+	 * Sorts the paths by name, paths with the same name stay sorted by path.
+	 */
+	synchronized void computeNameOrder() {
+		if (fNameOrder != null)
+			return;
+		// the keys are only needed while sorting
+		String[] names = new String[fSize];
+		PathCursor cursor = cursor();
+		for (int i = 0; cursor.next(); i++) {
+			CharSequence path = cursor.path();
+			int start = path.length();
+			while (start > 0 && path.charAt(start - 1) != '/')
+				start--;
+			names[i] = path.subSequence(start, path.length()).toString();
+		}
+		int[] order = new int[fSize];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		sort(order, new int[fSize], 0, fSize, names);
+		fNameOrder = order;
+	}
+
+	/**
+	 * A stable merge sort of the indexes by their keys
+	 */
+	private static void sort(int[] order, int[] tmp, int from, int to, String[] keys) {
+		if (to - from < 2)
+			return;
+		int mid = (from + to) >>> 1;
+		sort(order, tmp, from, mid, keys);
+		sort(order, tmp, mid, to, keys);
+		if (keys[order[mid - 1]].compareTo(keys[order[mid]]) <= 0)
+			return;
+		System.arraycopy(order, from, tmp, from, to - from);
+		for (int i = from, left = from, right = mid; i < to; i++) {
+			if (right >= to || (left < mid && keys[tmp[left]].compareTo(keys[tmp[right]]) <= 0))
+				order[i] = tmp[left++];
+			else
+				order[i] = tmp[right++];
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The counters of a {@link RegExResourceFilter}. They are only incremented by the
+ * thread applying the updates, the other threads read them with JMX.
+ */
+public class QueryStatistics implements QueryStatisticsMXBean {
+	public static final String DOMAIN = Activator.PLUGIN_ID;
+	
+	private final RegExResourceFilter fFilter;
+	private final LatencyHistogram fLatency = new LatencyHistogram();
+	volatile long fBatches;
+	volatile long fChanges;
+	volatile long fMembersAdded;
+	volatile long fMembersRemoved;
+	volatile long fFullEvaluations;
+	volatile long fSetElementsCalls;
+	volatile long fReloads;
+	/**
+	 * The counts of the filter when the statistics were reset
+	 */
+	private volatile long fResourcesReset;
+	private volatile long fExpressionsReset;
+	private ObjectName fName;
+
+	QueryStatistics(RegExResourceFilter filter) {
+		fFilter = filter;
+	}
+
+	void batch(long nanos) {
+		fBatches++;
+		fLatency.record(nanos);
+	}
+
+	/**
+	 * Registers the statistics with the platform MBean server
+	 */
+	public synchronized void register() {
+		if (fName != null)
+			return;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		String name = ObjectName.quote(getName());
+		try {
+			try {
+				fName = server.registerMBean(this, new ObjectName(DOMAIN + ":type=QueryWorkingSet,name=" + name)).getObjectName();
+			} catch (InstanceAlreadyExistsException e) {
+				// two filters for the same working set, e.g. while a working set is re-added
+				fName = server.registerMBean(this, new ObjectName(DOMAIN + ":type=QueryWorkingSet,name=" + name 
+						+ ",id=" + System.identityHashCode(this))).getObjectName();
+			}
+		} catch (JMException e) {
+			Activator.log(e);
+		}
+	}
+
+	public synchronized void unregister() {
+		if (fName == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(fName);
+		} catch (JMException e) {
+			// already gone
+		}
+		fName = null;
+	}
+
+	public String getName() {
+		return fFilter.getWorkingSet() == null ? fFilter.getQuery() : fFilter.getWorkingSet().getName();
+	}
+
+	public String getQuery() {
+		return fFilter.getQuery();
+	}
+
+	public boolean isDisabled() {
+		return fFilter.isDisabled();
+	}
+
+	public int getMembers() {
+		return fFilter.getResult().size();
+	}
+
+	public long getBatches() {
+		return fBatches;
+	}
+
+	public long getChanges() {
+		return fChanges;
+	}
+
+	public long getResourcesEvaluated() {
+		return fFilter.getMatchCount() - fResourcesReset;
+	}
+
+	public long getExpressionsEvaluated() {
+		return fFilter.getExpressionCount() - fExpressionsReset;
+	}
+
+	public long getMembersAdded() {
+		return fMembersAdded;
+	}
+
+	public long getMembersRemoved() {
+		return fMembersRemoved;
+	}
+
+	public long getFullEvaluations() {
+		return fFullEvaluations;
+	}
+
+	public long getSetElementsCalls() {
+		return fSetElementsCalls;
+	}
+
+	public long getReloads() {
+		return fReloads;
+	}
+
+	public double getBatchLatencyP50() {
+		return fLatency.getPercentile(50);
+	}
+
+	public double getBatchLatencyP99() {
+		return fLatency.getPercentile(99);
+	}
+
+	public double getBatchLatencyMax() {
+		return fLatency.getMax();
+	}
+
+	public double getTotalTime() {
+		return fLatency.getTotal();
+	}
+
+	public void reset() {
+		fBatches = 0;
+		fChanges = 0;
+		fMembersAdded = 0;
+		fMembersRemoved = 0;
+		fFullEvaluations = 0;
+		fSetElementsCalls = 0;
+		fReloads = 0;
+		fResourcesReset = fFilter.getMatchCount();
+		fExpressionsReset = fFilter.getExpressionCount();
+		fLatency.reset();
+	}
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+/**
+ * The statistics of a query working set, registered as
+ * <code>gr.scharf.workingsets:type=QueryWorkingSet,name=...</code>. The times are
+ * in milliseconds.
+ */
+public interface QueryStatisticsMXBean {
+	String getName();
+	String getQuery();
+	/**
+	 * @return true if the query has exceeded its evaluation budget and the working set 
+	 * is not updated until the query is changed
+	 */
+	boolean isDisabled();
+	/**
+	 * @return the number of files in the working set
+	 */
+	int getMembers();
+	/**
+	 * @return the number of batches of resource changes applied to the working set
+	 */
+	long getBatches();
+	/**
+	 * @return the number of changed resources offered to the working set
+	 */
+	long getChanges();
+	/**
+	 * @return the number of paths matched against the query, including full evaluations
+	 */
+	long getResourcesEvaluated();
+	/**
+	 * @return the number of lines of the query evaluated, the cost of the query
+	 * is about the ratio to {@link #getResourcesEvaluated()}
+	 */
+	long getExpressionsEvaluated();
+	long getMembersAdded();
+	long getMembersRemoved();
+	/**
+	 * @return the number of evaluations on the whole workspace, e.g. because the query was edited
+	 */
+	long getFullEvaluations();
+	/**
+	 * @return the number of times the elements of the working set have been replaced,
+	 * each time the views showing the working set are refreshed
+	 */
+	long getSetElementsCalls();
+	/**
+	 * @return the number of times the membership has been read from the elements of 
+	 * the working set, e.g. because somebody else has changed them
+	 */
+	long getReloads();
+	double getBatchLatencyP50();
+	double getBatchLatencyP99();
+	double getBatchLatencyMax();
+	/**
+	 * @return the time spent on the working set in all batches
+	 */
+	double getTotalTime();
+	void reset();
+}
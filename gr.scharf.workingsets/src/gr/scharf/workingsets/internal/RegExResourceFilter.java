@@ -1,165 +1,620 @@
 package gr.scharf.workingsets.internal;
 
+import gr.scharf.workingsets.IMembershipListener;
+import gr.scharf.workingsets.engine.BudgetExceededException;
+import gr.scharf.workingsets.engine.QueryMatcher;
+import gr.scharf.workingsets.internal.query.PathCursor;
+import gr.scharf.workingsets.internal.query.PathIndex;
+import gr.scharf.workingsets.internal.query.PathTable;
+import gr.scharf.workingsets.internal.query.PruningCursor;
+import gr.scharf.workingsets.internal.query.Query;
+import gr.scharf.workingsets.internal.query.SubtreePruner;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Set;
 
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceProxy;
 import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.core.runtime.Path;
 import org.eclipse.ui.IWorkingSet;
 
+/**
+ * The membership of a query working set. The paths are matched by a {@link QueryMatcher},
+ * the filter keeps the matching resources and checks the predicates on their attributes.
+ */
 public class RegExResourceFilter implements IResourceProxyVisitor {
-	class RegexIncludeMatcher implements ResournceMatcher {
-		protected final Pattern pattern;
-
-		RegexIncludeMatcher(String filter) {
-			this.pattern = Pattern.compile(filter);
+	/**
+	 * Matches the paths, the filter adds the resources and the predicates on their attributes
+	 */
+	private QueryMatcher fMatcher;
+	/**
+	 * Replaced as a whole when the membership is reloaded or recomputed, so 
+	 * that other threads never see a partial membership
+	 */
+	private volatile MembershipSet fResources;
+	private IWorkingSet workingSet;
+	private String fFilterString;
+	/**
+	 * The predicates on the attributes of the files, cheapest first
+	 */
+	private MetadataMatcher[] fMetadataMatchers;
+	private boolean fModified;
+	/**
+	 * The membership has to be reloaded from the working set before the next update
+	 */
+	private boolean fStale;
+	/**
+	 * The elements last given to or read from the working set. The working set
+	 * notifies its listeners asynchronously, so our own changes are recognised by 
+	 * comparing its elements with these, see {@link #isPublished()}
+	 */
+	private volatile IAdaptable[] fPublished;
+	/**
+	 * The membership has to be computed from the workspace before the next update
+	 */
+	private boolean fInvalid;
+	/**
+	 * The query has exceeded its budget (see {@link QueryMatcher#DEFAULT_BUDGET}), nothing
+	 * is matched and the working set is not updated until the query is changed
+	 */
+	private volatile boolean fDisabled;
+	private final QueryStatistics fStatistics = new QueryStatistics(this);
+	/**
+	 * The counts of the matchers replaced by a changed query
+	 */
+	private long fRetiredMatches;
+	private long fRetiredExpressions;
+	/**
+	 * The time spent in the current batch in nanoseconds
+	 */
+	private long fBatchTime;
+	/**
+	 * The path of the resource being visited
+	 */
+	private final ResourcePath fPath = new ResourcePath();
+	/**
+	 * Notified about the members added and removed when the working set gets 
+	 * its new elements, see {@link #setMembershipListener(IMembershipListener)}
+	 */
+	private IMembershipListener fListener;
+	/**
+	 * The members added and removed since the working set got its elements, 
+	 * null if there is no listener
+	 */
+	private Set<IAdaptable> fAdded;
+	private Set<IAdaptable> fRemoved;
+	/**
+	 * Replaces folders whose files are all members by the folder in the elements
+	 * of the working set (option <code>#!collapse</code>), null otherwise
+	 */
+	private FolderCollapser fCollapser;
+	
+	/**
+	 * Creates a long living filter for a working set. The membership is kept
+	 * between updates and only reloaded when the query or the elements of the 
+	 * working set have been changed by somebody else.
+	 */
+	public RegExResourceFilter(IWorkingSet workingSet) {
+		this(getFilterString(workingSet), null);
+		this.workingSet=workingSet;
+		reload();
+	}
+	public RegExResourceFilter(String filterString, Collection<IAdaptable> initialResources) {
+		this.fResources=new MembershipSet();
+		if(initialResources!=null)
+			this.fResources.addAll(initialResources);
+		compile(filterString);
+	}
+	/**
+	 * @return the query of a query working set
+	 */
+	public static String getFilterString(IWorkingSet workingSet) {
+		return workingSet.getName().substring(7);
+	}
+	/**
+	 * @return the elements of a working set, the folders of a collapsed working set
+	 * are replaced by their files
+	 */
+	private static Collection<IAdaptable> getMembers(IAdaptable[] elements) {
+		List<IAdaptable> members = new ArrayList<IAdaptable>(elements.length);
+		PathIndex index = null;
+		for (IAdaptable element : elements) {
+			if(!(element instanceof IContainer)) {
+				members.add(element);
+				continue;
+			}
+			if(index == null)
+				index = WorkspacePathIndex.getDefault().getIndex();
+			IContainer container = (IContainer) element;
+			String prefix = container.getFullPath().toString() + '/';
+			IWorkspaceRoot root = container.getWorkspace().getRoot();
+			PathCursor cursor = index.cursor(prefix);
+			while(cursor.next() && startsWith(cursor.path(), prefix)) {
+				members.add(root.getFile(new Path(cursor.path().toString())));
+			}
 		}
-
-		@Override
-		public void  matchResource(IResourceProxy proxy, State state) {
-			if(pattern.matcher(proxy.requestFullPath().toString()).find()) {
-				state.include();
+		return members;
+	}
+	private void compile(String filterString) {
+		if(fMatcher != null) {
+			fRetiredMatches += fMatcher.getMatchCount();
+			fRetiredExpressions += fMatcher.getExpressionCount();
+		}
+		fMatcher = new QueryMatcher(filterString);
+		List<Query.Line> predicates = fMatcher.getPredicates();
+		fMetadataMatchers = new MetadataMatcher[predicates.size()];
+		for (int i = 0; i < fMetadataMatchers.length; i++) {
+			fMetadataMatchers[i] = MetadataMatcher.parse(predicates.get(i).text, predicates.get(i).exclusion);
+		}
+		Arrays.sort(fMetadataMatchers);
+		fFilterString = filterString;
+		fDisabled = false;
+		if(fMatcher.getParsedQuery().getOption(Query.OPTION_COLLAPSE) != null) {
+			if(fCollapser == null) {
+				fCollapser = new FolderCollapser();
+				fCollapser.reset(fResources);
+				fModified = true;
 			}
+		} else if(fCollapser != null) {
+			fCollapser = null;
+			fModified = true;
 		}
-		public boolean isExclusion() {
+	}
+	/**
+	 * @return true if a file must be matched even if it has none of the 
+	 * {@link #getExtensions()} and none of the {@link #getLiterals()}, a collapsing
+	 * filter has to see the new files that do not match as well
+	 */
+	public boolean isUnconstrained() {
+		return fCollapser != null || fMatcher.isUnconstrained();
+	}
+	/**
+	 * @return the lower case extensions of files the query might include,
+	 * see {@link DispatchIndex}
+	 */
+	public Set<String> getExtensions() {
+		return fMatcher.getExtensions();
+	}
+	/**
+	 * @return the lower case literals of which the path of a file the query 
+	 * might include contains at least one (unless the file has one of the 
+	 * {@link #getExtensions()})
+	 */
+	public Set<String> getLiterals() {
+		return fMatcher.getLiterals();
+	}
+	/**
+	 * Called before a batch of updates. Recompiles the patterns if the query of the 
+	 * working set has changed and reloads the membership if the elements of the 
+	 * working set have been changed from outside.
+	 * @return true if the query has changed
+	 */
+	public boolean beginUpdate() {
+		if(workingSet==null)
 			return false;
+		long start = System.nanoTime();
+		boolean changed = false;
+		String filterString = getFilterString(workingSet);
+		if(!filterString.equals(fFilterString)) {
+			compile(filterString);
+			fStale = true;
+			changed = true;
 		}
+		if(fStale) {
+			fStale = false;
+			reload();
+		}
+		if(fInvalid && !fDisabled) {
+			fInvalid = false;
+			MembershipSet resources = new MembershipSet();
+			WorkspacePathIndex.getDefault().collectMatches(this, null, resources);
+			replaceMembers(resources);
+			fModified = true;
+			fStatistics.fFullEvaluations++;
+		}
+		fBatchTime = System.nanoTime() - start;
+		return changed;
 	}
-	class RegexExcludeMatcher extends RegexIncludeMatcher {
-		RegexExcludeMatcher(String filter) {
-			super(filter);
+	/**
+	 * Replaces the membership with the elements of the working set
+	 */
+	private void reload() {
+		IAdaptable[] elements = workingSet.getElements();
+		MembershipSet resources = new MembershipSet();
+		resources.addAll(getMembers(elements));
+		replaceMembers(resources);
+		fPublished = elements;
+		fStatistics.fReloads++;
+	}
+	/**
+	 * The stored elements of the working set might not match the workspace, the
+	 * membership is computed from the workspace before the next update.
+	 */
+	public void invalidate() {
+		fInvalid = true;
+	}
+	/**
+	 * Replaces the membership with the cached membership
+	 * @param members the full paths of the member files
+	 * @return true if the membership differs from the elements of the working set
+	 */
+	public boolean restore(PathTable members) {
+		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		MembershipSet resources = new MembershipSet();
+		PathCursor cursor = members.cursor();
+		while(cursor.next()) {
+			resources.add(root.getFile(new Path(cursor.path().toString())));
 		}
-
-		@Override
-		public void  matchResource(IResourceProxy proxy, State state) {
-			if(pattern.matcher(proxy.requestFullPath().toString()).find()) {
-				state.exclude();
+		if(resources.equals(fResources)) {
+			resources.clear();
+			return false;
+		}
+		replaceMembers(resources);
+		fModified = true;
+		return true;
+	}
+	/**
+	 * Replaces the membership and remembers the difference for the listener
+	 */
+	private void replaceMembers(MembershipSet resources) {
+		MembershipSet old = fResources;
+		if(fAdded != null) {
+			for (IAdaptable element : old) {
+				if(!resources.contains(element))
+					removed(element);
+			}
+			for (IAdaptable element : resources) {
+				if(!old.contains(element))
+					added(element);
 			}
 		}
-		public boolean isExclusion() {
-			return true;
+		fResources = resources;
+		old.release(resources);
+		if(fCollapser != null)
+			fCollapser.reset(resources);
+	}
+	private void added(IAdaptable element) {
+		if(fAdded != null && !fRemoved.remove(element))
+			fAdded.add(element);
+	}
+	private void removed(IAdaptable element) {
+		if(fAdded != null && !fAdded.remove(element))
+			fRemoved.add(element);
+	}
+	/**
+	 * @param listener gets the members added and removed each time the working set
+	 * gets its new elements, null to stop tracking the changes 
+	 */
+	public void setMembershipListener(IMembershipListener listener) {
+		fListener = listener;
+		if(listener == null) {
+			fAdded = null;
+			fRemoved = null;
+		} else if(fAdded == null) {
+			fAdded = new HashSet<IAdaptable>();
+			fRemoved = new HashSet<IAdaptable>();
 		}
-		
 	}
-	
-	class State {
-		boolean include;
-		boolean exclude;
-
-		public boolean isInclude() {
-			return include;
+	/**
+	 * Releases the members, the filter must not be used afterwards
+	 */
+	public void dispose() {
+		fResources.clear();
+		fCollapser = null;
+	}
+	/**
+	 * @return the full paths of the member files
+	 */
+	public PathTable getMemberPaths() {
+		List<String> paths = new ArrayList<String>();
+		for (IAdaptable element : fResources) {
+			if(element instanceof IResource)
+				paths.add(((IResource)element).getFullPath().toString());
 		}
-		public boolean isExclude() {
-			return exclude;
+		Collections.sort(paths);
+		PathTable.Builder builder = new PathTable.Builder();
+		for (String path : paths) {
+			builder.add(path);
 		}
-
-		public void include() {
-			this.include = true;
+		return builder.build();
+	}
+	/**
+	 * @return true if the query has predicates on the attributes of the files, see 
+	 * {@link #matchesMetadata(IResource)}
+	 */
+	public boolean hasMetadataMatchers() {
+		return fMetadataMatchers.length > 0;
+	}
+	/**
+	 * @return true if the membership changes with time, e.g. for <code>@modified&lt;7d</code>
+	 */
+	public boolean isTimeDependent() {
+		for (MetadataMatcher matcher : fMetadataMatchers) {
+			if(matcher.isTimeDependent())
+				return true;
 		}
-
-		public void exclude() {
-			this.exclude = true;
+		return false;
+	}
+	/**
+	 * Checks the predicates on the attributes of a file. This can be expensive, 
+	 * therefore it should only be called if the path {@link #matches(CharSequence)}. 
+	 * The cheap predicates are evaluated first.
+	 * @return true if the file satisfies all predicates of the query
+	 */
+	public boolean matchesMetadata(IResource resource) {
+		if(fDisabled)
+			return false;
+		try {
+			for (MetadataMatcher matcher : fMetadataMatchers) {
+				if(!matcher.accepts(resource))
+					return false;
+			}
+			return true;
+		} catch (BudgetExceededException e) {
+			// a content: line has backtracked excessively
+			disable(e);
+			return false;
 		}
-		
 	}
-	interface ResournceMatcher {
-		void matchResource(IResourceProxy proxy, State state);
+	/**
+	 * @return the lines that might backtrack exponentially, see {@link QueryMatcher#getBacktrackingRisks()}
+	 */
+	public List<String> getBacktrackingRisks() {
+		return fMatcher.getBacktrackingRisks();
 	}
-	boolean fInclude;
-	final ResournceMatcher[] fMatchers;
-	final private Collection<IAdaptable> fResources;
-	private IWorkingSet workingSet;
-	private boolean fModified;
-	
-	public RegExResourceFilter(IWorkingSet workingSet) {
-		this(workingSet.getName().substring(7), Arrays.asList((IAdaptable[]) workingSet.getElements()));
-		this.workingSet=workingSet;
+	/**
+	 * @return true if the query has exceeded its budget on a path and has been turned off
+	 */
+	public boolean isDisabled() {
+		return fDisabled;
 	}
-	public RegExResourceFilter(String filterString, Collection<IAdaptable> initialResources) {
-		this.fResources=new HashSet<IAdaptable>();
-		if(initialResources!=null)
-			this.fResources.addAll(initialResources);
-		// see http://stackoverflow.com/questions/1247772/is-there-an-equivalent-of-java-util-regex-for-glob-type-patterns
-		String[] filters = filterString.split("\\s*\\n\\s*");
-		List<ResournceMatcher> matchers=new ArrayList<ResournceMatcher>();
-		for (String filter : filters) {
-			ResournceMatcher matcher =null;
-			if(filter.startsWith("-")) {
-				filter=filter.substring(1);
-				matcher = new RegexExcludeMatcher(filter);
-			} else if(filter.startsWith("#")){
-				// this is a comment -- ignore it
-			} else if(filter.length()>0){
-				matcher = new RegexIncludeMatcher(filter);
-			}
-			if(matcher!=null)
-				matchers.add(matcher);
+	public SubtreePruner getPruner() {
+		return fMatcher.getPruner();
+	}
+	public String getQuery() {
+		return fFilterString;
+	}
+	/**
+	 * The elements of the working set have been changed. Unless the change
+	 * was done by us, the membership has to be reloaded before the next update.
+	 * @return true if the membership has to be reloaded
+	 */
+	public boolean elementsChanged() {
+		if(!fStale && !isPublished())
+			fStale = true;
+		return fStale;
+	}
+	/**
+	 * Can be called from any thread, the notifications of the working set arrive
+	 * after the next batch might have started.
+	 * @return true if the working set has the elements we gave it (or read from it) last
+	 */
+	public boolean isPublished() {
+		IAdaptable[] published = fPublished;
+		if(workingSet == null || published == null)
+			return true;
+		// the working set copies the array, but keeps the elements
+		IAdaptable[] elements = workingSet.getElements();
+		if(elements == published)
+			return true;
+		if(elements.length != published.length)
+			return false;
+		for (int i = 0; i < elements.length; i++) {
+			if(elements[i] != published[i])
+				return false;
 		}
-		// we reverse the collection to be able to prune the search if we find
-		// a matcher that is a exclusion matcher
-		Collections.reverse(matchers);
-		fMatchers = matchers.toArray(new ResournceMatcher[matchers.size()]);
+		return true;
+	}
+	public IWorkingSet getWorkingSet() {
+		return workingSet;
 	}
+	/**
+	 * @return the current members, the set can be queried from any thread
+	 */
 	public Collection<IAdaptable> getResult() {
 		return fResources;
 	}
+	public QueryStatistics getStatistics() {
+		return fStatistics;
+	}
+	/**
+	 * @return the number of paths matched against the query so far
+	 */
+	public long getMatchCount() {
+		return fRetiredMatches + fMatcher.getMatchCount();
+	}
+	/**
+	 * @return the number of lines of the query evaluated so far
+	 */
+	public long getExpressionCount() {
+		return fRetiredExpressions + fMatcher.getExpressionCount();
+	}
+	/**
+	 * @return the time (in nanoseconds) spent in the current or the last batch of updates
+	 */
+	public long getBatchTime() {
+		return fBatchTime;
+	}
 	@Override
 	public boolean visit(IResourceProxy proxy) throws CoreException {
-		if(proxy.getType() != IResource.FILE)
+		int type = proxy.getType();
+		if(fDisabled)
+			return false;
+		if(type == IResource.FOLDER || type == IResource.PROJECT)
+			return !fMatcher.getPruner().isPruned(fPath.set(proxy.requestFullPath()));
+		if(type != IResource.FILE)
 			return true;
-		State state = new State();
-		// Note: we iterate in reverse order of the way the user entered  the filter
-		// because the list has been reversed....
-		for (int i = 0; i < fMatchers.length; i++) {
-			ResournceMatcher matcher = fMatchers[i];
-			matcher.matchResource(proxy, state);
-			if(state.isExclude()) {
-				// the filters above have no effect
-				break;
-			} else if(state.isInclude()) {
-				// because we iterate in reverse order, the an include cannot be hidden
-				// by an exclude
-				doAddResource(proxy.requestResource());
-				break;
+		if(matches(fPath.set(proxy.requestFullPath()))) {
+			IResource resource = proxy.requestResource();
+			if(matchesMetadata(resource)) {
+				doAddResource(resource);
+				return true;
 			}
 		}
+		if(fCollapser != null)
+			fCollapser.fileChanged(proxy.requestFullPath());
 		return true;
 	}
+	/**
+	 * @param path the full path of a file
+	 * @return true if the query includes the file 
+	 */
+	public boolean matches(CharSequence path) {
+		if(fDisabled)
+			return false;
+		try {
+			return fMatcher.matches(path);
+		} catch (BudgetExceededException e) {
+			disable(e);
+			return false;
+		}
+	}
+	/**
+	 * Turns the query off instead of blocking the updates of all working sets
+	 */
+	private synchronized void disable(BudgetExceededException e) {
+		if(fDisabled)
+			return;
+		fDisabled = true;
+		if(workingSet != null)
+			Activator.log("The working set '" + workingSet.getLabel() + "' is not updated until its query is changed", e);
+	}
 	private void doAddResource(IResource resource) {
 //		System.out.println("add " + !fResources.contains(resource) + " " + resource);
 		if(fResources.add(resource)) {
+			added(resource);
+			if(fCollapser != null)
+				fCollapser.added(resource);
 			fModified=true;
+			fStatistics.fMembersAdded++;
 		}
 	}
 	private void doRemoveResource(IResource resource) {
 //		System.out.println("rem " + fResources.contains(resource) + " " + resource);
 		if(fResources.remove(resource)) {
+			removed(resource);
+			if(fCollapser != null)
+				fCollapser.removed(resource);
 			fModified = true;
+			fStatistics.fMembersRemoved++;
+		} else if(fCollapser != null) {
+			fCollapser.fileChanged(resource.getFullPath());
 		}
 	}
 	public void endUpdate() {
-		if(fModified) {
+		long start = System.nanoTime();
+		// folders that are no longer (or now) full change the elements as well
+		boolean collapsed = false;
+		if(fCollapser != null && !fDisabled && fCollapser.needsUpdate())
+			collapsed = fCollapser.update(WorkspacePathIndex.getDefault().getIndex());
+		if((fModified || collapsed) && !fDisabled) {
 			fModified = false;
-			workingSet.setElements((IAdaptable[])fResources.toArray(new IAdaptable[fResources.size()]));
+			IAdaptable[] elements = fResources.toArray(new IAdaptable[fResources.size()]);
+			if(fCollapser != null)
+				elements = fCollapser.getElements(elements);
+			fPublished = elements;
+			workingSet.setElements(elements);
+			fStatistics.fSetElementsCalls++;
+			if(fListener != null && (!fAdded.isEmpty() || !fRemoved.isEmpty())) {
+				IAdaptable[] added = fAdded.toArray(new IAdaptable[fAdded.size()]);
+				IAdaptable[] removed = fRemoved.toArray(new IAdaptable[fRemoved.size()]);
+				fAdded.clear();
+				fRemoved.clear();
+				fListener.membershipChanged(workingSet, added, removed);
+			}
 		}
+		// the elements have been published without waiting for the closed projects
+		fResources.releaseDropped();
+		fBatchTime += System.nanoTime() - start;
+		fStatistics.batch(fBatchTime);
 	}
 	public void addResource(IResourceProxy proxy) throws CoreException {
+		long start = System.nanoTime();
 		visit(proxy);
+		fStatistics.fChanges++;
+		fBatchTime += System.nanoTime() - start;
 	}
 	public void removeResource(IResource resource) throws CoreException {
+		long start = System.nanoTime();
 		doRemoveResource(resource);
+		fStatistics.fChanges++;
+		fBatchTime += System.nanoTime() - start;
 	}
 	public void updateResource(IResourceProxy proxy) throws CoreException {
-		removeResource(proxy.requestResource());
-		addResource(proxy);
+		long start = System.nanoTime();
+		doRemoveResource(proxy.requestResource());
+		visit(proxy);
+		fStatistics.fChanges++;
+		fBatchTime += System.nanoTime() - start;
+	}
+	/**
+	 * Replaces the files of a container (e.g. an opened or closed project)
+	 * with the matching files in the index
+	 */
+	public void updateContainer(IContainer container, PathIndex index) {
+		long start = System.nanoTime();
+		doRemoveContainer(container);
+		String prefix = container.getFullPath().toString() + '/';
+		IWorkspaceRoot root = container.getWorkspace().getRoot();
+		PathCursor cursor = new PruningCursor(index, prefix, fMatcher.getPruner());
+		while(cursor.next()) {
+			CharSequence path = cursor.path();
+			if(!startsWith(path, prefix))
+				break;
+			if(matches(path)) {
+				IResource resource = root.getFile(new Path(path.toString()));
+				if(matchesMetadata(resource))
+					doAddResource(resource);
+			}
+		}
+		fStatistics.fChanges++;
+		fBatchTime += System.nanoTime() - start;
+	}
+	/**
+	 * Removes the files of a container that has been deleted or moved away
+	 */
+	public void removeContainer(IContainer container) {
+		long start = System.nanoTime();
+		doRemoveContainer(container);
+		fStatistics.fChanges++;
+		fBatchTime += System.nanoTime() - start;
+	}
+	private void doRemoveContainer(IContainer container) {
+		List<IAdaptable> elements = fAdded == null && fCollapser == null ? null : new ArrayList<IAdaptable>();
+		int removed = fResources.removeAll(container.getFullPath(), elements);
+		if(elements != null) {
+			for (IAdaptable element : elements) {
+				removed(element);
+				if(fCollapser != null)
+					fCollapser.removed((IResource) element);
+			}
+		}
+		if(fCollapser != null)
+			fCollapser.fileChanged(container.getFullPath());
+		if(removed > 0) {
+			fModified = true;
+			fStatistics.fMembersRemoved += removed;
+		}
+	}
+	private static boolean startsWith(CharSequence path, String prefix) {
+		if(path.length() < prefix.length())
+			return false;
+		for (int i = 0; i < prefix.length(); i++) {
+			if(path.charAt(i) != prefix.charAt(i))
+				return false;
+		}
+		return true;
 	}
 
 }
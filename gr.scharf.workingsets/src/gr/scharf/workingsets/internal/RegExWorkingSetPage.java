@@ -8,21 +8,31 @@
 package gr.scharf.workingsets.internal;
 
 import gr.scharf.workingsets.DynamicWorkingSetPage;
+import gr.scharf.workingsets.internal.query.PathCursor;
+import gr.scharf.workingsets.internal.query.PathIndex;
+import gr.scharf.workingsets.internal.query.PathTable;
+import gr.scharf.workingsets.internal.query.PruningCursor;
+import gr.scharf.workingsets.internal.query.QueryRefinement;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Map;
 import java.util.regex.PatternSyntaxException;
 
-import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.ResourcesPlugin;
-import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.dialogs.IMessageProvider;
 import org.eclipse.jface.fieldassist.TextContentAdapter;
 import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.jface.resource.JFaceResources;
+import org.eclipse.jface.resource.LocalResourceManager;
 import org.eclipse.jface.text.FindReplaceDocumentAdapterContentProposalProvider;
 import org.eclipse.jface.viewers.ILabelProviderListener;
 import org.eclipse.jface.viewers.ILazyContentProvider;
@@ -50,7 +60,6 @@ import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.IWorkingSet;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.fieldassist.ContentAssistCommandAdapter;
-import org.eclipse.ui.model.IWorkbenchAdapter;
 import org.eclipse.ui.texteditor.ITextEditorActionDefinitionIds;
 
 /**
@@ -61,14 +70,243 @@ import org.eclipse.ui.texteditor.ITextEditorActionDefinitionIds;
  */
 public class RegExWorkingSetPage extends DynamicWorkingSetPage {
 	private Text fExpressionText = null;
-	private IResource[] fResources=new IResource[0];
+	private PreviewMatches fMatches = PreviewMatches.EMPTY;
 	private TableViewer fPreviewTableViewer;
-	private ResourceComparator fComparator;
+	private RowOrder fOrder;
+	/**
+	 * The icons of the file types shown in the table, disposed with the table
+	 */
+	private LocalResourceManager fImages;
+	private final Map<ImageDescriptor, Image> fImageCache = new HashMap<ImageDescriptor, Image>();
 	/**
 	 * Do not fill the table before the dialog is shown.
 	 * Causes strange effects.
 	 */
 	private boolean fReady;
+	private Label fMatchLabel;
+	private Display fDisplay;
+	/**
+	 * Evaluates the query for the preview in the background
+	 */
+	private final PreviewJob fPreviewJob = new PreviewJob();
+	/**
+	 * The query of the last complete evaluation and its result
+	 */
+	private String fResultQuery;
+	private PreviewMatches fResult;
+	/**
+	 * The query of the last evaluation that scanned the whole workspace and its result
+	 */
+	private String fScanQuery;
+	private PreviewMatches fScanResult;
+	/**
+	 * Sorts the matches by name if the user sorts the table before the order is known
+	 */
+	private final SortJob fSortJob = new SortJob();
+
+	/**
+	 * Runs the query over the {@link WorkspacePathIndex} and streams the matches into the 
+	 * preview table. Each edit of the query cancels the job and starts a 
+	 * new run. If the edit can only narrow the result (see {@link QueryRefinement})
+	 * only the result of an earlier query is evaluated.
+	 */
+	private class PreviewJob extends Job {
+		/**
+		 * Publish the matches at least that often (in milliseconds)...
+		 */
+		private static final long PUBLISH_INTERVAL = 200;
+		/**
+		 * ...or when that many new matches have been found 
+		 */
+		private static final int PUBLISH_BATCH = 5000;
+		private volatile String fQuery;
+		/**
+		 * The result of an earlier query that contains all matches of the query or 
+		 * null if the whole workspace has to be scanned
+		 */
+		private volatile PreviewMatches fCandidates;
+		/**
+		 * Incremented for each new query, results of older runs are ignored
+		 */
+		private volatile int fGeneration;
+
+		PreviewJob() {
+			super("Query Working Set Preview");
+			setSystem(true);
+		}
+
+		void evaluate(String query) {
+			cancel();
+			PreviewMatches candidates = null;
+			if (fResult != null && QueryRefinement.isNarrowing(fResultQuery, query)) {
+				candidates = fResult;
+			} else if (fScanResult != null && QueryRefinement.isNarrowing(fScanQuery, query)) {
+				candidates = fScanResult;
+			}
+			fQuery = query;
+			fCandidates = candidates;
+			fGeneration++;
+			// wait a bit, the user might still be typing
+			schedule(100);
+		}
+
+		@Override
+		protected IStatus run(final IProgressMonitor monitor) {
+			final int generation = fGeneration;
+			final String query = fQuery;
+			final PreviewMatches candidates = fCandidates;
+			PreviewMatches matches = PreviewMatches.EMPTY;
+			boolean complete;
+			try {
+				final RegExResourceFilter filter = new RegExResourceFilter(query, null);
+				IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+				PathIndex index = WorkspacePathIndex.getDefault().getIndex();
+				PathCursor cursor = candidates != null ? candidates.cursor() : new PruningCursor(index, null, filter.getPruner());
+				// the matches are found in sorted order and stored front coded
+				PathTable.Builder batch = new PathTable.Builder();
+				int batchSize = 0;
+				long lastPublish = System.currentTimeMillis();
+				while (cursor.next()) {
+					if (monitor.isCanceled())
+						return Status.CANCEL_STATUS;
+					CharSequence path = cursor.path();
+					if (!filter.matches(path)) {
+						// the query has exceeded its budget, it does not match any more paths
+						if (filter.isDisabled())
+							break;
+						continue;
+					}
+					// files of an earlier result might have been removed in the meantime
+					if (candidates != null && !index.contains(path))
+						continue;
+					// only the matching files need a resource handle
+					if (filter.hasMetadataMatchers() && !filter.matchesMetadata(root.getFile(new Path(path.toString())))) {
+						if (filter.isDisabled())
+							break;
+						continue;
+					}
+					batch.add(path);
+					batchSize++;
+					long now = System.currentTimeMillis();
+					if (candidates == null && (batchSize >= PUBLISH_BATCH || now - lastPublish >= PUBLISH_INTERVAL)) {
+						matches = matches.append(batch.build());
+						publish(generation, matches);
+						batch = new PathTable.Builder();
+						batchSize = 0;
+						lastPublish = now;
+					}
+				}
+				matches = matches.append(batch.build());
+				complete = !filter.isDisabled();
+				if (!complete)
+					showWarning(generation, "The query exceeded its evaluation budget, the preview is incomplete");
+			} catch (PatternSyntaxException e) {
+				// the query has been changed while validating it
+				publishResult(generation, query, PreviewMatches.EMPTY, false, false);
+				return Status.OK_STATUS;
+			}
+			if (monitor.isCanceled())
+				return Status.CANCEL_STATUS;
+			// the table is sorted by name unless the user has chosen another order 
+			matches.computeNameOrder();
+			publishResult(generation, query, matches, candidates == null, complete);
+			return Status.OK_STATUS;
+		}
+
+		/**
+		 * Stops the evaluation of the current query, its matches are not shown
+		 */
+		void clear() {
+			cancel();
+			fGeneration++;
+		}
+		
+		private void showWarning(final int generation, final String message) {
+			asyncExec(new Runnable() {
+				public void run() {
+					if (generation == fGeneration && !fPreviewTableViewer.getTable().isDisposed())
+						setMessage(message, IMessageProvider.WARNING);
+				}
+			});
+		}
+
+		/**
+		 * Shows the matches found so far in the table
+		 */
+		private void publish(final int generation, final PreviewMatches matches) {
+			asyncExec(new Runnable() {
+				public void run() {
+					if (generation != fGeneration)
+						return;
+					fMatches = matches;
+					showMatches(false);
+				}
+			});
+		}
+
+		/**
+		 * @param scan the result is from a scan of the whole workspace
+		 * @param complete the result has all matches of the query, only then it can be
+		 * used as candidates of later queries and for the working set
+		 */
+		private void publishResult(final int generation, final String query, final PreviewMatches result, final boolean scan,
+				final boolean complete) {
+			asyncExec(new Runnable() {
+				public void run() {
+					if (generation != fGeneration)
+						return;
+					if (!complete) {
+						clearResults();
+					} else {
+						fResultQuery = query;
+						fResult = result;
+						if (scan) {
+							fScanQuery = query;
+							fScanResult = result;
+						}
+					}
+					fMatches = result;
+					showMatches(true);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Computes the order by name of the matches shown in the table.
+	 */
+	private class SortJob extends Job {
+		private volatile PreviewMatches fToSort;
+
+		SortJob() {
+			super("Sorting Query Working Set Preview");
+			setSystem(true);
+		}
+
+		void sort(PreviewMatches matches) {
+			fToSort = matches;
+			schedule();
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			final PreviewMatches matches = fToSort;
+			matches.computeNameOrder();
+			asyncExec(new Runnable() {
+				public void run() {
+					if (matches == fMatches && !fPreviewTableViewer.getTable().isDisposed())
+						fPreviewTableViewer.refresh();
+				}
+			});
+			return Status.OK_STATUS;
+		}
+	}
+
+	private void asyncExec(Runnable runnable) {
+		if (!fDisplay.isDisposed())
+			fDisplay.asyncExec(runnable);
+	}
+
 	public RegExWorkingSetPage() {
 		super("gr.scharf.workingsets.RegExWorkingSetPage",
 				"gr.scharf.workingsets.regexWorkingSetPage",
@@ -111,11 +349,13 @@ public class RegExWorkingSetPage extends DynamicWorkingSetPage {
 	    layout.marginWidth = 0; // <-- HERE
 	    composite.setLayout(layout);
 
-		label = new Label(composite, SWT.NULL);
-		label.setText("Matching files:");
+		fMatchLabel = new Label(composite, SWT.NULL);
+		fMatchLabel.setText("Matching files:");
+		fMatchLabel.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
 		createTableViewer(composite);
 	    sashForm.setWeights(new int[]{1,4});
-		Display.getCurrent().asyncExec(new Runnable() {
+	    fDisplay = Display.getCurrent();
+	    fDisplay.asyncExec(new Runnable() {
 			@Override
 			public void run() {
 				fReady=true;
@@ -125,33 +365,66 @@ public class RegExWorkingSetPage extends DynamicWorkingSetPage {
 	}
 
 	/**
-	 * Filter the matching projects section of the property page
+	 * Filter the matching projects section of the property page. The query is 
+	 * evaluated in the background, see {@link PreviewJob}.
 	 */
 	private void filter() {
 		if(!fReady)
 			return;
-		RegExResourceFilter filter = new RegExResourceFilter(fExpressionText.getText(), null);
-		try {
-			ResourcesPlugin.getWorkspace().getRoot().accept(filter, 0);
-		} catch (PatternSyntaxException e) {
-		} catch (CoreException e) {
+		if(!validate()) {
+			// an invalid query has no matches
+			fPreviewJob.clear();
+			clearResults();
+			fMatches = PreviewMatches.EMPTY;
+			showMatches(true);
+			return;
 		}
-		Collection<IAdaptable> filtered=filter.getResult();
-		fResources=filtered.toArray(new IResource[filtered.size()]);
-		Arrays.sort(fResources, fComparator);
-		fPreviewTableViewer.setInput(this.fResources);
-		fPreviewTableViewer.setItemCount(this.fResources.length);
-		
+		fMatchLabel.setText("Matching files: searching...");
+		fPreviewJob.evaluate(fExpressionText.getText());
+	}
+	/**
+	 * Forgets the results of the earlier queries
+	 */
+	private void clearResults() {
+		fResultQuery = null;
+		fResult = null;
+		fScanQuery = null;
+		fScanResult = null;
+	}
+	/**
+	 * Shows the current {@link #fMatches} in the table
+	 * @param done the evaluation is complete
+	 */
+	private void showMatches(boolean done) {
+		if(fPreviewTableViewer.getTable().isDisposed())
+			return;
+		fPreviewTableViewer.setInput(this.fMatches);
+		fPreviewTableViewer.setItemCount(this.fMatches.size());
+		fMatchLabel.setText("Matching files: " + fMatches.size() + (done ? "" : " (searching...)"));
+	}
+	@Override
+	public void dispose() {
+		fPreviewJob.cancel();
+		fSortJob.cancel();
+		super.dispose();
 	}
 	@Override protected List<IAdaptable> getMatchingItems() {
-		RegExResourceFilter filter = new RegExResourceFilter(fExpressionText.getText(), null);
+		if(fResult!=null && fExpressionText.getText().equals(fResultQuery)) {
+			// the preview is complete and up to date
+			IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+			ArrayList<IAdaptable> result = new ArrayList<IAdaptable>(fResult.size());
+			PathCursor cursor = fResult.cursor();
+			while (cursor.next()) {
+				result.add(root.getFile(new Path(cursor.path().toString())));
+			}
+			return result;
+		}
+		ArrayList<IAdaptable> result = new ArrayList<IAdaptable>();
 		try {
-			ResourcesPlugin.getWorkspace().getRoot().accept(filter, 0);
+			RegExResourceFilter filter = new RegExResourceFilter(fExpressionText.getText(), null);
+			WorkspacePathIndex.getDefault().collectMatches(filter, null, result);
 		} catch (PatternSyntaxException e) {
-		} catch (CoreException e) {
 		}
-		ArrayList<IAdaptable> result = new ArrayList<IAdaptable>();
-		result.addAll(filter.getResult());
 		return result;
 	}
 	@Override protected String getWorkingSetName() {
@@ -168,10 +441,16 @@ public class RegExWorkingSetPage extends DynamicWorkingSetPage {
 			return false;
 		}
 		try {
-			Pattern.compile(fExpressionText.getText());
+			// compiles the regular expressions and the globs of all lines
+			RegExResourceFilter filter = new RegExResourceFilter(regex, null);
+			List<String> risks = filter.getBacktrackingRisks();
+			if (risks.isEmpty())
+				setMessage(null);
+			else
+				setMessage("Might take exponential time on some paths (use #!engine linear): " + risks.get(0), IMessageProvider.WARNING);
 		} catch (PatternSyntaxException e) {
 			String message = e.getMessage().split("[\n\r]")[0];
-			updateStatus("Regular expression syntax: " + message);
+			updateStatus("Expression syntax: " + message);
 			return false;
 		}
 		return true;
@@ -186,30 +465,34 @@ public class RegExWorkingSetPage extends DynamicWorkingSetPage {
 		data.minimumHeight=300;
 
 		this.fPreviewTableViewer.getTable().setLayoutData(data);
-	    fComparator = new ResourceComparator();
+		fImages = new LocalResourceManager(JFaceResources.getResources(), table);
+	    fOrder = new RowOrder();
 	    createTableViewerColumn("Name", 200, 0);
 	    createTableViewerColumn("Path", 400, 1);
+		// the elements of the table are the paths of the matching files
 		this.fPreviewTableViewer.setLabelProvider(new ITableLabelProvider() {
 			public Image getColumnImage(Object element, int columnIndex) {
 				if(columnIndex==1)
 					return null;
-				IWorkbenchAdapter adapter = (IWorkbenchAdapter)((IAdaptable)element).getAdapter(IWorkbenchAdapter.class);
-				if (adapter == null) {
-					return null;
-				}
-				ImageDescriptor descriptor = adapter.getImageDescriptor(element);
+				// the same icon the workbench shows for the file type
+				ImageDescriptor descriptor = PlatformUI.getWorkbench().getEditorRegistry().getImageDescriptor(
+						PreviewMatches.getName((String) element));
 				if (descriptor == null) {
 					return null;
 				}
-				Image image = (Image) descriptor.createResource(Display.getCurrent());
+				Image image = fImageCache.get(descriptor);
+				if (image == null) {
+					image = fImages.createImageWithDefault(descriptor);
+					fImageCache.put(descriptor, image);
+				}
 				return image;
 			}
 
 			public String getColumnText(Object element, int columnIndex) {
-				IResource resource = (IResource)element;
+				String path = (String)element;
 				if(columnIndex==1)
-					return resource.getFullPath().toPortableString();
- 				return resource.getName();
+					return path;
+ 				return PreviewMatches.getName(path);
 			}
 
 			public void addListener(ILabelProviderListener listener) {
@@ -235,11 +518,12 @@ public class RegExWorkingSetPage extends DynamicWorkingSetPage {
 			
 			@Override
 			public void updateElement(int index) {
-				fPreviewTableViewer.replace(fResources[index], index);
+				// the rows are only created when they become visible
+				fPreviewTableViewer.replace(fMatches.getPath(fOrder.getIndex(fMatches, index)), index);
 			}
 		});
 		
-		this.fPreviewTableViewer.setInput(this.fResources);
+		this.fPreviewTableViewer.setInput(this.fMatches);
     }
     private TableViewerColumn createTableViewerColumn(String title, int bound,
     		final int colNumber) {
@@ -258,22 +542,31 @@ public class RegExWorkingSetPage extends DynamicWorkingSetPage {
     	SelectionAdapter selectionAdapter = new SelectionAdapter() {
     		@Override
     		public void widgetSelected(SelectionEvent e) {
-    			fComparator.setColumn(index);
-    			final int direction = fComparator.getDirection();
+    			fOrder.setColumn(index);
+    			final int direction = fOrder.getDirection();
     			fPreviewTableViewer.getTable().setSortDirection(direction);
     			fPreviewTableViewer.getTable().setSortColumn(column);
-    			Arrays.sort(fResources, fComparator);
-    			fPreviewTableViewer.refresh();
+    			if (index == 0 && fMatches.getNameOrder() == null) {
+    				// the rows are shown in the new order when it is known
+    				fSortJob.sort(fMatches);
+    			} else {
+    				fPreviewTableViewer.refresh();
+    			}
     		}
     	};
     	return selectionAdapter;
     }
-    private class ResourceComparator implements Comparator<IResource> {
+    /**
+     * Maps the rows of the table to the indexes of the matches. The matches are
+     * sorted by path, the order by name is computed in the background by
+     * {@link PreviewMatches#computeNameOrder()}.
+     */
+    private static class RowOrder {
     	private int propertyIndex;
     	private static final int DESCENDING = 1;
     	private int direction = DESCENDING;
 
-    	public ResourceComparator() {
+    	public RowOrder() {
     		this.propertyIndex = 0;
     		direction = 0;
     	}
@@ -292,26 +585,23 @@ public class RegExWorkingSetPage extends DynamicWorkingSetPage {
     			direction = DESCENDING;
     		}
     	}
-		@Override
-		public int compare(IResource r1, IResource r2) {
-			int rc;
-    		switch (propertyIndex) {
-    		case 0:
-    			rc = r1.getName().compareTo(r2.getName());
-    			break;
-    		case 1:
-    			rc = r1.getFullPath().toPortableString().compareTo(r2.getFullPath().toPortableString());
-    			break;
-    		default:
-    			rc = 0;
-    		}
-    		// If descending order, flip the direction
-    		if (direction == DESCENDING) {
-    			rc = -rc;
-    		}
-    		return rc;
-		}
 
+    	/**
+    	 * @return the index of the match shown in the row
+    	 */
+		public int getIndex(PreviewMatches matches, int row) {
+			// If descending order, flip the direction
+			if (direction == DESCENDING) {
+				row = matches.size() - 1 - row;
+			}
+			if (propertyIndex == 0) {
+				int[] order = matches.getNameOrder();
+				// until the order is known the rows are sorted by path
+				if (order != null)
+					return order[row];
+			}
+			return row;
+		}
     } 
     @Override
     protected void setControl(Control control) {
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import java.util.Arrays;
+
+import org.eclipse.core.resources.IResource;
+
+/**
+ * Gives the members of the query working sets int ids, so that a {@link MembershipSet}
+ * stores ints instead of references. A resource that is a member of several
+ * working sets is kept once, with the handle that was added first, and all
+ * working sets hand out that handle. The id of a resource is freed (and reused)
+ * when the last working set has released it.
+ */
+class ResourceDictionary {
+	private static final ResourceDictionary fgDefault = new ResourceDictionary();
+
+	/**
+	 * The resources by id, id 0 is not used
+	 */
+	private IResource[] fResources = new IResource[16];
+	/**
+	 * The number of sets holding each id
+	 */
+	private int[] fReferences = new int[16];
+	/**
+	 * The hashes of the resources by id, the resources are only compared on a match
+	 */
+	private int[] fHashes = new int[16];
+	/**
+	 * The ids by the hash of their resource (open addressing), 0 marks a free slot
+	 */
+	private int[] fTable = new int[32];
+	private int fSize;
+	/**
+	 * The freed ids (a stack) and the next id never used
+	 */
+	private int[] fFree = new int[16];
+	private int fFreeCount;
+	private int fNextId = 1;
+
+	static ResourceDictionary getDefault() {
+		return fgDefault;
+	}
+
+	private static int hash(Object element) {
+		int h = element.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return the slot of the element or the free slot where it belongs
+	 */
+	private int slot(Object element, int hash) {
+		int mask = fTable.length - 1;
+		int i = hash & mask;
+		for (int id; (id = fTable[i]) != 0; i = (i + 1) & mask) {
+			if (fHashes[id] == hash && fResources[id].equals(element))
+				break;
+		}
+		return i;
+	}
+
+	/**
+	 * @return the id of a resource or 0 if no working set contains it
+	 */
+	synchronized int find(Object element) {
+		return fTable[slot(element, hash(element))];
+	}
+
+	/**
+	 * @return the resource of an id in use
+	 */
+	synchronized IResource get(int id) {
+		return fResources[id];
+	}
+
+	/**
+	 * Fills the resources of ids in use into an array
+	 */
+	synchronized void get(int[] ids, Object[] resources, int offset) {
+		for (int i = 0; i < ids.length; i++) {
+			resources[offset + i] = fResources[ids[i]];
+		}
+	}
+
+	/**
+	 * Gets the id of a resource for one more set, each call has to be
+	 * followed by one {@link #release(int)}
+	 */
+	synchronized int acquire(IResource resource) {
+		int hash = hash(resource);
+		int i = slot(resource, hash);
+		int id = fTable[i];
+		if (id == 0) {
+			id = fFreeCount > 0 ? fFree[--fFreeCount] : fNextId++;
+			if (id == fResources.length) {
+				fResources = Arrays.copyOf(fResources, id * 2);
+				fReferences = Arrays.copyOf(fReferences, id * 2);
+				fHashes = Arrays.copyOf(fHashes, id * 2);
+			}
+			fResources[id] = resource;
+			fHashes[id] = hash;
+			fTable[i] = id;
+			// at most 3/4 of the slots are used
+			if (++fSize * 4 > fTable.length * 3)
+				rehash(fTable.length * 2);
+		}
+		fReferences[id]++;
+		return id;
+	}
+
+	/**
+	 * A set no longer holds the id
+	 */
+	synchronized void release(int id) {
+		if (--fReferences[id] > 0)
+			return;
+		int mask = fTable.length - 1;
+		int i = fHashes[id] & mask;
+		while (fTable[i] != id)
+			i = (i + 1) & mask;
+		// moves the following ids of the run back instead of leaving a tombstone
+		for (int j = (i + 1) & mask; fTable[j] != 0; j = (j + 1) & mask) {
+			int home = fHashes[fTable[j]] & mask;
+			if (i <= j ? (i < home && home <= j) : (i < home || home <= j))
+				continue;
+			fTable[i] = fTable[j];
+			i = j;
+		}
+		fTable[i] = 0;
+		fResources[id] = null;
+		fSize--;
+		if (fFreeCount == fFree.length)
+			fFree = Arrays.copyOf(fFree, fFreeCount * 2);
+		fFree[fFreeCount++] = id;
+		if (fSize == 0) {
+			// all working sets are gone, the arrays shrink
+			fResources = new IResource[16];
+			fReferences = new int[16];
+			fHashes = new int[16];
+			fTable = new int[32];
+			fFree = new int[16];
+			fFreeCount = 0;
+			fNextId = 1;
+		}
+	}
+
+	private void rehash(int capacity) {
+		fTable = new int[capacity];
+		int mask = capacity - 1;
+		for (int id = 1; id < fNextId; id++) {
+			if (fResources[id] == null)
+				continue;
+			int i = fHashes[id] & mask;
+			while (fTable[i] != 0)
+				i = (i + 1) & mask;
+			fTable[i] = id;
+		}
+	}
+
+	/**
+	 * @return the number of resources with an id
+	 */
+	synchronized int size() {
+		return fSize;
+	}
+}
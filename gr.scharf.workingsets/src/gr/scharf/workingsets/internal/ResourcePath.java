@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import gr.scharf.workingsets.internal.query.PathBuffer;
+
+import java.util.Arrays;
+
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Builds the full paths of resources into a reusable {@link PathBuffer} without
+ * allocating strings. During a traversal the segments shared with the previous
+ * path (e.g. the folder of the previous file) are kept and only the new segments
+ * are appended.
+ */
+class ResourcePath {
+	private final PathBuffer fBuffer = new PathBuffer();
+	private String[] fSegments = new String[16];
+	/**
+	 * The length of the path up to and including each segment
+	 */
+	private int[] fEnds = new int[16];
+	private int fCount;
+
+	/**
+	 * @return the path as <code>/project/folder/file</code>, valid until the next call
+	 */
+	CharSequence set(IPath path) {
+		int count = path.segmentCount();
+		int common = 0;
+		while (common < count && common < fCount && path.segment(common).equals(fSegments[common]))
+			common++;
+		if (count > fSegments.length) {
+			fSegments = Arrays.copyOf(fSegments, count);
+			fEnds = Arrays.copyOf(fEnds, count);
+		}
+		fBuffer.setLength(common == 0 ? 0 : fEnds[common - 1]);
+		for (int i = common; i < count; i++) {
+			String segment = path.segment(i);
+			fBuffer.append('/');
+			fBuffer.append(segment);
+			fSegments[i] = segment;
+			fEnds[i] = fBuffer.length();
+		}
+		fCount = count;
+		return fBuffer;
+	}
+}
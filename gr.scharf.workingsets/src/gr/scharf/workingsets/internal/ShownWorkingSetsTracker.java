@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jface.util.IPropertyChangeListener;
+import org.eclipse.jface.util.PropertyChangeEvent;
+import org.eclipse.ui.IAggregateWorkingSet;
+import org.eclipse.ui.IPageListener;
+import org.eclipse.ui.IPartListener2;
+import org.eclipse.ui.IPerspectiveDescriptor;
+import org.eclipse.ui.IPerspectiveListener;
+import org.eclipse.ui.IWindowListener;
+import org.eclipse.ui.IWorkbench;
+import org.eclipse.ui.IWorkbenchPage;
+import org.eclipse.ui.IWorkbenchPartReference;
+import org.eclipse.ui.IWorkbenchWindow;
+import org.eclipse.ui.IWorkingSet;
+import org.eclipse.ui.IWorkingSetManager;
+import org.eclipse.ui.PlatformUI;
+
+/**
+ * Reports the working sets selected in the workbench pages (the window working 
+ * sets) when the tracker is installed and whenever the working sets of a page 
+ * change. Only the deprecated property listeners of a page are told about the 
+ * changes, the working sets are therefore compared with the last reported ones 
+ * when a part is activated or shown and when the perspective changes.
+ * <p>
+ * The working sets selected in a view (e.g. with "Select Working Set..." in the 
+ * Project Explorer or the Package Explorer) are local to the view and not known 
+ * to the page. The selection dialogs add them to the recent working sets of the 
+ * working set manager, the recent working sets are therefore reported as well.
+ */
+public class ShownWorkingSetsTracker {
+	public interface Listener {
+		/**
+		 * @param workingSets the working sets shown by a page, aggregates are resolved
+		 */
+		void workingSetsShown(List<IWorkingSet> workingSets);
+	}
+
+	private final Listener fListener;
+	/**
+	 * The working sets last reported for each page
+	 */
+	private final Map<IWorkbenchPage, IWorkingSet[]> fReported = new IdentityHashMap<IWorkbenchPage, IWorkingSet[]>();
+	/**
+	 * The recent working sets last reported, the working set manager notifies 
+	 * from any thread
+	 */
+	private IWorkingSet[] fRecent;
+
+	/**
+	 * Adding a recent working set is not notified, the recent working sets are 
+	 * checked on any change of the working sets and whenever a page is reported
+	 */
+	private final IPropertyChangeListener fWorkingSetListener = new IPropertyChangeListener() {
+		public void propertyChange(PropertyChangeEvent event) {
+			reportRecent();
+		}
+	};
+
+	private final IPartListener2 fPartListener = new IPartListener2() {
+		public void partActivated(IWorkbenchPartReference partRef) {
+			report(partRef.getPage());
+		}
+		public void partVisible(IWorkbenchPartReference partRef) {
+			report(partRef.getPage());
+		}
+		public void partBroughtToTop(IWorkbenchPartReference partRef) {
+		}
+		public void partClosed(IWorkbenchPartReference partRef) {
+		}
+		public void partDeactivated(IWorkbenchPartReference partRef) {
+		}
+		public void partOpened(IWorkbenchPartReference partRef) {
+		}
+		public void partHidden(IWorkbenchPartReference partRef) {
+		}
+		public void partInputChanged(IWorkbenchPartReference partRef) {
+		}
+	};
+
+	private final IPerspectiveListener fPerspectiveListener = new IPerspectiveListener() {
+		public void perspectiveActivated(IWorkbenchPage page, IPerspectiveDescriptor perspective) {
+			report(page);
+		}
+		public void perspectiveChanged(IWorkbenchPage page, IPerspectiveDescriptor perspective, String changeId) {
+			report(page);
+		}
+	};
+
+	private final IPageListener fPageListener = new IPageListener() {
+		public void pageOpened(IWorkbenchPage page) {
+			page.addPartListener(fPartListener);
+			report(page);
+		}
+		public void pageClosed(IWorkbenchPage page) {
+			page.removePartListener(fPartListener);
+			fReported.remove(page);
+		}
+		public void pageActivated(IWorkbenchPage page) {
+		}
+	};
+
+	private final IWindowListener fWindowListener = new IWindowListener() {
+		public void windowOpened(IWorkbenchWindow window) {
+			addWindow(window);
+		}
+		public void windowClosed(IWorkbenchWindow window) {
+			removeWindow(window);
+		}
+		public void windowActivated(IWorkbenchWindow window) {
+		}
+		public void windowDeactivated(IWorkbenchWindow window) {
+		}
+	};
+
+	public ShownWorkingSetsTracker(Listener listener) {
+		fListener = listener;
+	}
+
+	public void install() {
+		IWorkbench workbench = PlatformUI.getWorkbench();
+		workbench.addWindowListener(fWindowListener);
+		workbench.getWorkingSetManager().addPropertyChangeListener(fWorkingSetListener);
+		for (IWorkbenchWindow window : workbench.getWorkbenchWindows()) {
+			addWindow(window);
+		}
+		reportRecent();
+	}
+
+	public void uninstall() {
+		IWorkbench workbench = PlatformUI.getWorkbench();
+		workbench.removeWindowListener(fWindowListener);
+		workbench.getWorkingSetManager().removePropertyChangeListener(fWorkingSetListener);
+		for (IWorkbenchWindow window : workbench.getWorkbenchWindows()) {
+			removeWindow(window);
+		}
+	}
+
+	private void addWindow(IWorkbenchWindow window) {
+		window.addPageListener(fPageListener);
+		window.addPerspectiveListener(fPerspectiveListener);
+		for (IWorkbenchPage page : window.getPages()) {
+			page.addPartListener(fPartListener);
+			report(page);
+		}
+	}
+
+	private void removeWindow(IWorkbenchWindow window) {
+		window.removePageListener(fPageListener);
+		window.removePerspectiveListener(fPerspectiveListener);
+		for (IWorkbenchPage page : window.getPages()) {
+			page.removePartListener(fPartListener);
+			fReported.remove(page);
+		}
+	}
+
+	/**
+	 * Reports the working sets of the page unless they have been reported before
+	 */
+	private void report(IWorkbenchPage page) {
+		if (page == null)
+			return;
+		reportRecent();
+		IWorkingSet[] shown = page.getWorkingSets();
+		if (isSame(shown, fReported.get(page)))
+			return;
+		fReported.put(page, shown);
+		reportShown(shown);
+	}
+
+	/**
+	 * Reports the recent working sets unless they have been reported before
+	 */
+	private void reportRecent() {
+		IWorkingSetManager manager = PlatformUI.getWorkbench().getWorkingSetManager();
+		IWorkingSet[] recent = manager.getRecentWorkingSets();
+		synchronized (this) {
+			if (isSame(recent, fRecent))
+				return;
+			fRecent = recent;
+		}
+		reportShown(recent);
+	}
+
+	private void reportShown(IWorkingSet[] shown) {
+		List<IWorkingSet> workingSets = new ArrayList<IWorkingSet>();
+		for (IWorkingSet workingSet : shown) {
+			addWorkingSet(workingSets, workingSet);
+		}
+		if (!workingSets.isEmpty())
+			fListener.workingSetsShown(workingSets);
+	}
+
+	/**
+	 * The working sets are mutable, they are compared by identity
+	 */
+	private static boolean isSame(IWorkingSet[] workingSets, IWorkingSet[] reported) {
+		if (reported == null || reported.length != workingSets.length)
+			return false;
+		for (int i = 0; i < workingSets.length; i++) {
+			if (workingSets[i] != reported[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static void addWorkingSet(List<IWorkingSet> workingSets, IWorkingSet workingSet) {
+		if (workingSet instanceof IAggregateWorkingSet) {
+			for (IWorkingSet component : ((IAggregateWorkingSet) workingSet).getComponents()) {
+				addWorkingSet(workingSets, component);
+			}
+		} else {
+			workingSets.add(workingSet);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import org.eclipse.osgi.service.debug.DebugOptions;
+import org.eclipse.osgi.service.debug.DebugOptionsListener;
+import org.eclipse.osgi.service.debug.DebugTrace;
+
+/**
+ * The trace options of the plug-in (see the <code>.options</code> file). They are
+ * enabled on the Tracing tab of a launch configuration or with <code>-debug</code>
+ * and can be changed while Eclipse is running.
+ */
+public class Trace implements DebugOptionsListener {
+	public static final String DEBUG = Activator.PLUGIN_ID + "/debug";
+	/**
+	 * Traces every batch of resource changes applied to the working sets
+	 */
+	public static final String UPDATER = DEBUG + "/updater";
+	/**
+	 * Traces the batches that take longer than {@link #SLOW_THRESHOLD}, with
+	 * the time spent in each working set
+	 */
+	public static final String SLOW = DEBUG + "/slow";
+	public static final String SLOW_THRESHOLD = SLOW + "/threshold";
+
+	public static volatile boolean DEBUG_UPDATER;
+	public static volatile boolean DEBUG_SLOW;
+	/**
+	 * In milliseconds
+	 */
+	public static volatile long slowThreshold = 100;
+
+	private static volatile DebugTrace fgTrace;
+
+	public void optionsChanged(DebugOptions options) {
+		boolean debug = options.getBooleanOption(DEBUG, false);
+		fgTrace = options.newDebugTrace(Activator.PLUGIN_ID, Trace.class);
+		DEBUG_UPDATER = debug && options.getBooleanOption(UPDATER, false);
+		DEBUG_SLOW = debug && options.getBooleanOption(SLOW, false);
+		slowThreshold = options.getIntegerOption(SLOW_THRESHOLD, 100);
+	}
+
+	public static void trace(String option, String message) {
+		DebugTrace trace = fgTrace;
+		if (trace != null)
+			trace.trace(option, message);
+	}
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The counters of the updater. The updater provides the current state by
+ * implementing {@link #getPendingChanges()} and {@link #getWorkingSets()}.
+ */
+public abstract class UpdaterStatistics implements UpdaterStatisticsMXBean {
+	private final LatencyHistogram fLatency = new LatencyHistogram();
+	private volatile long fEvents;
+	private volatile long fChanges;
+	private ObjectName fName;
+
+	/**
+	 * Called by the resource listener
+	 */
+	public synchronized void event() {
+		fEvents++;
+	}
+
+	/**
+	 * Called after a batch has been applied
+	 */
+	public synchronized void batch(int changes, long nanos) {
+		fChanges += changes;
+		fLatency.record(nanos);
+	}
+
+	public synchronized void register() {
+		if (fName != null)
+			return;
+		try {
+			fName = ManagementFactory.getPlatformMBeanServer()
+					.registerMBean(this, new ObjectName(QueryStatistics.DOMAIN + ":type=Updater")).getObjectName();
+		} catch (JMException e) {
+			// e.g. a second updater
+			Activator.log(e);
+		}
+	}
+
+	public synchronized void unregister() {
+		if (fName == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(fName);
+		} catch (JMException e) {
+			// already gone
+		}
+		fName = null;
+	}
+
+	public long getEvents() {
+		return fEvents;
+	}
+
+	public long getBatches() {
+		return fLatency.getCount();
+	}
+
+	public long getChanges() {
+		return fChanges;
+	}
+
+	public double getBatchLatencyP50() {
+		return fLatency.getPercentile(50);
+	}
+
+	public double getBatchLatencyP99() {
+		return fLatency.getPercentile(99);
+	}
+
+	public double getBatchLatencyMax() {
+		return fLatency.getMax();
+	}
+
+	public synchronized void reset() {
+		fEvents = 0;
+		fChanges = 0;
+		fLatency.reset();
+	}
+}
@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+/**
+ * The statistics of the updater of the query working sets, registered as
+ * <code>gr.scharf.workingsets:type=Updater</code>. The times are in milliseconds.
+ */
+public interface UpdaterStatisticsMXBean {
+	/**
+	 * @return the number of resource change events received
+	 */
+	long getEvents();
+	/**
+	 * @return the number of batches applied to the working sets
+	 */
+	long getBatches();
+	/**
+	 * @return the number of resource changes applied, changes of the same 
+	 * resource within a batch are merged
+	 */
+	long getChanges();
+	/**
+	 * @return the number of changes waiting for the next batch
+	 */
+	int getPendingChanges();
+	/**
+	 * @return the number of working sets kept up to date
+	 */
+	int getWorkingSets();
+	double getBatchLatencyP50();
+	double getBatchLatencyP99();
+	double getBatchLatencyMax();
+	void reset();
+}
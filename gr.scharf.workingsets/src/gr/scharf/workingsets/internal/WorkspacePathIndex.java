@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Michael Scharf
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package gr.scharf.workingsets.internal;
+
+import gr.scharf.workingsets.internal.query.PathCursor;
+import gr.scharf.workingsets.internal.query.PathIndex;
+import gr.scharf.workingsets.internal.query.PathScan;
+import gr.scharf.workingsets.internal.query.PathTable;
+import gr.scharf.workingsets.internal.query.SubtreePruner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * The full paths of all files in the workspace, shared by all query working sets
+ * and the working set page. Queries are matched against the paths in the
+ * index instead of traversing the workspace with {@link IResourceProxy}s,
+ * resource handles have only to be created for the matching files.
+ * <p>
+ * The index is built when it is used the first time. A resource listener collects
+ * the added and removed files and the opened and closed projects and a job
+ * applies them to the index. {@link #getIndex()} applies all pending changes before
+ * it returns the index.
+ */
+public class WorkspacePathIndex {
+	private static WorkspacePathIndex fgDefault;
+
+	/**
+	 * The current snapshot or null if the index has not been built yet
+	 */
+	private volatile PathIndex fIndex;
+	/**
+	 * Serializes the updates of {@link #fIndex}
+	 */
+	private final Object fUpdateLock = new Object();
+	/**
+	 * Changes collected by the listener, guarded by itself
+	 */
+	private final Set<String> fAdded = new LinkedHashSet<String>();
+	private final Set<String> fRemoved = new LinkedHashSet<String>();
+	/**
+	 * Projects that have been added, removed, opened or closed and have to be rescanned
+	 */
+	private final Set<IProject> fProjects = new LinkedHashSet<IProject>();
+
+	private final Job fUpdateJob = new Job("Updating workspace path index") {
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			update();
+			return Status.OK_STATUS;
+		}
+	};
+
+	private final IResourceChangeListener fResourceListener = new IResourceChangeListener() {
+		public void resourceChanged(IResourceChangeEvent event) {
+			if (event.getDelta() == null)
+				return;
+			try {
+				event.getDelta().accept(new IResourceDeltaVisitor() {
+					public boolean visit(IResourceDelta delta) throws CoreException {
+						IResource resource = delta.getResource();
+						switch (resource.getType()) {
+							case IResource.PROJECT:
+								if (delta.getKind() != IResourceDelta.CHANGED || (delta.getFlags() & IResourceDelta.OPEN) != 0) {
+									synchronized (fAdded) {
+										fProjects.add((IProject) resource);
+									}
+									ContentIndex.changed(resource.getFullPath().toString() + '/');
+									return false;
+								}
+								return true;
+							case IResource.FILE:
+								if (delta.getKind() == IResourceDelta.ADDED) {
+									synchronized (fAdded) {
+										String path = resource.getFullPath().toString();
+										fRemoved.remove(path);
+										fAdded.add(path);
+									}
+								} else if (delta.getKind() == IResourceDelta.REMOVED) {
+									synchronized (fAdded) {
+										String path = resource.getFullPath().toString();
+										fAdded.remove(path);
+										fRemoved.add(path);
+									}
+								}
+								if (delta.getKind() != IResourceDelta.CHANGED
+										|| (delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED)) != 0) {
+									// the content index only cares about files that exist and their content
+									ContentIndex.changed(resource.getFullPath().toString());
+								}
+								return false;
+						}
+						return true;
+					}
+				});
+			} catch (CoreException e) {
+				Activator.log(e);
+			}
+			fUpdateJob.schedule(100);
+		}
+	};
+
+	private WorkspacePathIndex() {
+		fUpdateJob.setSystem(true);
+		fUpdateJob.setPriority(Job.DECORATE);
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(fResourceListener, IResourceChangeEvent.POST_CHANGE);
+	}
+
+	public static synchronized WorkspacePathIndex getDefault() {
+		if (fgDefault == null)
+			fgDefault = new WorkspacePathIndex();
+		return fgDefault;
+	}
+
+	public static synchronized void disposeDefault() {
+		if (fgDefault != null) {
+			ResourcesPlugin.getWorkspace().removeResourceChangeListener(fgDefault.fResourceListener);
+			fgDefault.fUpdateJob.cancel();
+			fgDefault = null;
+		}
+	}
+
+	/**
+	 * Builds the index if needed and applies all pending changes.
+	 *
+	 * @return a snapshot of the paths of all files in the workspace
+	 */
+	public PathIndex getIndex() {
+		update();
+		return fIndex;
+	}
+
+	private void update() {
+		synchronized (fUpdateLock) {
+			List<String> added;
+			List<String> removed;
+			List<IProject> projects;
+			synchronized (fAdded) {
+				added = new ArrayList<String>(fAdded);
+				removed = new ArrayList<String>(fRemoved);
+				projects = new ArrayList<IProject>(fProjects);
+				fAdded.clear();
+				fRemoved.clear();
+				fProjects.clear();
+			}
+			PathIndex index = fIndex;
+			if (index == null) {
+				// the scan sees all changes the listener has reported so far
+				fIndex = new PathIndex(scan(ResourcesPlugin.getWorkspace().getRoot()));
+				return;
+			}
+			index = index.withChanges(added, removed);
+			// rescan projects after the file changes, the scan is newer than the changes
+			for (IProject project : projects) {
+				index = rescan(index, project);
+			}
+			if (index.needsCompaction())
+				index = index.compact();
+			fIndex = index;
+		}
+	}
+
+	/**
+	 * Replaces the paths of a project with the files that exist now
+	 */
+	private PathIndex rescan(PathIndex index, IProject project) {
+		Set<String> paths = new HashSet<String>();
+		PathCursor scanned = scan(project).cursor();
+		while (scanned.next()) {
+			paths.add(scanned.path().toString());
+		}
+		String prefix = project.getFullPath().toString() + '/';
+		List<String> removed = new ArrayList<String>();
+		PathCursor cursor = index.cursor(prefix);
+		while (cursor.next()) {
+			String path = cursor.path().toString();
+			if (!path.startsWith(prefix))
+				break;
+			if (!paths.remove(path))
+				removed.add(path);
+		}
+		return index.withChanges(paths, removed);
+	}
+
+	/**
+	 * @return the paths of all files in the container
+	 */
+	private static PathTable scan(IContainer container) {
+		final List<String> paths = new ArrayList<String>();
+		if (container.isAccessible()) {
+			try {
+				container.accept(new IResourceProxyVisitor() {
+					public boolean visit(IResourceProxy proxy) throws CoreException {
+						if (proxy.getType() == IResource.FILE)
+							paths.add(proxy.requestFullPath().toString());
+						return true;
+					}
+				}, IResource.NONE);
+			} catch (CoreException e) {
+				Activator.log(e);
+			}
+		}
+		Collections.sort(paths);
+		PathTable.Builder builder = new PathTable.Builder();
+		for (String path : paths) {
+			builder.add(path);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Matches the query against all files in the workspace. Projects and 
+	 * top-level folders are matched in parallel, see {@link PathScan}.
+	 *
+	 * @param monitor the matching stops when the monitor is canceled
+	 * @param matches the matching files are added to this list
+	 */
+	public void collectMatches(final RegExResourceFilter filter, final IProgressMonitor monitor, Collection<? super IResource> matches) {
+		final IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		matches.addAll(new PathScan<IResource>() {
+			@Override
+			protected IResource match(CharSequence path) {
+				if (!filter.matches(path))
+					return null;
+				IResource file = root.getFile(new Path(path.toString()));
+				return filter.matchesMetadata(file) ? file : null;
+			}
+			@Override
+			protected boolean isCanceled() {
+				return monitor != null && monitor.isCanceled();
+			}
+			@Override
+			protected SubtreePruner getPruner() {
+				return filter.getPruner();
+			}
+		}.parallelScan(getIndex()));
+	}
+}